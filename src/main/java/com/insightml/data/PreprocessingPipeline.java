@@ -19,18 +19,22 @@ import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 
 import org.apache.commons.math3.util.Pair;
 
 import com.google.common.base.Preconditions;
+import com.insightml.data.features.FeatureBundles;
 import com.insightml.data.features.IFeatureProvider;
 import com.insightml.data.features.selection.IFeatureFilter;
 import com.insightml.data.samples.ISamples;
 import com.insightml.data.samples.Sample;
 import com.insightml.data.samples.Samples;
+import com.insightml.data.samples.decorators.ColumnarFeaturesDecorator;
 import com.insightml.data.samples.decorators.FeaturesDecorator;
+import com.insightml.data.samples.decorators.SparseFeaturesDecorator;
 import com.insightml.math.Normalization;
 import com.insightml.math.statistics.Stats;
 import com.insightml.utils.Check;
@@ -44,9 +48,14 @@ public final class PreprocessingPipeline<S extends Sample> extends AbstractConfi
 
 	private IFeatureProvider<S> provider;
 	private String[] featureNames;
+	private boolean[] categoricalFeatures;
 	private Map<String, Stats> featureStats;
 	private Normalization normalization;
 	private IArguments arguments;
+	/**
+	 * Exclusive feature bundles fitted on the training samples, if enabled by the "bundleFeatures" argument.
+	 */
+	private FeatureBundles bundles;
 
 	PreprocessingPipeline() {
 	}
@@ -55,6 +64,7 @@ public final class PreprocessingPipeline<S extends Sample> extends AbstractConfi
 			final Map<String, Stats> featureStats, final Normalization normalization, final IArguments arguments) {
 		this.provider = Preconditions.checkNotNull(provider);
 		this.featureNames = Preconditions.checkNotNull(featureNames);
+		categoricalFeatures = categoricalFeatures(featureNames, provider.categoricalFeatures(arguments));
 		this.featureStats = featureStats;
 		this.normalization = normalization;
 		this.arguments = arguments;
@@ -68,10 +78,43 @@ public final class PreprocessingPipeline<S extends Sample> extends AbstractConfi
 				featureSelection.getSecond(), normalization, arguments);
 	}
 
+	private static boolean[] categoricalFeatures(final String[] featureNames, final Set<String> categorical) {
+		if (categorical.isEmpty()) {
+			return null;
+		}
+		final boolean[] mask = new boolean[featureNames.length];
+		for (int i = 0; i < featureNames.length; ++i) {
+			mask[i] = categorical.contains(featureNames[i]);
+		}
+		return mask;
+	}
+
 	@Override
 	public <E> ISamples<S, E> run(final Iterable<S> input, final boolean isTraining) {
 		final Samples<S, E> samples = new Samples<>(input, isTraining);
-		return new FeaturesDecorator<>(samples, provider, featureNames, featureStats, isTraining, arguments);
+		ISamples<S, E> features;
+		if (option("sparseFeatures")) {
+			features = SparseFeaturesDecorator.of(samples, provider, featureNames, categoricalFeatures, featureStats,
+					isTraining, arguments);
+		} else if (isTraining && option("columnarFeatures")) {
+			features = ColumnarFeaturesDecorator.of(samples, provider, featureNames, categoricalFeatures,
+					featureStats, isTraining, arguments);
+		} else {
+			features = new FeaturesDecorator<>(samples, provider, featureNames, categoricalFeatures, featureStats,
+					isTraining, arguments);
+		}
+		if (isTraining && option("bundleFeatures")) {
+			bundles = FeatureBundles.fit(features, arguments.toDouble("bundleMaxConflictRate", 0.0),
+					arguments.toInt("bundleMaxBins", 255));
+		}
+		if (bundles != null) {
+			features = bundles.apply(features);
+		}
+		return features;
+	}
+
+	private boolean option(final String key) {
+		return arguments != null && arguments.bool(key, false);
 	}
 
 	@Override
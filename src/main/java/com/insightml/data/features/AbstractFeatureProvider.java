@@ -53,6 +53,11 @@ public abstract class AbstractFeatureProvider<I extends Sample> implements IFeat
 		return array;
 	}
 
+	@Override
+	public final float missingValue(final String featureName, final Map<String, Stats> featureStats) {
+		return handleMissingValue(featureName, featureStats);
+	}
+
 	/**
 	 * @param featureName
 	 * @param featureStats
@@ -15,9 +15,11 @@
  */
 package com.insightml.data.features;
 
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.math3.util.Pair;
 
@@ -47,6 +49,15 @@ public class AggregateFeatureProvider<I extends Sample> extends AbstractFeatureP
 		return new Pair<>(Arrays.of(names, String.class), null);
 	}
 
+	@Override
+	public final Set<String> categoricalFeatures(final IArguments arguments) {
+		final Set<String> categorical = new HashSet<>();
+		for (final IFeatureProvider<I> provider : providers) {
+			categorical.addAll(provider.categoricalFeatures(arguments));
+		}
+		return categorical;
+	}
+
 	@Override
 	public final void features(final I instance, final boolean isTraining, final IArguments arguments,
 			final FeaturesConsumer features) {
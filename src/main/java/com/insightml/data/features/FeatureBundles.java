@@ -0,0 +1,421 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.data.features;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.data.samples.SparseFeatures;
+import com.insightml.data.samples.decorators.ColumnarFeaturesDecorator;
+import com.insightml.data.samples.decorators.FeaturesDecorator;
+import com.insightml.data.samples.decorators.SparseFeaturesDecorator;
+import com.insightml.utils.Check;
+
+/**
+ * Exclusive feature bundling: sparse features which are (almost) never non-default in the same sample are packed
+ * into a single column, so learners scan far fewer columns. Each bundled feature gets its own range of the column:
+ * its non-default values are quantized into ordered bins, and the column holds the feature's offset plus the bin. A
+ * value of 0 means that all features of the bundle have their default value, which is the samples' sparse default or
+ * 0 for dense samples.
+ * <p>
+ * Features which are categorical, dense or exclusive with no other feature are kept as they are.
+ */
+public final class FeatureBundles implements Serializable {
+	private static final long serialVersionUID = 2958340726815396231L;
+
+	/**
+	 * Features with more non-default values than this fraction of the samples are never bundled.
+	 */
+	private static final double MAX_DENSITY = 0.5;
+	/**
+	 * The number of existing bundles tried for each feature, which bounds the time for finding the bundles.
+	 */
+	private static final int MAX_CANDIDATES = 100;
+	/**
+	 * Bundled values have to be represented exactly by a float.
+	 */
+	private static final int MAX_BUNDLE_WIDTH = 1 << 20;
+
+	private final String[] featureNames;
+	@Nullable
+	private final boolean[] categorical;
+	private final float[] defaults;
+	/**
+	 * The output column of each input feature.
+	 */
+	private final int[] column;
+	/**
+	 * The offset of each input feature within its bundle, or -1 if it is not bundled.
+	 */
+	private final int[] offset;
+	/**
+	 * The ascending upper bounds of the bins of each bundled input feature.
+	 */
+	private final float[][] bounds;
+	private final String[][] bundles;
+
+	private FeatureBundles(final String[] featureNames, @Nullable final boolean[] categorical,
+			final float[] defaults, final int[] column, final int[] offset, final float[][] bounds,
+			final String[][] bundles) {
+		this.featureNames = featureNames;
+		this.categorical = categorical;
+		this.defaults = defaults;
+		this.column = column;
+		this.offset = offset;
+		this.bounds = bounds;
+		this.bundles = bundles;
+	}
+
+	/**
+	 * @param maxConflictRate
+	 *            the fraction of samples in which features of the same bundle may both be non-default. In such
+	 *            samples, only the value of the latter feature is kept.
+	 * @param maxBins
+	 *            the maximum number of bins per bundled feature
+	 */
+	public static FeatureBundles fit(final ISamples<?, ?> samples, final double maxConflictRate, final int maxBins) {
+		Check.num(maxConflictRate, 0, 1);
+		Check.num(maxBins, 1, MAX_BUNDLE_WIDTH);
+		final int numFeatures = samples.numFeatures();
+		final boolean[] categorical = samples.categoricalFeatures();
+		final int size = samples.size();
+		final SparseFeatures sparse = samples.sparseFeatures();
+		final float[] defaults = new float[numFeatures];
+		if (sparse != null) {
+			for (int f = 0; f < numFeatures; ++f) {
+				defaults[f] = sparse.defaultValue(f);
+			}
+		}
+
+		final BitSet[] nonDefault = new BitSet[numFeatures];
+		final float[][] bounds = new float[numFeatures][];
+		final List<Integer> candidates = new ArrayList<>();
+		for (int f = 0; f < numFeatures; ++f) {
+			if (categorical != null && categorical[f]) {
+				continue;
+			}
+			final float[] values = nonDefaultValues(samples, sparse, f, defaults[f]);
+			if (values.length == 0 || values.length > size * MAX_DENSITY || Float.isNaN(values[values.length - 1])) {
+				continue;
+			}
+			nonDefault[f] = nonDefaultRows(samples, sparse, f, defaults[f]);
+			bounds[f] = bounds(values, maxBins);
+			candidates.add(f);
+		}
+		candidates.sort(Comparator.comparingInt((final Integer f) -> -nonDefault[f].cardinality())
+				.thenComparingInt(f -> f));
+
+		final int maxConflicts = (int) (maxConflictRate * size);
+		final List<Bundle> open = new ArrayList<>();
+		for (final int f : candidates) {
+			Bundle target = null;
+			for (int b = 0; b < open.size() && b < MAX_CANDIDATES; ++b) {
+				final Bundle bundle = open.get(b);
+				if (bundle.width + bounds[f].length <= MAX_BUNDLE_WIDTH
+						&& bundle.conflicts + conflicts(bundle.rows, nonDefault[f], maxConflicts) <= maxConflicts) {
+					target = bundle;
+					break;
+				}
+			}
+			if (target == null) {
+				target = new Bundle();
+				open.add(target);
+			}
+			target.add(f, nonDefault[f], bounds[f].length);
+		}
+		return create(samples.featureNames(), categorical, defaults, bounds, open);
+	}
+
+	private static FeatureBundles create(final String[] inputNames, @Nullable final boolean[] inputCategorical,
+			final float[] defaults, final float[][] bounds, final List<Bundle> found) {
+		final int[] column = new int[inputNames.length];
+		final int[] offset = new int[inputNames.length];
+		Arrays.fill(offset, -1);
+		final List<Bundle> bundles = new ArrayList<>();
+		for (final Bundle bundle : found) {
+			if (bundle.features.size() > 1) {
+				bundles.add(bundle);
+			}
+		}
+		final boolean[] bundled = new boolean[inputNames.length];
+		for (final Bundle bundle : bundles) {
+			for (final int f : bundle.features) {
+				bundled[f] = true;
+			}
+		}
+		final List<String> names = new ArrayList<>();
+		final List<Boolean> categorical = new ArrayList<>();
+		for (int f = 0; f < inputNames.length; ++f) {
+			if (!bundled[f]) {
+				column[f] = names.size();
+				names.add(inputNames[f]);
+				categorical.add(inputCategorical != null && inputCategorical[f]);
+			}
+		}
+		final String[][] bundleFeatures = new String[bundles.size()][];
+		for (int b = 0; b < bundles.size(); ++b) {
+			final Bundle bundle = bundles.get(b);
+			bundleFeatures[b] = new String[bundle.features.size()];
+			int width = 1;
+			for (int i = 0; i < bundle.features.size(); ++i) {
+				final int f = bundle.features.get(i);
+				column[f] = names.size();
+				offset[f] = width;
+				width += bounds[f].length;
+				bundleFeatures[b][i] = inputNames[f];
+			}
+			names.add("bundle" + b + "[" + bundle.features.size() + "]");
+			categorical.add(false);
+		}
+		final boolean[] outputCategorical = inputCategorical == null ? null : new boolean[names.size()];
+		if (outputCategorical != null) {
+			for (int i = 0; i < outputCategorical.length; ++i) {
+				outputCategorical[i] = categorical.get(i);
+			}
+		}
+		return new FeatureBundles(names.toArray(new String[names.size()]), outputCategorical, defaults, column,
+				offset, bounds, bundleFeatures);
+	}
+
+	private static float[] nonDefaultValues(final ISamples<?, ?> samples, @Nullable final SparseFeatures sparse,
+			final int feature, final float defaultValue) {
+		if (sparse != null) {
+			final int[] rows = sparse.orderedRows()[feature];
+			final float[] values = new float[rows.length];
+			for (int i = 0; i < rows.length; ++i) {
+				values[i] = sparse.value(rows[i], feature);
+			}
+			return values;
+		}
+		final float[] column = samples.featureColumn(feature);
+		int count = 0;
+		for (final float value : column) {
+			if (value != defaultValue) {
+				++count;
+			}
+		}
+		final float[] values = new float[count];
+		for (int i = 0, j = 0; i < column.length; ++i) {
+			if (column[i] != defaultValue) {
+				values[j++] = column[i];
+			}
+		}
+		Arrays.sort(values);
+		return values;
+	}
+
+	private static BitSet nonDefaultRows(final ISamples<?, ?> samples, @Nullable final SparseFeatures sparse,
+			final int feature, final float defaultValue) {
+		final BitSet rows = new BitSet(samples.size());
+		if (sparse != null) {
+			for (final int row : sparse.orderedRows()[feature]) {
+				rows.set(row);
+			}
+			return rows;
+		}
+		final float[] column = samples.featureColumn(feature);
+		for (int i = 0; i < column.length; ++i) {
+			if (column[i] != defaultValue) {
+				rows.set(i);
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * @param values
+	 *            ascending
+	 * @return the upper bounds of at most maxBins bins holding about the same number of values each
+	 */
+	private static float[] bounds(final float[] values, final int maxBins) {
+		final float[] bounds = new float[Math.min(values.length, maxBins)];
+		int bins = 0;
+		for (int b = 0; b < bounds.length; ++b) {
+			final float bound = values[(int) ((long) (b + 1) * values.length / bounds.length) - 1];
+			if (bins == 0 || bound > bounds[bins - 1]) {
+				bounds[bins++] = bound;
+			}
+		}
+		return Arrays.copyOf(bounds, bins);
+	}
+
+	private static int conflicts(final BitSet bundle, final BitSet feature, final int maxConflicts) {
+		int conflicts = 0;
+		for (int row = feature.nextSetBit(0); row >= 0; row = feature.nextSetBit(row + 1)) {
+			if (bundle.get(row) && ++conflicts > maxConflicts) {
+				break;
+			}
+		}
+		return conflicts;
+	}
+
+	public String[] featureNames() {
+		return featureNames;
+	}
+
+	/**
+	 * @return the names of the features packed into the given output column, or null if it is not a bundle
+	 */
+	@Nullable
+	public String[] bundle(final int outputColumn) {
+		final int b = outputColumn - (featureNames.length - bundles.length);
+		return b < 0 ? null : bundles[b];
+	}
+
+	/**
+	 * @return the given samples with the bundled features replaced by their bundles
+	 */
+	public <S extends Sample, E> ISamples<S, E> apply(final ISamples<S, E> samples) {
+		Check.equals(samples.numFeatures(), defaults.length, "features");
+		final SparseFeatures sparse = samples.sparseFeatures();
+		if (sparse != null) {
+			return new SparseFeaturesDecorator<>(samples, apply(sparse), featureNames, categorical);
+		}
+		if (samples instanceof final ColumnarFeaturesDecorator<S, E> columnar) {
+			return columnar.withColumns(apply(columnar.featureColumns(), samples.size()), featureNames, categorical);
+		}
+		final float[][] input = samples.features();
+		final float[][] output = new float[input.length][];
+		for (int i = 0; i < input.length; ++i) {
+			output[i] = apply(input[i]);
+		}
+		return new FeaturesDecorator<>(samples, output, featureNames, categorical);
+	}
+
+	/**
+	 * @return the bundled features of a single sample
+	 */
+	public float[] apply(final float[] features) {
+		final float[] output = new float[featureNames.length];
+		for (int f = 0; f < features.length; ++f) {
+			if (offset[f] < 0) {
+				output[column[f]] = features[f];
+			} else if (features[f] != defaults[f]) {
+				output[column[f]] = value(f, features[f]);
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * @return the output columns, sharing the input columns of the features which are not bundled
+	 */
+	private float[][] apply(final float[][] columns, final int size) {
+		final float[][] output = new float[featureNames.length][];
+		for (int f = 0; f < columns.length; ++f) {
+			if (offset[f] < 0) {
+				output[column[f]] = columns[f];
+			}
+		}
+		for (int f = 0; f < columns.length; ++f) {
+			if (offset[f] >= 0) {
+				if (output[column[f]] == null) {
+					output[column[f]] = new float[size];
+				}
+				final float[] bundle = output[column[f]];
+				final float[] values = columns[f];
+				for (int i = 0; i < size; ++i) {
+					if (values[i] != defaults[f]) {
+						bundle[i] = value(f, values[i]);
+					}
+				}
+			}
+		}
+		return output;
+	}
+
+	private SparseFeatures apply(final SparseFeatures sparse) {
+		final float[] outputDefaults = new float[featureNames.length];
+		for (int f = 0; f < defaults.length; ++f) {
+			if (offset[f] < 0) {
+				outputDefaults[column[f]] = defaults[f];
+			}
+		}
+		final int rows = sparse.numRows();
+		final float[][] rowValues = new float[rows][];
+		final int[][] rowColumns = new int[rows][];
+		for (int i = 0; i < rows; ++i) {
+			final int begin = sparse.rowBegin(i);
+			final int entries = sparse.rowEnd(i) - begin;
+			// orders the entries by output column, and those of the same bundle by input feature
+			final long[] keys = new long[entries];
+			for (int j = 0; j < entries; ++j) {
+				keys[j] = (long) column[sparse.entryFeature(begin + j)] << 32 | j;
+			}
+			Arrays.sort(keys);
+			final int[] columns = new int[entries];
+			final float[] values = new float[entries];
+			int n = 0;
+			for (int k = 0; k < entries; ++k) {
+				final int c = (int) (keys[k] >>> 32);
+				// as for dense rows, only the latter of conflicting features of a bundle is kept
+				if (k + 1 < entries && (int) (keys[k + 1] >>> 32) == c) {
+					continue;
+				}
+				final int entry = begin + (int) keys[k];
+				final int f = sparse.entryFeature(entry);
+				columns[n] = c;
+				values[n++] = offset[f] < 0 ? sparse.entryValue(entry) : value(f, sparse.entryValue(entry));
+			}
+			rowColumns[i] = Arrays.copyOf(columns, n);
+			rowValues[i] = Arrays.copyOf(values, n);
+		}
+		final int[] offsets = new int[rows + 1];
+		for (int i = 0; i < rows; ++i) {
+			offsets[i + 1] = offsets[i] + rowColumns[i].length;
+		}
+		final int[] columns = new int[offsets[rows]];
+		final float[] values = new float[columns.length];
+		for (int i = 0; i < rows; ++i) {
+			System.arraycopy(rowColumns[i], 0, columns, offsets[i], rowColumns[i].length);
+			System.arraycopy(rowValues[i], 0, values, offsets[i], rowValues[i].length);
+		}
+		return new SparseFeatures(offsets, columns, values, outputDefaults);
+	}
+
+	private float value(final int feature, final float value) {
+		final float[] featureBounds = bounds[feature];
+		int bin = Arrays.binarySearch(featureBounds, value);
+		if (bin < 0) {
+			bin = Math.min(-bin - 1, featureBounds.length - 1);
+		}
+		return offset[feature] + bin;
+	}
+
+	private static final class Bundle {
+		final List<Integer> features = new ArrayList<>();
+		final BitSet rows = new BitSet();
+		int conflicts;
+		int width;
+
+		void add(final int feature, final BitSet featureRows, final int featureWidth) {
+			final BitSet overlap = (BitSet) rows.clone();
+			overlap.and(featureRows);
+			conflicts += overlap.cardinality();
+			rows.or(featureRows);
+			features.add(feature);
+			width += featureWidth;
+		}
+	}
+}
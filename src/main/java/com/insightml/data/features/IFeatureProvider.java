@@ -16,6 +16,7 @@
 package com.insightml.data.features;
 
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 
@@ -32,9 +33,24 @@ public interface IFeatureProvider<I extends Sample> extends IReporter {
 
 	Pair<String[], Map<String, Stats>> featureNames(IArguments arguments);
 
+	/**
+	 * @return the names of the features whose values are category codes, i.e. non-negative integers without any
+	 *         order. Tree learners split these by sets of categories instead of thresholds.
+	 */
+	default Set<String> categoricalFeatures(final IArguments arguments) {
+		return Set.of();
+	}
+
 	float[] features(@Nonnull I sample, @Nonnull CharSequence[] features, Map<String, Stats> featureStats,
 			boolean isTraining, IArguments arguments);
 
 	void features(@Nonnull I sample, boolean isTraining, IArguments arguments, FeaturesConsumer consumer);
 
+	/**
+	 * @return the value of a feature for samples which do not provide it
+	 */
+	default float missingValue(final String featureName, final Map<String, Stats> featureStats) {
+		throw new UnsupportedOperationException(getClass() + " does not support sparse features");
+	}
+
 }
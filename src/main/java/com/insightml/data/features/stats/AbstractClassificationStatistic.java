@@ -30,10 +30,10 @@ public abstract class AbstractClassificationStatistic extends AbstractIndependen
 		final double min = stats.getMin(featureName);
 		final ClassFeatureMatrix matrix = new ClassFeatureMatrix(
 				(int) Math.floor((stats.getMax(featureName) - min) / binSize + 1));
-		final float[][] features = stats.getInstances().features();
+		final float[] column = stats.getInstances().featureColumn(feature);
 		final Object[] expected = stats.getInstances().expected(stats.getLabelIndex());
 		for (int i = 0; i < stats.getInstances().size(); ++i) {
-			final int bin = calculateBin(features[i][feature], min);
+			final int bin = calculateBin(column[i], min);
 			final int label = expected[i] instanceof Boolean ? (Boolean) expected[i] ? 1 : 0
 					: ((Number) expected[i]).intValue();
 			matrix.addPair(label, bin);
@@ -43,15 +43,18 @@ public final class FeatureStatistics extends AbstractClass {
 		this.instances = (ISamples<Sample, Double>) instances;
 		this.labelIndex = labelIndex;
 		final String[] featureNames = this.instances.featureNames();
-		final float[][] feats = this.instances.features();
 		final IntSumMapBuilder<CharSequence> nan = IntSumMap.builder(false, 16);
-		for (int i = 0; i < this.instances.size(); ++i) {
-			for (int j = 0; j < featureNames.length; ++j) {
-				final double value = feats[i][j];
+		for (int j = 0; j < featureNames.length; ++j) {
+			final float[] column = this.instances.featureColumn(j);
+			DescriptiveStatistics stat = null;
+			for (final float value : column) {
 				if (Double.isNaN(value) || value == Double.NEGATIVE_INFINITY) {
 					nan.increment(featureNames[j], 1);
 				} else {
-					stats.getOrLoad(featureNames[j]).addValue(value);
+					if (stat == null) {
+						stat = stats.getOrLoad(featureNames[j]);
+					}
+					stat.addValue(value);
 				}
 			}
 		}
@@ -45,11 +45,7 @@ public final class FeaturesCorrelation extends AbstractClass implements IUiProvi
 
 	private static FeatureCorrelation calculateFeatureCorrelation(final ISamples<?, ?> samples, final int labelIndex,
 			final int feature) {
-		final float[] feats = new float[samples.size()];
-		final float[][] features = samples.features();
-		for (int i = 0; i < feats.length; ++i) {
-			feats[i] = features[i][feature];
-		}
+		final float[] feats = samples.featureColumn(feature);
 		final Object[] exp = samples.expected(labelIndex);
 		final float[] expCast = new float[exp.length];
 		for (int i = 0; i < exp.length; ++i) {
@@ -18,7 +18,6 @@ package com.insightml.data.features.stats;
 import org.apache.commons.math3.util.Pair;
 
 import com.insightml.data.samples.ISamples;
-import com.insightml.math.Matrices;
 import com.insightml.math.distributions.GaussianDistribution;
 import com.insightml.utils.Arrays;
 import com.insightml.utils.ui.IChartGui;
@@ -40,11 +39,10 @@ public final class FeaturesDistribution implements IUiProvider<ISamples<?, ?>> {
 	@Override
 	public String getText(final ISamples<?, ?> instances, final int labelIndex) {
 		final StringBuilder builder = new StringBuilder();
-		final float[][] table = instances.features();
-		for (int f = 0; f < table[0].length; ++f) {
+		for (int f = 0; f < instances.numFeatures(); ++f) {
 			final CharSequence feature = instances.featureNames()[f];
 			builder.append(UiUtils.fill(feature, 40));
-			builder.append(new GaussianDistribution(Arrays.asDouble(Matrices.column(table, f))) + "\n");
+			builder.append(new GaussianDistribution(Arrays.asDouble(instances.featureColumn(f))) + "\n");
 		}
 		return builder.toString();
 	}
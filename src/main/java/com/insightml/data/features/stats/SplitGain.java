@@ -34,6 +34,7 @@ import com.insightml.data.samples.Sample;
 import com.insightml.math.statistics.Stats;
 import com.insightml.models.trees.GrowJob;
 import com.insightml.models.trees.MseSplitCriterion;
+import com.insightml.models.trees.NodeRows;
 import com.insightml.models.trees.RegTree;
 import com.insightml.models.trees.RegTree.StatsSupplier;
 import com.insightml.models.trees.SplitFinderContext;
@@ -118,12 +119,11 @@ public final class SplitGain implements IFeatureStatistic, IUiProvider<ISamples<
 		final boolean[] featuresMask = new boolean[train.numFeatures()];
 		featuresMask[feature] = true;
 		final SplitFinderContext context = new SplitFinderContext(train, featuresMask, null, maxDepth, 0, labelIndex);
-		final boolean[] subset = RegTree.makeTrainingSubset(train, labelIndex);
 
 		final TreeNode root = RegTree.createTreeRoot(train, labelIndex);
 		final String nodePrediction = "mean";
-		new GrowJob(root, context, subset, 1, nodePrediction, MseSplitCriterion::create, minObs, new StatsSupplier(),
-				false).compute();
+		new GrowJob(root, context, NodeRows.root(context, true), 1, nodePrediction, MseSplitCriterion::create, minObs,
+				new StatsSupplier(), false).compute();
 		final String rulePresentation = root.getRule() == null ? null : root.getRule().getRulePresentation();
 		final TreeNode[] children = root.getChildren();
 
@@ -156,9 +156,8 @@ public final class SplitGain implements IFeatureStatistic, IUiProvider<ISamples<
 
 		final SplitGainInfo[] sorted = getRankedSplitGains(instances, labelIndex);
 		final Map<String, String> result = new LinkedHashMap<>(sorted.length);
-		final float[][] features = instances.features();
 		for (int i = 0; i < sorted.length; ++i) {
-			final FeatureCorrelation bestCor = findStrongestCorrelation(i, sorted, features);
+			final FeatureCorrelation bestCor = findStrongestCorrelation(i, sorted, instances);
 			if (bestCor.bestCor > maxCorrelation) {
 				continue;
 			}
@@ -179,9 +178,8 @@ public final class SplitGain implements IFeatureStatistic, IUiProvider<ISamples<
 		final SplitGainInfo[] sorted = getRankedSplitGains(instances, labelIndex);
 		final StringBuilder result = new StringBuilder();
 		result.append("Feature,Gain,Top rule,Strongest correlation,Strongest correlation feature\n");
-		final float[][] features = instances.features();
 		for (int i = 0; i < sorted.length; ++i) {
-			final FeatureCorrelation bestCor = findStrongestCorrelation(i, sorted, features);
+			final FeatureCorrelation bestCor = findStrongestCorrelation(i, sorted, instances);
 			result.append(sorted[i].featureName + ',');
 			result.append(UiUtils.format(sorted[i].varianceReduction) + ',');
 			result.append(sorted[i].formatRule());
@@ -200,17 +198,13 @@ public final class SplitGain implements IFeatureStatistic, IUiProvider<ISamples<
 	}
 
 	private static FeatureCorrelation findStrongestCorrelation(final int i, final SplitGainInfo[] sorted,
-			final float[][] features) {
+			final ISamples<?, ?> instances) {
 		final FeatureCorrelation bestCor = new FeatureCorrelation();
 		if (i < 150) {
+			final double[] fi = Arrays.asDouble(instances.featureColumn(sorted[i].featureIndex));
 			for (int j = 0; j < i; ++j) {
 				try {
-					final double[] fi = new double[features.length];
-					final double[] fj = new double[features.length];
-					for (int s = 0; s < fi.length; ++s) {
-						fi[s] = features[s][sorted[i].featureIndex];
-						fj[s] = features[s][sorted[j].featureIndex];
-					}
+					final double[] fj = Arrays.asDouble(instances.featureColumn(sorted[j].featureIndex));
 					final double corr = new PearsonsCorrelation().correlation(fi, fj);
 					if (corr > bestCor.bestCor) {
 						bestCor.bestCor = corr;
@@ -18,6 +18,8 @@ package com.insightml.data.samples;
 import java.io.Serializable;
 import java.util.Random;
 
+import javax.annotation.Nullable;
+
 import org.apache.commons.math3.util.Pair;
 
 public interface ISamples<S extends Sample, E> extends Iterable<S>, Serializable {
@@ -40,6 +42,50 @@ public interface ISamples<S extends Sample, E> extends Iterable<S>, Serializable
 
 	float[][] features();
 
+	/**
+	 * @return the features in feature-major layout, i.e. featureColumns()[feature][sample], or null if the samples
+	 *         do not store their features column-wise. Callers reading single features across many samples should
+	 *         prefer this over {@link #features()} when available.
+	 */
+	@Nullable
+	default float[][] featureColumns() {
+		return null;
+	}
+
+	/**
+	 * @return the values of a single feature across all samples, read from {@link #featureColumns()} if available
+	 */
+	default float[] featureColumn(final int feature) {
+		final float[][] columns = featureColumns();
+		if (columns != null) {
+			return columns[feature];
+		}
+		final float[][] features = features();
+		final float[] column = new float[features.length];
+		for (int i = 0; i < column.length; ++i) {
+			column[i] = features[i][feature];
+		}
+		return column;
+	}
+
+	/**
+	 * @return the features in compressed sparse row layout, or null if the samples store their features densely.
+	 *         Learners able to skip default values should prefer this over {@link #features()} when available.
+	 */
+	@Nullable
+	default SparseFeatures sparseFeatures() {
+		return null;
+	}
+
+	/**
+	 * @return for each feature whether its values are category codes, i.e. non-negative integers without any order,
+	 *         or null if all features are numeric
+	 */
+	@Nullable
+	default boolean[] categoricalFeatures() {
+		return null;
+	}
+
 	int[][] orderedIndexes();
 
 	ISamples<S, E> subset(int[] indexes);
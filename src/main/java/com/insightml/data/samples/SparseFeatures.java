@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.data.samples;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import com.insightml.utils.Check;
+
+/**
+ * Features in compressed sparse row layout. Each row only stores the features whose values differ from the feature's
+ * default value, ordered by feature index. Memory therefore scales with the number of such non-default entries
+ * rather than with samples times features.
+ */
+public final class SparseFeatures implements Serializable {
+	private static final long serialVersionUID = -1742406516962370137L;
+
+	private final int[] offsets;
+	private final int[] columns;
+	private final float[] values;
+	private final float[] defaults;
+	private transient volatile int[][] orderedRows;
+
+	/**
+	 * @param offsets
+	 *            the entries of row i are at positions [offsets[i], offsets[i + 1])
+	 * @param columns
+	 *            the feature of each entry, ascending within each row
+	 * @param values
+	 *            the value of each entry
+	 * @param defaults
+	 *            the value of each feature in rows without an entry for it
+	 */
+	public SparseFeatures(final int[] offsets, final int[] columns, final float[] values, final float[] defaults) {
+		Check.equals(columns.length, values.length, "entries");
+		Check.equals(offsets[offsets.length - 1], values.length, "entries");
+		this.offsets = offsets;
+		this.columns = columns;
+		this.values = values;
+		this.defaults = defaults;
+	}
+
+	/**
+	 * @return the sparse representation of the given dense rows
+	 */
+	public static SparseFeatures of(final float[][] rows, final float[] defaults) {
+		final int[] offsets = new int[rows.length + 1];
+		for (int i = 0; i < rows.length; ++i) {
+			int entries = 0;
+			for (int f = 0; f < defaults.length; ++f) {
+				if (rows[i][f] != defaults[f]) {
+					++entries;
+				}
+			}
+			offsets[i + 1] = offsets[i] + entries;
+		}
+		final int[] columns = new int[offsets[rows.length]];
+		final float[] values = new float[columns.length];
+		for (int i = 0, j = 0; i < rows.length; ++i) {
+			for (int f = 0; f < defaults.length; ++f) {
+				if (rows[i][f] != defaults[f]) {
+					columns[j] = f;
+					values[j++] = rows[i][f];
+				}
+			}
+		}
+		return new SparseFeatures(offsets, columns, values, defaults);
+	}
+
+	public int numRows() {
+		return offsets.length - 1;
+	}
+
+	public int numFeatures() {
+		return defaults.length;
+	}
+
+	/**
+	 * @return the number of stored entries
+	 */
+	public int nonDefaults() {
+		return values.length;
+	}
+
+	public float defaultValue(final int feature) {
+		return defaults[feature];
+	}
+
+	public float value(final int row, final int feature) {
+		final int entry = Arrays.binarySearch(columns, offsets[row], offsets[row + 1], feature);
+		return entry < 0 ? defaults[feature] : values[entry];
+	}
+
+	/**
+	 * @return the position of the row's first entry, see {@link #entryFeature(int)} and {@link #entryValue(int)}
+	 */
+	public int rowBegin(final int row) {
+		return offsets[row];
+	}
+
+	/**
+	 * @return the position after the row's last entry
+	 */
+	public int rowEnd(final int row) {
+		return offsets[row + 1];
+	}
+
+	public int entryFeature(final int entry) {
+		return columns[entry];
+	}
+
+	public float entryValue(final int entry) {
+		return values[entry];
+	}
+
+	/**
+	 * @return the dense features of a single row
+	 */
+	public float[] row(final int row) {
+		final float[] features = defaults.clone();
+		for (int j = offsets[row]; j < offsets[row + 1]; ++j) {
+			features[columns[j]] = values[j];
+		}
+		return features;
+	}
+
+	/**
+	 * @return the dense values of a single feature across all rows
+	 */
+	public float[] column(final int feature) {
+		final float[] column = new float[numRows()];
+		for (int i = 0; i < column.length; ++i) {
+			column[i] = value(i, feature);
+		}
+		return column;
+	}
+
+	/**
+	 * @return for each feature the rows with an entry for it, ordered by the entries' values
+	 */
+	public int[][] orderedRows() {
+		if (orderedRows == null) {
+			synchronized (offsets) {
+				if (orderedRows == null) {
+					final int[] counts = new int[defaults.length];
+					for (final int column : columns) {
+						++counts[column];
+					}
+					final int[][] entries = new int[defaults.length][];
+					for (int f = 0; f < entries.length; ++f) {
+						entries[f] = new int[counts[f]];
+					}
+					final int[] rowOf = new int[values.length];
+					final int[] next = new int[defaults.length];
+					for (int i = 0; i < numRows(); ++i) {
+						for (int j = offsets[i]; j < offsets[i + 1]; ++j) {
+							rowOf[j] = i;
+							entries[columns[j]][next[columns[j]]++] = j;
+						}
+					}
+					final int[][] rows = new int[defaults.length][];
+					for (int f = 0; f < rows.length; ++f) {
+						final int[] featureEntries = entries[f];
+						if (featureEntries.length > 1) {
+							quickSort(featureEntries, 0, featureEntries.length - 1);
+						}
+						rows[f] = new int[featureEntries.length];
+						for (int k = 0; k < featureEntries.length; ++k) {
+							rows[f][k] = rowOf[featureEntries[k]];
+						}
+					}
+					orderedRows = rows;
+				}
+			}
+		}
+		return orderedRows;
+	}
+
+	private void quickSort(final int[] entries, final int lo, final int hi) {
+		final int partition = partition(entries, lo, hi);
+		if (lo < partition) {
+			quickSort(entries, lo, partition);
+		}
+		if (partition + 1 < hi) {
+			quickSort(entries, partition + 1, hi);
+		}
+	}
+
+	private int partition(final int[] entries, final int lo, final int hi) {
+		final double pivot = values[entries[lo + (hi - lo) / 2]];
+		int i = lo - 1;
+		int j = hi + 1;
+		while (true) {
+			do {
+				++i;
+			} while (values[entries[i]] < pivot);
+			do {
+				--j;
+			} while (values[entries[j]] > pivot);
+			if (i >= j) {
+				return j;
+			}
+			final int tmp = entries[i];
+			entries[i] = entries[j];
+			entries[j] = tmp;
+		}
+	}
+
+	/**
+	 * @return the given rows, possibly repeated, in the given order
+	 */
+	public SparseFeatures subset(final int[] rows) {
+		final int[] subOffsets = new int[rows.length + 1];
+		for (int i = 0; i < rows.length; ++i) {
+			subOffsets[i + 1] = subOffsets[i] + offsets[rows[i] + 1] - offsets[rows[i]];
+		}
+		final int[] subColumns = new int[subOffsets[rows.length]];
+		final float[] subValues = new float[subColumns.length];
+		for (int i = 0; i < rows.length; ++i) {
+			final int length = offsets[rows[i] + 1] - offsets[rows[i]];
+			System.arraycopy(columns, offsets[rows[i]], subColumns, subOffsets[i], length);
+			System.arraycopy(values, offsets[rows[i]], subValues, subOffsets[i], length);
+		}
+		return new SparseFeatures(subOffsets, subColumns, subValues, defaults);
+	}
+
+	/**
+	 * @return only the features for which keep is true
+	 */
+	public SparseFeatures filter(final boolean[] keep) {
+		Check.equals(keep.length, defaults.length, "features");
+		final int[] map = new int[keep.length];
+		int kept = 0;
+		for (int f = 0; f < keep.length; ++f) {
+			map[f] = keep[f] ? kept++ : -1;
+		}
+		final float[] subDefaults = new float[kept];
+		for (int f = 0; f < keep.length; ++f) {
+			if (keep[f]) {
+				subDefaults[map[f]] = defaults[f];
+			}
+		}
+		final int[] subOffsets = new int[offsets.length];
+		int entries = 0;
+		for (int i = 0; i < numRows(); ++i) {
+			for (int j = offsets[i]; j < offsets[i + 1]; ++j) {
+				if (keep[columns[j]]) {
+					++entries;
+				}
+			}
+			subOffsets[i + 1] = entries;
+		}
+		final int[] subColumns = new int[entries];
+		final float[] subValues = new float[entries];
+		for (int j = 0, k = 0; j < columns.length; ++j) {
+			if (keep[columns[j]]) {
+				subColumns[k] = map[columns[j]];
+				subValues[k++] = values[j];
+			}
+		}
+		return new SparseFeatures(subOffsets, subColumns, subValues, subDefaults);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(offsets) * 31 + Arrays.hashCode(values);
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.data.samples.decorators;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+import javax.annotation.Nullable;
+
+import com.insightml.data.features.IFeatureProvider;
+import com.insightml.data.samples.AbstractSamples;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.math.statistics.Stats;
+import com.insightml.utils.Check;
+import com.insightml.utils.IArguments;
+import com.insightml.utils.jobs.ParallelFor;
+
+/**
+ * Like {@link FeaturesDecorator}, but stores one contiguous array per feature. Learners scanning single features
+ * across all samples read these through {@link #featureColumns()}. The row-major {@link #features()} required for
+ * predictions is only built on first access.
+ *
+ * @param <S>
+ *            The type of the samples.
+ * @param <E>
+ *            The type of the expected values (labels).
+ */
+public final class ColumnarFeaturesDecorator<S extends Sample, E> extends AbstractSamples<S, E> {
+	private static final long serialVersionUID = -4270390787622542474L;
+
+	private ISamples<S, E> ref;
+	private String[] featureNames;
+	@Nullable
+	private boolean[] categoricalFeatures;
+	private float[][] columns;
+	private transient volatile float[][] rows;
+	private transient volatile int[][] orderedByFeatures;
+
+	ColumnarFeaturesDecorator() {
+	}
+
+	public ColumnarFeaturesDecorator(final ISamples<S, E> orig, final float[][] columns, final String[] featureNames) {
+		this(orig, columns, featureNames, orig.categoricalFeatures());
+	}
+
+	public ColumnarFeaturesDecorator(final ISamples<S, E> orig, final float[][] columns, final String[] featureNames,
+			@Nullable final boolean[] categoricalFeatures) {
+		Check.equals(columns.length, featureNames.length, "features");
+		this.ref = orig;
+		this.columns = columns;
+		this.featureNames = featureNames;
+		this.categoricalFeatures = categoricalFeatures;
+	}
+
+	/**
+	 * @return a column-wise copy of the given samples' features. The samples are kept for their labels, so use
+	 *         {@link #of(ISamples, IFeatureProvider, String[], boolean[], Map, boolean, IArguments)} to not also keep
+	 *         their row-major features.
+	 */
+	public static <S extends Sample, E> ColumnarFeaturesDecorator<S, E> of(final ISamples<S, E> samples) {
+		if (samples instanceof ColumnarFeaturesDecorator) {
+			return (ColumnarFeaturesDecorator<S, E>) samples;
+		}
+		final float[][] columns = samples.featureColumns();
+		return new ColumnarFeaturesDecorator<>(samples, columns == null ? transpose(samples.features()) : columns,
+				samples.featureNames());
+	}
+
+	/**
+	 * Fills the columns straight from the provider, one sample at a time, so the features are never held row-major.
+	 */
+	public static <S extends Sample, E> ColumnarFeaturesDecorator<S, E> of(final ISamples<S, E> orig,
+			final IFeatureProvider<S> prov, final String[] featureNames, @Nullable final boolean[] categoricalFeatures,
+			final Map<String, Stats> featureStats, final boolean isTraining, final IArguments arguments) {
+		final float[][] columns = new float[featureNames.length][orig.size()];
+		ParallelFor.run(i -> {
+			final S sample = orig.get(i);
+			if (sample != null) {
+				final float[] row = prov.features(sample, featureNames, featureStats, isTraining, arguments);
+				for (int f = 0; f < columns.length; ++f) {
+					columns[f][i] = row[f];
+				}
+			}
+			return 1;
+		}, 0, orig.size(), 950);
+		return new ColumnarFeaturesDecorator<>(orig, columns, featureNames, categoricalFeatures);
+	}
+
+	/**
+	 * @return the same samples with other features, e.g. the bundles of these features
+	 */
+	public ColumnarFeaturesDecorator<S, E> withColumns(final float[][] featureColumns, final String[] names,
+			@Nullable final boolean[] categorical) {
+		return new ColumnarFeaturesDecorator<>(ref, featureColumns, names, categorical);
+	}
+
+	private static float[][] transpose(final float[][] rows) {
+		final int numFeatures = rows.length == 0 ? 0 : rows[0].length;
+		final float[][] columns = new float[numFeatures][rows.length];
+		for (int i = 0; i < rows.length; ++i) {
+			final float[] row = rows[i];
+			for (int f = 0; f < numFeatures; ++f) {
+				columns[f][i] = row[f];
+			}
+		}
+		return columns;
+	}
+
+	@Override
+	public int size() {
+		return ref.size();
+	}
+
+	@Override
+	public S get(final int i) {
+		return ref.get(i);
+	}
+
+	@Override
+	public int getId(final int i) {
+		return ref.getId(i);
+	}
+
+	@Override
+	public int numLabels() {
+		return ref.numLabels();
+	}
+
+	@Override
+	public E[] expected(final int labelIndex) {
+		return ref.expected(labelIndex);
+	}
+
+	@Override
+	public double[] weights(final int labelIndex) {
+		return ref.weights(labelIndex);
+	}
+
+	@Override
+	public boolean[] categoricalFeatures() {
+		return categoricalFeatures;
+	}
+
+	@Override
+	public float[][] featureColumns() {
+		return columns;
+	}
+
+	@Override
+	public float[][] features() {
+		if (rows == null) {
+			synchronized (featureNames) {
+				if (rows == null) {
+					final float[][] features = new float[size()][columns.length];
+					for (int f = 0; f < columns.length; ++f) {
+						final float[] column = columns[f];
+						for (int i = 0; i < column.length; ++i) {
+							features[i][f] = column[i];
+						}
+					}
+					rows = features;
+				}
+			}
+		}
+		return rows;
+	}
+
+	@Override
+	public String[] featureNames() {
+		return featureNames;
+	}
+
+	@Override
+	public int numFeatures() {
+		return featureNames.length;
+	}
+
+	@Override
+	public int[][] orderedIndexes() {
+		if (orderedByFeatures == null) {
+			synchronized (featureNames) {
+				if (orderedByFeatures == null) {
+					final int size = size();
+					final int[][] ordered = new int[featureNames.length][];
+					ParallelFor.run(f -> {
+						ordered[f] = order(columns[f]);
+						return null;
+					}, 0, featureNames.length, 20);
+					orderedByFeatures = ordered;
+				}
+			}
+		}
+		return orderedByFeatures;
+	}
+
+	/**
+	 * @return the indexes of the given values in ascending order of the values
+	 */
+	static int[] order(final float[] column) {
+		final int[] ordered = new int[column.length];
+		for (int i = 0; i < ordered.length; ++i) {
+			ordered[i] = i;
+		}
+		quickSort(ordered, 0, ordered.length - 1, column);
+		return ordered;
+	}
+
+	private static void quickSort(final int[] idx, final int lo, final int hi, final float[] column) {
+		final int partition = partition(idx, lo, hi, column);
+		if (lo < partition) {
+			quickSort(idx, lo, partition, column);
+		}
+		if (partition + 1 < hi) {
+			quickSort(idx, partition + 1, hi, column);
+		}
+	}
+
+	private static int partition(final int[] idx, final int lo, final int hi, final float[] column) {
+		final double pivot = column[idx[lo + (hi - lo) / 2]];
+		int i = lo - 1;
+		int j = hi + 1;
+		while (true) {
+			do {
+				++i;
+			} while (column[idx[i]] < pivot);
+			do {
+				--j;
+			} while (column[idx[j]] > pivot);
+			if (i >= j) {
+				return j;
+			}
+			final int tmp = idx[i];
+			idx[i] = idx[j];
+			idx[j] = tmp;
+		}
+	}
+
+	@Override
+	public SamplesMapping<S, E> randomize(final Random random) {
+		throw new IllegalAccessError(this + "");
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(Arrays.deepHashCode(columns), expected(0));
+	}
+}
@@ -35,22 +35,36 @@ public class FeaturesDecorator<S extends Sample, E> extends AbstractSamples<S, E
 	private ISamples<S, E> ref;
 	private String[] featureNames;
 	private float[][] features;
+	private boolean[] categoricalFeatures;
 	private int[][] orderedByFeatures;
 
 	FeaturesDecorator() {
 	}
 
 	public FeaturesDecorator(final ISamples<S, E> orig, final float[][] features, final String[] featureNames) {
+		this(orig, features, featureNames, null);
+	}
+
+	public FeaturesDecorator(final ISamples<S, E> orig, final float[][] features, final String[] featureNames,
+			final boolean[] categoricalFeatures) {
 		this.ref = orig;
 		this.features = features;
 		this.featureNames = featureNames;
+		this.categoricalFeatures = categoricalFeatures;
 	}
 
-	public FeaturesDecorator(final ISamples<S, E> orig, final IFeatureProvider prov, final String[] featureNames,
+	public FeaturesDecorator(final ISamples<S, E> orig, final IFeatureProvider<S> prov, final String[] featureNames,
 			final Map<String, Stats> featureStats, final boolean isTraining, final IArguments arguments) {
+		this(orig, prov, featureNames, null, featureStats, isTraining, arguments);
+	}
+
+	public FeaturesDecorator(final ISamples<S, E> orig, final IFeatureProvider<S> prov, final String[] featureNames,
+			final boolean[] categoricalFeatures, final Map<String, Stats> featureStats, final boolean isTraining,
+			final IArguments arguments) {
 		this.ref = orig;
 
 		this.featureNames = featureNames;
+		this.categoricalFeatures = categoricalFeatures;
 
 		features = new float[orig.size()][];
 		ParallelFor.run(i -> {
@@ -102,6 +116,11 @@ public class FeaturesDecorator<S extends Sample, E> extends AbstractSamples<S, E
 		return featureNames;
 	}
 
+	@Override
+	public boolean[] categoricalFeatures() {
+		return categoricalFeatures;
+	}
+
 	@Override
 	public int numFeatures() {
 		return featureNames.length;
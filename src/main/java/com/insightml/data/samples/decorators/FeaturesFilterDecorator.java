@@ -17,6 +17,7 @@ package com.insightml.data.samples.decorators;
 
 import com.insightml.data.samples.ISamples;
 import com.insightml.data.samples.Sample;
+import com.insightml.data.samples.SparseFeatures;
 import com.insightml.math.Vectors;
 import com.insightml.utils.Arrays;
 import com.insightml.utils.Check;
@@ -80,6 +81,43 @@ public final class FeaturesFilterDecorator<S extends Sample, E> extends Abstract
 		return fil;
 	}
 
+	@Override
+	public SparseFeatures sparseFeatures() {
+		final SparseFeatures parent = ref.sparseFeatures();
+		return parent == null ? null : parent.filter(filter);
+	}
+
+	@Override
+	public boolean[] categoricalFeatures() {
+		final boolean[] parent = ref.categoricalFeatures();
+		if (parent == null) {
+			return null;
+		}
+		final boolean[] fil = new boolean[map.length];
+		for (int i = 0; i < fil.length; ++i) {
+			fil[i] = parent[map[i]];
+		}
+		return fil;
+	}
+
+	@Override
+	public float[][] featureColumns() {
+		final float[][] parent = ref.featureColumns();
+		if (parent == null) {
+			return null;
+		}
+		final float[][] fil = new float[map.length][];
+		for (int i = 0; i < fil.length; ++i) {
+			fil[i] = parent[map[i]];
+		}
+		return fil;
+	}
+
+	@Override
+	public float[] featureColumn(final int feature) {
+		return ref.featureColumn(map[feature]);
+	}
+
 	@Override
 	public int[][] orderedIndexes() {
 		if (orderedIndexes == null) {
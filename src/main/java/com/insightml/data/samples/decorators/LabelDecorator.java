@@ -18,18 +18,33 @@ package com.insightml.data.samples.decorators;
 import com.google.common.base.Preconditions;
 import com.insightml.data.samples.ISamples;
 import com.insightml.data.samples.Sample;
+import com.insightml.data.samples.SparseFeatures;
 import com.insightml.utils.Check;
 
 public final class LabelDecorator<S extends Sample, E> extends AbstractDecorator<S, E> {
 	private static final long serialVersionUID = 8741409672524384788L;
 
 	private final E[] expected;
+	private final double[] weights;
 	private final int label;
 
 	public LabelDecorator(final ISamples<S, E> orig, final E[] expected, final int labelIndex) {
+		this(orig, expected, null, labelIndex);
+	}
+
+	/**
+	 * @param weights
+	 *            replaces the original samples' weights, unless null
+	 */
+	public LabelDecorator(final ISamples<S, E> orig, final E[] expected, final double[] weights,
+			final int labelIndex) {
 		super(orig);
 		Check.equals(size(), expected.length, "size");
+		if (weights != null) {
+			Check.equals(weights.length, expected.length, "weights");
+		}
 		this.expected = expected;
+		this.weights = weights;
 		this.label = labelIndex;
 		for (final E element : expected) {
 			Preconditions.checkNotNull(element);
@@ -54,6 +69,10 @@ public final class LabelDecorator<S extends Sample, E> extends AbstractDecorator
 
 	@Override
 	public double[] weights(final int labelIndex) {
+		if (weights != null) {
+			Check.equals(labelIndex, label, "index");
+			return weights;
+		}
 		return ref.weights(labelIndex);
 	}
 
@@ -72,6 +91,26 @@ public final class LabelDecorator<S extends Sample, E> extends AbstractDecorator
 		return ref.features();
 	}
 
+	@Override
+	public SparseFeatures sparseFeatures() {
+		return ref.sparseFeatures();
+	}
+
+	@Override
+	public boolean[] categoricalFeatures() {
+		return ref.categoricalFeatures();
+	}
+
+	@Override
+	public float[][] featureColumns() {
+		return ref.featureColumns();
+	}
+
+	@Override
+	public float[] featureColumn(final int feature) {
+		return ref.featureColumn(feature);
+	}
+
 	@Override
 	public int[][] orderedIndexes() {
 		return ref.orderedIndexes();
@@ -20,6 +20,7 @@ import java.lang.reflect.Array;
 
 import com.insightml.data.samples.ISamples;
 import com.insightml.data.samples.Sample;
+import com.insightml.data.samples.SparseFeatures;
 
 /**
  * A decorator that provides a view on a subset or a reordered version of the original samples. It uses an index mapping
@@ -39,6 +40,10 @@ public final class SamplesMapping<S extends Sample, E> extends AbstractDecorator
 	 * An array where each element is an index into the original samples. indexMapping[i] = originalIndex
 	 */
 	private final int[] indexMapping;
+	/**
+	 * The mapped columns, copied once on the first call of {@link #featureColumns()}.
+	 */
+	private transient volatile float[][] mappedColumns;
 
 	/**
 	 * Creates a new samples mapping.
@@ -120,6 +125,52 @@ public final class SamplesMapping<S extends Sample, E> extends AbstractDecorator
 		return mappedFeatures;
 	}
 
+	@Override
+	public SparseFeatures sparseFeatures() {
+		final SparseFeatures refSparse = ref.sparseFeatures();
+		return refSparse == null ? null : refSparse.subset(indexMapping);
+	}
+
+	@Override
+	public boolean[] categoricalFeatures() {
+		return ref.categoricalFeatures();
+	}
+
+	@Override
+	public float[][] featureColumns() {
+		if (mappedColumns == null) {
+			synchronized (indexMapping) {
+				if (mappedColumns == null) {
+					final float[][] refColumns = ref.featureColumns();
+					if (refColumns == null) {
+						return null;
+					}
+
+					final float[][] columns = new float[refColumns.length][indexMapping.length];
+					for (int f = 0; f < refColumns.length; ++f) {
+						final float[] refColumn = refColumns[f];
+						final float[] mappedColumn = columns[f];
+						for (int i = 0; i < indexMapping.length; ++i) {
+							mappedColumn[i] = refColumn[indexMapping[i]];
+						}
+					}
+					mappedColumns = columns;
+				}
+			}
+		}
+		return mappedColumns;
+	}
+
+	@Override
+	public float[] featureColumn(final int feature) {
+		final float[] refColumn = ref.featureColumn(feature);
+		final float[] mappedColumn = new float[indexMapping.length];
+		for (int i = 0; i < indexMapping.length; ++i) {
+			mappedColumn[i] = refColumn[indexMapping[i]];
+		}
+		return mappedColumn;
+	}
+
 	/**
 	 * Computes the ordered indexes for each feature. The algorithm maps the original ordered indexes (from the parent)
 	 * to the new indexes in this view. It handles cases where an original index appears multiple times in the mapping
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.data.samples.decorators;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+import com.insightml.data.features.FeaturesConsumer;
+import com.insightml.data.features.IFeatureProvider;
+import com.insightml.data.samples.AbstractSamples;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.data.samples.SparseFeatures;
+import com.insightml.math.statistics.Stats;
+import com.insightml.utils.Check;
+import com.insightml.utils.IArguments;
+import com.insightml.utils.jobs.ParallelFor;
+
+/**
+ * Like {@link FeaturesDecorator}, but keeps the features in {@link SparseFeatures}, i.e. only stores the values
+ * which differ from each feature's default. Learners able to skip default values read these through
+ * {@link #sparseFeatures()}. The dense {@link #features()} required for predictions is only built on first access.
+ *
+ * @param <S>
+ *            The type of the samples.
+ * @param <E>
+ *            The type of the expected values (labels).
+ */
+public final class SparseFeaturesDecorator<S extends Sample, E> extends AbstractSamples<S, E> {
+	private static final long serialVersionUID = 3008394880326862186L;
+
+	private ISamples<S, E> ref;
+	private String[] featureNames;
+	private boolean[] categoricalFeatures;
+	private SparseFeatures sparse;
+	private transient volatile float[][] rows;
+	private transient volatile int[][] orderedByFeatures;
+
+	SparseFeaturesDecorator() {
+	}
+
+	public SparseFeaturesDecorator(final ISamples<S, E> orig, final SparseFeatures sparse,
+			final String[] featureNames, final boolean[] categoricalFeatures) {
+		Check.equals(sparse.numFeatures(), featureNames.length, "features");
+		Check.equals(sparse.numRows(), orig.size(), "samples");
+		this.ref = orig;
+		this.sparse = sparse;
+		this.featureNames = featureNames;
+		this.categoricalFeatures = categoricalFeatures;
+	}
+
+	/**
+	 * Collects only the features each sample provides. Features a sample does not provide take the provider's
+	 * missing value, just as in {@link FeaturesDecorator}.
+	 */
+	public static <S extends Sample, E> SparseFeaturesDecorator<S, E> of(final ISamples<S, E> orig,
+			final IFeatureProvider<S> prov, final String[] featureNames, final boolean[] categoricalFeatures,
+			final Map<String, Stats> featureStats, final boolean isTraining, final IArguments arguments) {
+		final Map<String, Integer> index = new HashMap<>();
+		final float[] defaults = new float[featureNames.length];
+		for (int f = 0; f < featureNames.length; ++f) {
+			index.put(featureNames[f], f);
+			defaults[f] = prov.missingValue(featureNames[f], featureStats);
+		}
+		final float[][] rowValues = new float[orig.size()][];
+		final int[][] rowColumns = new int[orig.size()][];
+		ParallelFor.run(i -> {
+			final RowEntries entries = new RowEntries(index);
+			final S sample = orig.get(i);
+			if (sample != null) {
+				prov.features(sample, isTraining, arguments, entries);
+			}
+			entries.finish(defaults);
+			rowColumns[i] = entries.columns;
+			rowValues[i] = entries.values;
+			return 1;
+		}, 0, rowValues.length, 950);
+
+		final int[] offsets = new int[rowValues.length + 1];
+		for (int i = 0; i < rowValues.length; ++i) {
+			offsets[i + 1] = offsets[i] + rowValues[i].length;
+		}
+		final int[] columns = new int[offsets[rowValues.length]];
+		final float[] values = new float[columns.length];
+		for (int i = 0; i < rowValues.length; ++i) {
+			System.arraycopy(rowColumns[i], 0, columns, offsets[i], rowColumns[i].length);
+			System.arraycopy(rowValues[i], 0, values, offsets[i], rowValues[i].length);
+		}
+		return new SparseFeaturesDecorator<>(orig, new SparseFeatures(offsets, columns, values, defaults),
+				featureNames, categoricalFeatures);
+	}
+
+	/**
+	 * Collects the entries a single sample provides, without touching the features it does not provide.
+	 */
+	private static final class RowEntries implements FeaturesConsumer {
+		private final Map<String, Integer> index;
+		int[] columns = new int[8];
+		float[] values = new float[8];
+		private int size;
+
+		RowEntries(final Map<String, Integer> index) {
+			this.index = index;
+		}
+
+		@Override
+		public void add(final String feature, final double value) {
+			final Integer f = index.get(feature);
+			if (f != null) {
+				if (size == columns.length) {
+					columns = Arrays.copyOf(columns, size * 2);
+					values = Arrays.copyOf(values, size * 2);
+				}
+				columns[size] = f;
+				values[size++] = (float) value;
+			}
+		}
+
+		/**
+		 * Orders the entries by feature and drops those equal to the feature's default. Of several values provided
+		 * for the same feature, the last one is kept.
+		 */
+		void finish(final float[] defaults) {
+			// sorts by feature first and the order the values were provided in second
+			final long[] keys = new long[size];
+			for (int j = 0; j < size; ++j) {
+				keys[j] = (long) columns[j] << 32 | j;
+			}
+			Arrays.sort(keys);
+			final int[] sortedColumns = new int[size];
+			final float[] sortedValues = new float[size];
+			int n = 0;
+			for (int k = 0; k < keys.length; ++k) {
+				final int f = (int) (keys[k] >>> 32);
+				if (k + 1 < keys.length && (int) (keys[k + 1] >>> 32) == f) {
+					continue;
+				}
+				final float value = values[(int) keys[k]];
+				if (value != defaults[f]) {
+					sortedColumns[n] = f;
+					sortedValues[n++] = value;
+				}
+			}
+			columns = Arrays.copyOf(sortedColumns, n);
+			values = Arrays.copyOf(sortedValues, n);
+		}
+	}
+
+	@Override
+	public int size() {
+		return ref.size();
+	}
+
+	@Override
+	public S get(final int i) {
+		return ref.get(i);
+	}
+
+	@Override
+	public int getId(final int i) {
+		return ref.getId(i);
+	}
+
+	@Override
+	public int numLabels() {
+		return ref.numLabels();
+	}
+
+	@Override
+	public E[] expected(final int labelIndex) {
+		return ref.expected(labelIndex);
+	}
+
+	@Override
+	public double[] weights(final int labelIndex) {
+		return ref.weights(labelIndex);
+	}
+
+	@Override
+	public SparseFeatures sparseFeatures() {
+		return sparse;
+	}
+
+	@Override
+	public boolean[] categoricalFeatures() {
+		return categoricalFeatures;
+	}
+
+	@Override
+	public float[] featureColumn(final int feature) {
+		return sparse.column(feature);
+	}
+
+	@Override
+	public float[][] features() {
+		if (rows == null) {
+			synchronized (featureNames) {
+				if (rows == null) {
+					final float[][] features = new float[size()][];
+					for (int i = 0; i < features.length; ++i) {
+						features[i] = sparse.row(i);
+					}
+					rows = features;
+				}
+			}
+		}
+		return rows;
+	}
+
+	@Override
+	public String[] featureNames() {
+		return featureNames;
+	}
+
+	@Override
+	public int numFeatures() {
+		return featureNames.length;
+	}
+
+	@Override
+	public int[][] orderedIndexes() {
+		if (orderedByFeatures == null) {
+			synchronized (featureNames) {
+				if (orderedByFeatures == null) {
+					final int[][] ordered = new int[featureNames.length][];
+					ParallelFor.run(f -> {
+						ordered[f] = ColumnarFeaturesDecorator.order(sparse.column(f));
+						return null;
+					}, 0, featureNames.length, 20);
+					orderedByFeatures = ordered;
+				}
+			}
+		}
+		return orderedByFeatures;
+	}
+
+	@Override
+	public SamplesMapping<S, E> randomize(final Random random) {
+		throw new IllegalAccessError(this + "");
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(sparse, expected(0));
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.evaluation.functions;
+
+/**
+ * An objective function whose loss on a single sample can be differentiated with respect to the prediction, so
+ * that learners can minimize it without evaluating the whole objective over and over again.
+ */
+public interface DifferentiableObjectiveFunction {
+
+	/**
+	 * @return the first derivative of the loss with respect to the prediction
+	 */
+	double gradient(double prediction, double label);
+
+	/**
+	 * @return the second derivative of the loss with respect to the prediction, which may be 0 where the loss is
+	 *         piecewise linear
+	 */
+	double hessian(double prediction, double label);
+
+	/**
+	 * Maps a model's raw output, its margin, to a prediction. Boosting in margin space keeps predictions within the
+	 * objective's domain. Objectives overriding this have to override the margin derivatives as well.
+	 */
+	default double link(final double margin) {
+		return margin;
+	}
+
+	/**
+	 * @return the margin which the link maps to the given prediction
+	 */
+	default double margin(final double prediction) {
+		return prediction;
+	}
+
+	/**
+	 * @return the first derivative of the loss with respect to the margin
+	 */
+	default double marginGradient(final double margin, final double label) {
+		return gradient(margin, label);
+	}
+
+	/**
+	 * @return the second derivative of the loss with respect to the margin
+	 */
+	default double marginHessian(final double margin, final double label) {
+		return hessian(margin, label);
+	}
+
+}
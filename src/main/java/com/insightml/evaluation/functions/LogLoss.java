@@ -17,10 +17,13 @@ package com.insightml.evaluation.functions;
 
 import com.insightml.data.samples.Sample;
 
-public final class LogLoss extends AbstractObjectiveFunctionFrame<Object, Object> {
+public final class LogLoss extends AbstractObjectiveFunctionFrame<Object, Object>
+		implements DifferentiableObjectiveFunction {
 
 	private static final long serialVersionUID = 6038479385452595673L;
 
+	private static final double LN_10 = Math.log(10);
+
 	private final boolean useBase10;
 
 	public LogLoss(final boolean useBase10) {
@@ -30,11 +33,59 @@ public final class LogLoss extends AbstractObjectiveFunctionFrame<Object, Object
 	@Override
 	public double instance(final Object prediction, final Object label, final Sample sample, final int labelIndex) {
 		final boolean act = label instanceof Boolean ? (Boolean) label : ((Number) label).doubleValue() == 1;
-		final double capped = Math.min(0.99999999, Math.max(0.00000001, (Double) prediction));
+		final double capped = cap((Double) prediction);
 		final double score = act ? capped : 1 - capped;
 		return useBase10 ? Math.log10(score) : Math.log(score);
 	}
 
+	/**
+	 * Derived from the loss on the capped probability, so that predictions outside of (0, 1) are pushed back.
+	 */
+	@Override
+	public double gradient(final double prediction, final double label) {
+		final double capped = cap(prediction);
+		final double gradient = (1 - label) / (1 - capped) - label / capped;
+		return useBase10 ? gradient / LN_10 : gradient;
+	}
+
+	@Override
+	public double hessian(final double prediction, final double label) {
+		final double capped = cap(prediction);
+		final double hessian = label / (capped * capped) + (1 - label) / ((1 - capped) * (1 - capped));
+		return useBase10 ? hessian / LN_10 : hessian;
+	}
+
+	/**
+	 * The logistic function, so that margins are log-odds.
+	 */
+	@Override
+	public double link(final double margin) {
+		return 1 / (1 + Math.exp(-margin));
+	}
+
+	@Override
+	public double margin(final double prediction) {
+		final double capped = cap(prediction);
+		return Math.log(capped / (1 - capped));
+	}
+
+	@Override
+	public double marginGradient(final double margin, final double label) {
+		final double gradient = link(margin) - label;
+		return useBase10 ? gradient / LN_10 : gradient;
+	}
+
+	@Override
+	public double marginHessian(final double margin, final double label) {
+		final double probability = link(margin);
+		final double hessian = probability * (1 - probability);
+		return useBase10 ? hessian / LN_10 : hessian;
+	}
+
+	private static double cap(final double prediction) {
+		return Math.min(0.99999999, Math.max(0.00000001, prediction));
+	}
+
 	@Override
 	protected double getResult(final double sum, final double weightSum) {
 		return -(sum / weightSum);
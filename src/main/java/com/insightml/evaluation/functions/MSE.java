@@ -18,7 +18,7 @@ package com.insightml.evaluation.functions;
 import com.insightml.data.samples.Sample;
 import com.insightml.math.Maths;
 
-public class MSE extends AbstractObjectiveFunctionFrame<Object, Object> {
+public class MSE extends AbstractObjectiveFunctionFrame<Object, Object> implements DifferentiableObjectiveFunction {
 
 	private static final long serialVersionUID = -4611891533888902754L;
 
@@ -29,6 +29,16 @@ public class MSE extends AbstractObjectiveFunctionFrame<Object, Object> {
 		return Maths.pow(predAndAct[1] - predAndAct[0], 2);
 	}
 
+	@Override
+	public final double gradient(final double prediction, final double label) {
+		return 2 * (prediction - label);
+	}
+
+	@Override
+	public final double hessian(final double prediction, final double label) {
+		return 2;
+	}
+
 	@Override
 	public final double normalize(final double score) {
 		return -score;
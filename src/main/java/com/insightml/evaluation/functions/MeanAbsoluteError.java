@@ -23,7 +23,8 @@ import com.insightml.data.samples.ISamples;
 import com.insightml.data.samples.Sample;
 import com.insightml.models.Predictions;
 
-public final class MeanAbsoluteError extends AbstractObjectiveFunctionFrame<Number, Number> {
+public final class MeanAbsoluteError extends AbstractObjectiveFunctionFrame<Number, Number>
+		implements DifferentiableObjectiveFunction {
 
 	private static final long serialVersionUID = 3835286001852872579L;
 
@@ -65,6 +66,22 @@ public final class MeanAbsoluteError extends AbstractObjectiveFunctionFrame<Numb
 		return Math.abs(label.doubleValue() - pred);
 	}
 
+	/**
+	 * The subgradient, which is 0 wherever predictions are clipped.
+	 */
+	@Override
+	public double gradient(final double prediction, final double label) {
+		if (prediction < min || prediction > max) {
+			return 0;
+		}
+		return Math.signum(prediction - label);
+	}
+
+	@Override
+	public double hessian(final double prediction, final double label) {
+		return 0;
+	}
+
 	@Override
 	public double normalize(final double score) {
 		return -score;
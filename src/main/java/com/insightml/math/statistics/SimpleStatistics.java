@@ -45,10 +45,14 @@ public class SimpleStatistics implements MutableStatistics, Serializable {
 
 	@Override
 	public void add(final IStats stats) {
-		n += stats.getN();
-		sum += stats.getSum();
-		weightedSum += stats.getWeightedSum();
-		sumOfWeights += stats.getSumOfWeights();
+		add(stats.getN(), stats.getSum(), stats.getWeightedSum(), stats.getSumOfWeights());
+	}
+
+	public void add(final long count, final double valueSum, final double weightedValueSum, final double weightSum) {
+		n += count;
+		sum += valueSum;
+		weightedSum += weightedValueSum;
+		sumOfWeights += weightSum;
 	}
 
 	@Override
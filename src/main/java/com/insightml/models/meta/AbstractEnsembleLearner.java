@@ -17,8 +17,6 @@ package com.insightml.models.meta;
 
 import java.util.Random;
 
-import org.apache.commons.math3.util.Pair;
-
 import com.insightml.data.FeaturesConfig;
 import com.insightml.data.samples.ISamples;
 import com.insightml.data.samples.Sample;
@@ -26,8 +24,8 @@ import com.insightml.data.samples.decorators.SamplesMapping;
 import com.insightml.models.AbstractLearner;
 import com.insightml.models.IModel;
 import com.insightml.models.LearnerInput;
+import com.insightml.utils.Check;
 import com.insightml.utils.IArguments;
-import com.insightml.utils.Utils;
 
 public abstract class AbstractEnsembleLearner<S extends Sample, E, O> extends AbstractLearner<S, E, O> {
 	private static final long serialVersionUID = 6350500811359151678L;
@@ -49,16 +47,24 @@ public abstract class AbstractEnsembleLearner<S extends Sample, E, O> extends Ab
 			final ISamples<? extends S, ? extends E> valid, final FeaturesConfig<? extends S, ?> config,
 			final int labelIndex);
 
-	Pair<SamplesMapping<S, E>, double[]> sampleError(final ISamples<S, E> instances, final double[] preds,
-			final Object[] expected, final Random random) {
-		final SamplesMapping<S, E> sample = (SamplesMapping<S, E>) instances.sample(argument("bag"), random).getFirst();
-		final int[] map = sample.getIndexMap();
-		final double[] labels = new double[map.length];
-		for (int i = 0; i < map.length; ++i) {
-			final int idx = map[i];
-			labels[i] = Utils.toDouble(expected[idx]) - preds[idx];
+	/**
+	 * Draws a bag as weights over all samples instead of as a {@link SamplesMapping}, so that learners honoring the
+	 * weights, e.g. {@link com.insightml.models.trees.RegTree}, reuse the samples' features and ordered indexes.
+	 * Draws the same bag as {@link ISamples#sample(double, Random)}.
+	 *
+	 * @return the samples' weights, or 0 for samples outside the bag
+	 */
+	static double[] bagWeights(final ISamples<?, ?> instances, final double ratio, final Random random,
+			final int labelIndex) {
+		Check.num(ratio, 0.01, 0.95);
+		final double[] weights = instances.weights(labelIndex);
+		final double[] bag = new double[instances.size()];
+		for (int i = 0; i < bag.length; ++i) {
+			if (random.nextDouble() <= ratio) {
+				bag[i] = weights == null ? 1 : weights[i];
+			}
 		}
-		return new Pair<>(sample, labels);
+		return bag;
 	}
 
 }
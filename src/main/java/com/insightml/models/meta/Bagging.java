@@ -17,11 +17,17 @@ package com.insightml.models.meta;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +35,8 @@ import org.slf4j.LoggerFactory;
 import com.insightml.data.FeaturesConfig;
 import com.insightml.data.samples.ISamples;
 import com.insightml.data.samples.Sample;
+import com.insightml.data.samples.decorators.LabelDecorator;
+import com.insightml.data.samples.decorators.SamplesMapping;
 import com.insightml.models.ILearner;
 import com.insightml.models.IModel;
 import com.insightml.models.LearnerArguments;
@@ -37,11 +45,17 @@ import com.insightml.models.meta.VoteModel.VoteStrategy;
 import com.insightml.models.trees.RegTree;
 import com.insightml.utils.Arguments;
 import com.insightml.utils.IArguments;
+import com.insightml.utils.jobs.JobPool;
 
 public class Bagging<I extends Sample> extends AbstractEnsembleLearner<I, Double, Double> {
 	private static final long serialVersionUID = -259781296518750592L;
 
 	public static final String FSAMPLE = "fsample";
+	/**
+	 * The maximum number of bags trained concurrently within the shared fork/join pool, or 0 for as many as there are
+	 * processors.
+	 */
+	public static final String THREADS = "threads";
 
 	private VoteStrategy strategy;
 	private ILearner<I, Double, Double>[] learners;
@@ -68,6 +82,7 @@ public class Bagging<I extends Sample> extends AbstractEnsembleLearner<I, Double
 		args.add("bags", 10.0, 2, 1000);
 		args.add("isample", 0.8, 0.1, 1.0);
 		args.add(FSAMPLE, 0.9, 0.025, 1.0);
+		args.add(THREADS, 0.0, 0, 1024, 1);
 		return args;
 	}
 
@@ -80,13 +95,45 @@ public class Bagging<I extends Sample> extends AbstractEnsembleLearner<I, Double
 	public IModel<I, Double> run(final ISamples<I, Double> train, final int labelIndex) {
 		final ISamples<I, Double> samples = preprocess(train);
 		final int bags = getNumberOfBags();
-		final List<BagResult<I>> result = new ArrayList<>(bags);
 		final Logger log = LoggerFactory.getLogger(getClass());
-		for (int i = 0; i < bags; ++i) {
-			log.info("Running bag {}/{}", i + 1, bags);
-			result.add(new BagResult<>(i, computeBag(i, samples, labelIndex), 1));
+		// each bag draws from its own seed, so the result does not depend on the order bags finish in
+		final int threads = Math.min(bags, concurrentBags(samples));
+		final List<BagResult<I>> results = new ArrayList<>(Collections.nCopies(bags, null));
+		// each task trains every threads-th bag in turn, so that at most that many bags are trained at once. The
+		// tasks run in the shared fork/join pool, which nested parallel jobs of the learners run in as well.
+		final List<ForkJoinTask<?>> tasks = new ArrayList<>(threads);
+		for (int t = 0; t < threads; ++t) {
+			final int first = t;
+			tasks.add(ForkJoinTask.adapt(() -> {
+				for (int i = first; i < bags; i += threads) {
+					log.info("Running bag {}/{}", i + 1, bags);
+					results.set(i, bag(i, samples, labelIndex));
+				}
+			}));
 		}
-		return combine(result, strategy, samples.featureNames());
+		JobPool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+		return combine(results, strategy, samples.featureNames(),
+				argument("isample") < 1 ? new OutOfBag<>(results, samples, labelIndex, strategy) : null);
+	}
+
+	/**
+	 * Bags of tree learners only set the weights of the samples left out to 0, but bags of other learners copy their
+	 * share of the samples. These copies must fit into half of the free memory.
+	 */
+	private int concurrentBags(final ISamples<I, Double> samples) {
+		final int threads = (int) argument(THREADS);
+		int concurrent = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		for (final ILearner<I, Double, Double> learner : learners) {
+			if (!(learner instanceof RegTree)) {
+				final long bagBytes = (long) (samples.size() * argument("isample")) * samples.numFeatures()
+						* Float.BYTES;
+				final Runtime runtime = Runtime.getRuntime();
+				final long free = runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory();
+				concurrent = (int) Math.min(concurrent, free / 2 / Math.max(1, bagBytes));
+				break;
+			}
+		}
+		return Math.max(1, concurrent);
 	}
 
 	public ISamples<I, Double> preprocess(@Nonnull final ISamples<I, Double> instances) {
@@ -98,22 +145,92 @@ public class Bagging<I extends Sample> extends AbstractEnsembleLearner<I, Double
 	}
 
 	public IModel<I, Double> computeBag(final int index, final ISamples<I, Double> samples, final int labelIndex) {
+		return bag(index, samples, labelIndex).model;
+	}
+
+	/**
+	 * Trains the bag and predicts the samples it left out.
+	 */
+	private BagResult<I> bag(final int index, final ISamples<I, Double> samples, final int labelIndex) {
 		final ILearner<I, Double, Double> learner = learners[index % learners.length];
 		final double instancesSample = argument("isample");
 		final double featureSample = argument(FSAMPLE);
 		final Random random = new Random((long) Math.pow(index + 2, 2));
 		if (learner instanceof RegTree) {
-			return (IModel<I, Double>) ((RegTree) learner).run(
-					(ISamples) (instancesSample < 1 ? samples.sample(instancesSample, random).getFirst() : samples),
+			// trees skip samples with a zero weight, so the bag does not need to copy any features
+			final double[] weights = instancesSample < 1
+					? bagWeights(samples, instancesSample, random, labelIndex)
+					: null;
+			final ISamples<I, Double> bag = weights != null
+					? new LabelDecorator<>(samples, samples.expected(labelIndex), weights, labelIndex)
+					: samples;
+			return result(index, (IModel<I, Double>) ((RegTree) learner).run((ISamples) bag,
 					GBM.featuresMask(samples.featureNames(), featureSample, getOriginalArguments(), random),
-					labelIndex);
+					labelIndex), samples, weights, null);
 		}
+		// draws the same bag as the sampling below
+		final double[] weights = instancesSample < 1
+				? bagWeights(samples, instancesSample, new Random((long) Math.pow(index + 2, 2)), labelIndex)
+				: null;
 		final ISamples<I, Double> sampled = sample(samples, instancesSample, featureSample, random);
-		return learner.run(sampled, null, null, labelIndex);
+		return result(index, learner.run(sampled, null, null, labelIndex), samples, weights,
+				keptFeatures(samples.featureNames(), sampled.featureNames()));
+	}
+
+	/**
+	 * @return which of the features the bag was trained on, or null if it kept all of them
+	 */
+	@Nullable
+	private static boolean[] keptFeatures(final String[] features, final String[] sampled) {
+		if (sampled.length == features.length) {
+			return null;
+		}
+		final Set<String> names = new HashSet<>(Arrays.asList(sampled));
+		final boolean[] keep = new boolean[features.length];
+		for (int i = 0; i < keep.length; ++i) {
+			keep[i] = names.contains(features[i]);
+		}
+		return keep;
+	}
+
+	/**
+	 * @param weights
+	 *            the bag's weights, with 0 for the samples left out, or null if no samples were left out
+	 * @param features
+	 *            the features the model was trained on, or null for all of them
+	 */
+	private static <I extends Sample> BagResult<I> result(final int index, final IModel<I, Double> model,
+			final ISamples<I, Double> samples, @Nullable final double[] weights, @Nullable final boolean[] features) {
+		if (weights == null) {
+			return new BagResult<>(index, model, 1);
+		}
+		int n = 0;
+		for (final double weight : weights) {
+			n += weight == 0 ? 1 : 0;
+		}
+		final int[] outOfBag = new int[n];
+		for (int i = 0, j = 0; i < weights.length; ++i) {
+			if (weights[i] == 0) {
+				outOfBag[j++] = i;
+			}
+		}
+		final BagResult<I> result = new BagResult<>(index, model, 1, outOfBag, new double[n], features);
+		if (n > 0) {
+			final Double[] predictions = model.apply(result.outOfBag(samples));
+			for (int j = 0; j < n; ++j) {
+				result.outOfBagPredictions[j] = predictions[j];
+			}
+		}
+		return result;
 	}
 
 	public static <I extends Sample> VoteModel<I> combine(final Collection<BagResult<I>> bags,
 			final VoteStrategy strategy, final String[] features) {
+		return combine(bags, strategy, features, null);
+	}
+
+	private static <I extends Sample> VoteModel<I> combine(final Collection<BagResult<I>> bags,
+			final VoteStrategy strategy, final String[] features, @Nullable final OutOfBag<I> outOfBag) {
 		final IModel<I, Double>[] models = new IModel[bags.size()];
 		final double[] weights = new double[models.length];
 		for (final BagResult<I> bag : bags) {
@@ -121,7 +238,7 @@ public class Bagging<I extends Sample> extends AbstractEnsembleLearner<I, Double
 			models[i] = bag.model;
 			weights[i] = bag.weight;
 		}
-		return new VoteModel<>(models, weights, strategy, features);
+		return new VoteModel<>(models, weights, strategy, features, outOfBag);
 	}
 
 	protected ISamples<I, Double> sample(final ISamples<I, Double> samples, final double instancesSample,
@@ -151,14 +268,49 @@ public class Bagging<I extends Sample> extends AbstractEnsembleLearner<I, Double
 	public static final class BagResult<I extends Sample> implements Serializable {
 		private static final long serialVersionUID = 7284489943210164551L;
 
-		private final int index;
-		private final IModel<I, Double> model;
-		private final double weight;
+		final int index;
+		final IModel<I, Double> model;
+		final double weight;
+		final int[] outOfBag;
+		final double[] outOfBagPredictions;
+		@Nullable
+		private final boolean[] features;
 
 		public BagResult(final int index, final IModel<I, Double> model, final double weight) {
+			this(index, model, weight, null, null);
+		}
+
+		/**
+		 * @param outOfBag
+		 *            the indexes of the samples left out by the bag
+		 * @param outOfBagPredictions
+		 *            the bag's predictions for these samples
+		 */
+		public BagResult(final int index, final IModel<I, Double> model, final double weight, final int[] outOfBag,
+				final double[] outOfBagPredictions) {
+			this(index, model, weight, outOfBag, outOfBagPredictions, null);
+		}
+
+		/**
+		 * @param features
+		 *            the features the model was trained on, or null for all of them
+		 */
+		BagResult(final int index, final IModel<I, Double> model, final double weight, final int[] outOfBag,
+				final double[] outOfBagPredictions, @Nullable final boolean[] features) {
 			this.index = index;
 			this.model = model;
 			this.weight = weight;
+			this.outOfBag = outOfBag;
+			this.outOfBagPredictions = outOfBagPredictions;
+			this.features = features;
+		}
+
+		/**
+		 * @return the samples left out by the bag, with the same features the model was trained on
+		 */
+		ISamples<I, Double> outOfBag(final ISamples<I, Double> samples) {
+			final ISamples<I, Double> mapping = new SamplesMapping<>(samples, outOfBag);
+			return features == null ? mapping : mapping.filterFeatures(features);
 		}
 	}
 
@@ -34,6 +34,10 @@ public final class Baseline implements DoubleModel, Serializable {
 		this.value = value;
 	}
 
+	double getValue() {
+		return value;
+	}
+
 	@Override
 	public double[] predictDouble(final ISamples<? extends Sample, ?> instances) {
 		final double[] preds = new double[instances.size()];
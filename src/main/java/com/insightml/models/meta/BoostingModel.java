@@ -23,10 +23,13 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
 
+import jakarta.annotation.Nullable;
+
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
 import com.insightml.data.samples.ISamples;
 import com.insightml.data.samples.Sample;
+import com.insightml.evaluation.functions.DifferentiableObjectiveFunction;
 import com.insightml.math.statistics.SimpleStatistics;
 import com.insightml.math.types.SumMap;
 import com.insightml.math.types.SumMap.SumMapBuilder;
@@ -34,7 +37,11 @@ import com.insightml.models.AbstractModel;
 import com.insightml.models.DistributionModel;
 import com.insightml.models.DistributionPrediction;
 import com.insightml.models.DoubleModel;
+import com.insightml.models.trees.FlatTrees;
+import com.insightml.models.trees.QuickScorer;
+import com.insightml.models.trees.TreeModel;
 import com.insightml.models.trees.TreeNode;
+import com.insightml.models.trees.TreeScorer;
 import com.insightml.utils.Arrays;
 import com.insightml.utils.Check;
 import com.insightml.utils.jobs.ParallelFor;
@@ -44,17 +51,35 @@ import com.insightml.utils.ui.UiUtils;
 public final class BoostingModel extends AbstractModel<Sample, Double> implements DistributionModel<Sample> {
 	@Serial
 	private static final long serialVersionUID = -8115269534209318613L;
+	/** the rows scored at once by a {@link TreeScorer} */
+	private static final int BLOCK = 1_000;
 
 	private DoubleModel first;
 	private List<DoublePair<DoubleModel>> steps;
+	private DifferentiableObjectiveFunction link;
+	private transient volatile boolean compiled;
+	private transient FlatTrees flat;
+	private transient volatile TreeScorer scorer;
 
 	BoostingModel() {
 	}
 
 	public BoostingModel(final DoubleModel first, final List<DoublePair<DoubleModel>> steps, final String[] features) {
+		this(first, steps, features, null);
+	}
+
+	/**
+	 * @param steps
+	 *            might be empty if no step improved on the first model
+	 * @param link
+	 *            maps the summed up steps, i.e. the margin, to the prediction, or null to predict the margin itself
+	 */
+	public BoostingModel(final DoubleModel first, final List<DoublePair<DoubleModel>> steps, final String[] features,
+			final DifferentiableObjectiveFunction link) {
 		super(features);
 		this.first = first;
 		this.steps = steps;
+		this.link = link;
 	}
 
 	@Override
@@ -62,17 +87,114 @@ public final class BoostingModel extends AbstractModel<Sample, Double> implement
 		final double[] preds = first.predictDouble(instances);
 		final float[][] features = instances.features();
 		// We do not expect to have step-level feature filtering as of now
-		Check.isNull(steps.get(0).getKey().constractFeaturesFilter(instances));
+		if (!steps.isEmpty()) {
+			Check.isNull(steps.get(0).getKey().constractFeaturesFilter(instances));
+		}
+		final TreeScorer trees = scorer();
+		if (trees != null) {
+			ParallelFor.run(b -> {
+				final int from = b * BLOCK;
+				final int to = Math.min(from + BLOCK, preds.length);
+				trees.predict(features, preds, from, to);
+				for (int i = from; i < to; ++i) {
+					preds[i] = link(preds[i]);
+				}
+				return 1;
+			}, 0, (preds.length + BLOCK - 1) / BLOCK, 10);
+			return Arrays.cast(preds);
+		}
 		ParallelFor.run(i -> {
 			for (final DoublePair<DoubleModel> step : steps) {
 				final double fit = step.getKey().predict(features[i], null);
 				preds[i] = updatePrediction(preds[i], fit, step.getValue());
 			}
+			preds[i] = link(preds[i]);
 			return 1;
 		}, 0, instances.size(), 10_000);
 		return Arrays.cast(preds);
 	}
 
+	/**
+	 * @return how to score all steps at once, or null unless all of them are supported trees
+	 */
+	@Nullable
+	private TreeScorer scorer() {
+		flatTrees();
+		return scorer;
+	}
+
+	/**
+	 * @return all steps compiled into flat arrays, or null unless all of them are supported trees
+	 */
+	@Nullable
+	private FlatTrees flatTrees() {
+		if (!compiled) {
+			flat = compile(steps);
+			scorer = flat;
+			compiled = true;
+		}
+		return flat;
+	}
+
+	/**
+	 * Switches to scoring all rows' features against the sorted thresholds of all steps at once, which pays off for
+	 * shallow trees scoring large batches.
+	 *
+	 * @return false if any step is no tree or has too many leaves to do so
+	 */
+	public boolean useQuickScorer() {
+		final FlatTrees trees = flatTrees();
+		final QuickScorer quick = trees == null ? null : QuickScorer.of(trees);
+		if (quick != null) {
+			scorer = quick;
+		}
+		return quick != null;
+	}
+
+	/**
+	 * Replaces the steps' flat arrays by bytecode generated for them, which pays off for large ensembles scoring many
+	 * rows.
+	 *
+	 * @return whether the model now scores through generated code
+	 */
+	public boolean generateCode() {
+		final FlatTrees trees = flatTrees();
+		if (trees == null) {
+			return false;
+		}
+		scorer = trees.generate();
+		return scorer != trees;
+	}
+
+	@Nullable
+	private static FlatTrees compile(final List<DoublePair<DoubleModel>> steps) {
+		final TreeNode[] roots = new TreeNode[steps.size()];
+		final double[] gammas = new double[roots.length];
+		for (int s = 0; s < roots.length; ++s) {
+			if (!(steps.get(s).getKey() instanceof final TreeModel tree)) {
+				return null;
+			}
+			roots[s] = tree.getRoot();
+			gammas[s] = steps.get(s).getValue();
+		}
+		return FlatTrees.compile(roots, gammas);
+	}
+
+	public DoubleModel getFirst() {
+		return first;
+	}
+
+	/**
+	 * @return the models fitted in each boosting iteration along with their weights
+	 */
+	public List<DoublePair<DoubleModel>> getSteps() {
+		return steps;
+	}
+
+	private double link(final double margin) {
+		return link == null ? margin : link.link(margin);
+	}
+
 	private static double updatePrediction(final double lastModel, final double update, final double gamma) {
 		return lastModel + gamma * update;
 	}
@@ -108,7 +230,9 @@ public final class BoostingModel extends AbstractModel<Sample, Double> implement
 			final boolean debug) {
 		final float[][] X = samples.features();
 		// No step-level feature filtering expected
-		Check.isNull(steps.get(0).getKey().constractFeaturesFilter(samples));
+		if (!steps.isEmpty()) {
+			Check.isNull(steps.get(0).getKey().constractFeaturesFilter(samples));
+		}
 
 		final DistributionPrediction[] out = new DistributionPrediction[X.length];
 
@@ -156,6 +280,8 @@ public final class BoostingModel extends AbstractModel<Sample, Double> implement
 			}
 		}
 
+		// feature impacts remain in margin space
+		prediction = link(prediction);
 		final SimpleStatistics stats = new SimpleStatistics(1, prediction, prediction, 1);
 
 		if (debug) {
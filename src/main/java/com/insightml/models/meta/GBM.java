@@ -23,14 +23,14 @@ import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 
 import org.apache.commons.math3.exception.ConvergenceException;
-import org.apache.commons.math3.util.Pair;
 
 import com.insightml.data.FeaturesConfig;
 import com.insightml.data.samples.ISamples;
 import com.insightml.data.samples.Sample;
 import com.insightml.data.samples.decorators.LabelDecorator;
-import com.insightml.data.samples.decorators.SamplesMapping;
+import com.insightml.evaluation.functions.DifferentiableObjectiveFunction;
 import com.insightml.evaluation.functions.MSE;
+import com.insightml.evaluation.functions.MeanAbsoluteError;
 import com.insightml.evaluation.functions.ObjectiveFunction;
 import com.insightml.math.optimization.AbstractOptimizable;
 import com.insightml.models.DoubleModel;
@@ -40,9 +40,11 @@ import com.insightml.models.LearnerArguments;
 import com.insightml.models.LearnerInput;
 import com.insightml.models.regression.SimpleRegression;
 import com.insightml.models.trees.RegTree;
+import com.insightml.models.trees.TreeFit;
 import com.insightml.models.trees.TreeModel;
 import com.insightml.utils.Arguments;
 import com.insightml.utils.Arrays;
+import com.insightml.utils.Check;
 import com.insightml.utils.IArguments;
 import com.insightml.utils.Utils;
 import com.insightml.utils.types.DoublePair;
@@ -50,6 +52,21 @@ import com.insightml.utils.types.DoublePair;
 public class GBM extends AbstractEnsembleLearner<Sample, Double, Double> {
 	private static final long serialVersionUID = -7613769806155811550L;
 
+	/**
+	 * Step sizes are searched within [-LINE_SEARCH_BOUND, LINE_SEARCH_BOUND].
+	 */
+	private static final double LINE_SEARCH_BOUND = 9999;
+	/**
+	 * Enables second-order boosting: each tree is fitted to the samples' Newton steps -g/h weighted by their
+	 * Hessians h, which requires a {@link DifferentiableObjectiveFunction}. Its leaves then predict their own Newton
+	 * steps, so no global step size is searched. Trees are summed up in the objective's margin space.
+	 */
+	public static final String NEWTON = "newton";
+	/**
+	 * Gradient-based one-side sampling, see {@link #gossWeights}. It requires trees with weighted leaves.
+	 */
+	public static final String GOSS = "goss";
+
 	private final ILearner<Sample, Double, Double>[] learners;
 	private final ObjectiveFunction<Object, ? super Double> objective;
 	private final Baseline predefinedBaseline;
@@ -90,6 +107,10 @@ public class GBM extends AbstractEnsembleLearner<Sample, Double, Double> {
 		args.add("shrink", 0.01, 0.0001, 0.2);
 		args.add("bag", 0.5, 0.05, 0.9);
 		args.add("fbag", 1.0, 0.05, 1.0);
+		args.add(GOSS, 0.0, 0.0, 0.5);
+		args.add("gossRest", 0.1, 0.01, 0.9);
+		args.add("earlyStop", 0.0, 0, 10000, 10);
+		args.add(NEWTON, 0.0, 0, 1, 1);
 		return args;
 	}
 
@@ -109,40 +130,74 @@ public class GBM extends AbstractEnsembleLearner<Sample, Double, Double> {
 			final ISamples<? extends Sample, ? extends Double> valid, final FeaturesConfig<? extends Sample, ?> config,
 			final int labelIndex) {
 		final Object[] expected = expectedLabels(samples, labelIndex);
-		final double[] weights = weightSamples((ISamples<Sample, Double>) samples, labelIndex);
+		final double[] weights = weightSamples(samples, labelIndex);
+		final boolean newton = argument(NEWTON) > 0;
+		if (newton && !(objective instanceof DifferentiableObjectiveFunction)) {
+			throw new IllegalArgumentException("Newton boosting requires a differentiable objective: " + objective);
+		}
+		final DifferentiableObjectiveFunction link = newton ? (DifferentiableObjectiveFunction) objective : null;
+		if (argument(GOSS) > 0) {
+			for (final ILearner<Sample, Double, Double> learner : learners) {
+				if (!((RegTree) learner).hasWeightedLeaves()) {
+					throw new IllegalArgumentException(
+							"GOSS requires trees with weighted leaves: " + learner.getName());
+				}
+			}
+		}
 
-		final DoubleModel first = f0(expected, weights, labelIndex);
-		double[] preds = first.predictDouble(samples);
+		final DoubleModel first = f0(expected, weights, link, labelIndex);
+		final double[] preds = first.predictDouble(samples);
+		final double[] optim = new double[preds.length];
+		final float[][] features = samples.features();
 		final Random random = Utils.random();
 		final int iterations = (int) argument("it");
 		final double shrinkage = argument("shrink");
 		final List<DoublePair<DoubleModel>> steps = new ArrayList<>(iterations);
+		final int patience = (int) argument("earlyStop");
+		final EarlyStopping earlyStopping = valid != null && patience > 0
+				? new EarlyStopping(valid, first, link, patience, labelIndex)
+				: null;
+		// the trees are grown from relabeled views of the samples, which only ever read Double labels
+		@SuppressWarnings("unchecked")
+		final ISamples<Sample, Double> train = (ISamples<Sample, Double>) samples;
 		for (int i = 0; i < iterations; ++i) {
-			final ISamples<Sample, Double> subset = subset((ISamples<Sample, Double>) samples,
-					preds,
-					expected,
-					random,
-					labelIndex);
-			if (subset == null) {
-				continue;
-			}
+			final ISamples<Sample, Double> subset = newton
+					? newtonSubset(train, link, preds, expected, random, labelIndex)
+					: subset(train, preds, expected, random, labelIndex);
 			try {
-				final TreeModel fit = ((RegTree) learners[i % learners.length])
-						.run(subset, featuresMask(subset, getOriginalArguments(), random), labelIndex);
-				final Pair<Double, double[]> update = fitGamma(fit,
-						preds,
-						samples,
-						expected,
-						weights,
-						i + 1,
-						labelIndex);
-				steps.add(new DoublePair<>(fit, shrinkage * update.getFirst()));
-				preds = update.getSecond();
+				final TreeFit fit = ((RegTree) learners[i % learners.length])
+						.fit(subset, featuresMask(subset, getOriginalArguments(), random), labelIndex);
+				treeOutputs(fit, features, optim);
+				final double gamma = fitGamma(optim, preds, samples, expected, weights, link, i + 1, labelIndex);
+				steps.add(new DoublePair<>(fit.getModel(), shrinkage * gamma));
+				if (earlyStopping != null && earlyStopping.add(fit.getModel(), shrinkage * gamma, steps.size())) {
+					logger.info("Stopping early after {} iterations, best validation score {} after {}", i + 1,
+							earlyStopping.bestScore, earlyStopping.bestSteps);
+					break;
+				}
 			} catch (final ConvergenceException e) {
 				logger.error("{}", e);
 			}
 		}
-		return new BoostingModel(first, steps, samples.featureNames());
+		if (earlyStopping != null && earlyStopping.bestSteps < steps.size()) {
+			// no steps at all if the first model scored best
+			return new BoostingModel(first, new ArrayList<>(steps.subList(0, earlyStopping.bestSteps)),
+					samples.featureNames(), link);
+		}
+		return new BoostingModel(first, steps, samples.featureNames(), link);
+	}
+
+	/**
+	 * Collects the tree's output for all training samples. Samples the tree was grown from take the value of their
+	 * leaf, only the remaining ones are run through the tree.
+	 */
+	static void treeOutputs(final TreeFit fit, final float[][] features, final double[] optim) {
+		final int[] leafIndexes = fit.getLeafIndexes();
+		final double[] leafValues = fit.getLeafValues();
+		final TreeModel model = fit.getModel();
+		for (int i = 0; i < optim.length; ++i) {
+			optim[i] = leafIndexes[i] >= 0 ? leafValues[leafIndexes[i]] : model.predict(features[i]);
+		}
 	}
 
 	private boolean[] featuresMask(final ISamples<?, ?> samples, final IArguments arguments, final Random random) {
@@ -157,13 +212,19 @@ public class GBM extends AbstractEnsembleLearner<Sample, Double, Double> {
 	}
 
 	@SuppressWarnings("static-method")
-	protected double[] weightSamples(final ISamples<Sample, Double> samples, final int labelIndex) {
+	protected double[] weightSamples(final ISamples<? extends Sample, ? extends Double> samples,
+			final int labelIndex) {
 		return samples.weights(labelIndex);
 	}
 
-	private DoubleModel f0(final Object[] exp, final double[] weights, final int labelIndex) {
+	/**
+	 * @param link
+	 *            if not null, the baseline is turned into a margin
+	 */
+	private DoubleModel f0(final Object[] exp, final double[] weights,
+			@Nullable final DifferentiableObjectiveFunction link, final int labelIndex) {
 		if (predefinedBaseline != null) {
-			return predefinedBaseline;
+			return link == null ? predefinedBaseline : new Baseline(link.margin(predefinedBaseline.getValue()));
 		}
 		final double[] preds = new double[exp.length];
 		final double[] optim = new double[preds.length];
@@ -173,36 +234,218 @@ public class GBM extends AbstractEnsembleLearner<Sample, Double, Double> {
 		final double result = findGamma(exp, weights, preds, optim, 0.0000000001, labelIndex);
 		logger.info("[0] " + objective
 				.label(Arrays.cast(updatePredictions(preds, optim, result)), exp, weights, null, labelIndex).getMean());
-		return new Baseline(result);
+		return new Baseline(link == null ? result : link.margin(result));
 	}
 
+	/**
+	 * @return all samples labeled by their residuals, with a zero weight for those not sampled for this iteration
+	 */
 	private ISamples<Sample, Double> subset(final ISamples<Sample, Double> instances, final double[] preds,
 			final Object[] expected, final Random random, final int labelIndex) {
-		final Pair<SamplesMapping<Sample, Double>, double[]> error = sampleError(instances, preds, expected, random);
-		return new LabelDecorator<>(error.getFirst(), Arrays.cast(error.getSecond()), labelIndex);
+		final double[] residuals = new double[preds.length];
+		for (int i = 0; i < residuals.length; ++i) {
+			residuals[i] = Utils.toDouble(expected[i]) - preds[i];
+		}
+		return new LabelDecorator<>(instances, Arrays.cast(residuals),
+				sampleWeights(instances, residuals, random, labelIndex), labelIndex);
+	}
+
+	/**
+	 * @param margins
+	 *            the current predictions in margin space
+	 * @return all samples labeled by their Newton steps -g/h and weighted by their Hessians h, so that trees grown by
+	 *         the MSE criterion choose splits by the Hessian-weighted gain. Samples not sampled for this iteration or
+	 *         without curvature get a zero weight.
+	 */
+	private ISamples<Sample, Double> newtonSubset(final ISamples<Sample, Double> instances,
+			final DifferentiableObjectiveFunction link, final double[] margins, final Object[] expected,
+			final Random random, final int labelIndex) {
+		final double[] gradients = new double[margins.length];
+		final double[] hessians = new double[margins.length];
+		final double[] steps = new double[margins.length];
+		for (int i = 0; i < margins.length; ++i) {
+			final double label = Utils.toDouble(expected[i]);
+			gradients[i] = link.marginGradient(margins[i], label);
+			hessians[i] = link.marginHessian(margins[i], label);
+			steps[i] = hessians[i] > 0 ? -gradients[i] / hessians[i] : 0;
+		}
+		final double[] weights = sampleWeights(instances, gradients, random, labelIndex);
+		for (int i = 0; i < weights.length; ++i) {
+			weights[i] *= Math.max(0, hessians[i]);
+		}
+		return new LabelDecorator<>(instances, Arrays.cast(steps), weights, labelIndex);
+	}
+
+	/**
+	 * @param scores
+	 *            ranks the samples for gradient-based one-side sampling
+	 */
+	private double[] sampleWeights(final ISamples<Sample, Double> instances, final double[] scores,
+			final Random random, final int labelIndex) {
+		final double top = argument(GOSS);
+		return top > 0 ? gossWeights(instances, scores, top, argument("gossRest"), random, labelIndex)
+				: bagWeights(instances, argument("bag"), random, labelIndex);
 	}
 
-	private Pair<Double, double[]> fitGamma(final DoubleModel fit, final double[] preds, final ISamples<?, ?> instances,
-			final Object[] expected, final double[] weights, final int it, final int labelIndex) {
-		final double[] optim = fit.predictDouble(instances);
-		final double gamma = findGamma(expected, weights, preds, optim, 0.000000001, labelIndex);
-		final double[] update = updatePredictions(preds, optim, gamma * argument("shrink"));
+	/**
+	 * Gradient-based one-side sampling: keeps the top fraction of samples by absolute score, i.e. residual or
+	 * gradient, and a random {@code rest} fraction of all samples from the remaining ones. The latter are up-weighted
+	 * by {@code (1 - top) / rest} so that the sum of their scores stays unbiased.
+	 *
+	 * @return the samples' weights, or 0 for samples not kept
+	 */
+	static double[] gossWeights(final ISamples<Sample, Double> instances, final double[] scores,
+			final double top, final double rest, final Random random, final int labelIndex) {
+		Check.num(top + rest, 0.01, 1);
+		final int n = scores.length;
+		final double[] absolute = new double[n];
+		for (int i = 0; i < n; ++i) {
+			absolute[i] = Math.abs(scores[i]);
+		}
+		final double[] sorted = absolute.clone();
+		java.util.Arrays.sort(sorted);
+		final double threshold = sorted[n - Math.max(1, (int) (top * n))];
+		final double restProbability = rest / (1 - top);
+		final double restWeight = (1 - top) / rest;
+
+		final double[] weights = instances.weights(labelIndex);
+		final double[] sampleWeights = new double[n];
+		for (int i = 0; i < n; ++i) {
+			final double weight = weights == null ? 1 : weights[i];
+			if (absolute[i] >= threshold) {
+				sampleWeights[i] = weight;
+			} else if (random.nextDouble() < restProbability) {
+				sampleWeights[i] = weight * restWeight;
+			}
+		}
+		return sampleWeights;
+	}
+
+	/**
+	 * Finds the step size for the tree's outputs and adds the shrunken step to the predictions in place. With Newton
+	 * boosting, the tree's outputs already are the steps.
+	 *
+	 * @param link
+	 *            not null for Newton boosting, with the predictions being margins
+	 */
+	private double fitGamma(final double[] optim, final double[] preds, final ISamples<?, ?> instances,
+			final Object[] expected, final double[] weights, @Nullable final DifferentiableObjectiveFunction link,
+			final int it, final int labelIndex) {
+		final double gamma = link != null ? 1 : findGamma(expected, weights, preds, optim, 0.000000001, labelIndex);
+		final double step = gamma * argument("shrink");
+		for (int i = 0; i < preds.length; ++i) {
+			preds[i] += step * optim[i];
+		}
 		if (it % 50 == 0) {
 			logger.info("[" + it + "] "
-					+ objective.label(Arrays.cast(update), expected, weights, instances, labelIndex).getMean());
+					+ objective.label(Arrays.cast(link(link, preds)), expected, weights, instances, labelIndex)
+							.getMean());
+		}
+		return gamma;
+	}
+
+	/**
+	 * @return the predictions for the given margins, or the margins themselves without a link
+	 */
+	private static double[] link(@Nullable final DifferentiableObjectiveFunction link, final double[] margins) {
+		if (link == null) {
+			return margins;
+		}
+		final double[] preds = new double[margins.length];
+		for (int i = 0; i < preds.length; ++i) {
+			preds[i] = link.link(margins[i]);
 		}
-		return new Pair<>(gamma, update);
+		return preds;
 	}
 
 	private double findGamma(final Object[] exp, final double[] weights, final double[] preds, final double[] optim,
 			final double prec, final int labelIndex) {
-		return objective instanceof MSE ? fitSquares(exp, weights, preds, optim)
-				: fitObjective(exp, weights, preds, optim, prec, labelIndex);
+		if (objective instanceof MSE) {
+			return fitSquares(exp, weights, preds, optim);
+		}
+		if ((Object) objective instanceof MeanAbsoluteError) {
+			return fitAbsolute(exp, weights, preds, optim);
+		}
+		if (objective instanceof final DifferentiableObjectiveFunction differentiable) {
+			return lineSearch(differentiable, exp, weights, preds, optim, prec);
+		}
+		return fitObjective(exp, weights, preds, optim, prec, labelIndex);
+	}
+
+	/**
+	 * Minimizes the weighted loss along the given direction by Newton steps on its derivative. Steps leaving the
+	 * bracket of the minimum, or lacking curvature as for piecewise linear losses, fall back to bisection. Each step
+	 * takes a single pass over the samples and allocates nothing.
+	 */
+	static double lineSearch(final DifferentiableObjectiveFunction objective, final Object[] exp,
+			final double[] weights, final double[] preds, final double[] optim, final double prec) {
+		final double[] labels = new double[exp.length];
+		for (int i = 0; i < labels.length; ++i) {
+			labels[i] = exp[i] == null ? Double.NaN : Utils.toDouble(exp[i]);
+		}
+		final double[] derivatives = new double[2];
+		derivatives(objective, labels, weights, preds, optim, 0, derivatives);
+		if (derivatives[0] == 0) {
+			return 0;
+		}
+		// the loss is convex along the direction, so expand until its derivative changes sign
+		final double sign = derivatives[0] < 0 ? 1 : -1;
+		double bound = sign;
+		while (Math.abs(bound) < LINE_SEARCH_BOUND) {
+			derivatives(objective, labels, weights, preds, optim, bound, derivatives);
+			if (derivatives[0] * sign >= 0) {
+				break;
+			}
+			bound = Math.max(-LINE_SEARCH_BOUND, Math.min(LINE_SEARCH_BOUND, bound * 2));
+		}
+		double lo = Math.min(0, bound);
+		double hi = Math.max(0, bound);
+		double gamma = (lo + hi) / 2;
+		for (int it = 0; it < 100 && hi - lo > prec * Math.max(1, Math.abs(gamma)); ++it) {
+			derivatives(objective, labels, weights, preds, optim, gamma, derivatives);
+			if (derivatives[0] == 0) {
+				return gamma;
+			}
+			if (derivatives[0] < 0) {
+				lo = gamma;
+			} else {
+				hi = gamma;
+			}
+			final double newton = derivatives[1] > 0 ? gamma - derivatives[0] / derivatives[1] : Double.NaN;
+			if (newton > lo && newton < hi) {
+				if (Math.abs(newton - gamma) <= prec * Math.max(1, Math.abs(gamma))) {
+					return newton;
+				}
+				gamma = newton;
+			} else {
+				gamma = (lo + hi) / 2;
+			}
+		}
+		return gamma;
+	}
+
+	/**
+	 * Fills in the first and second derivative of the weighted loss with respect to the step size gamma.
+	 */
+	private static void derivatives(final DifferentiableObjectiveFunction objective, final double[] labels,
+			final double[] weights, final double[] preds, final double[] optim, final double gamma,
+			final double[] derivatives) {
+		double gradient = 0;
+		double hessian = 0;
+		for (int i = 0; i < labels.length; ++i) {
+			if (Double.isNaN(labels[i]) || optim[i] == 0) {
+				continue;
+			}
+			final double prediction = preds[i] + gamma * optim[i];
+			gradient += weights[i] * objective.gradient(prediction, labels[i]) * optim[i];
+			hessian += weights[i] * objective.hessian(prediction, labels[i]) * optim[i] * optim[i];
+		}
+		derivatives[0] = gradient;
+		derivatives[1] = hessian;
 	}
 
 	private double fitObjective(final Object[] exp, final double[] weights, final double[] preds, final double[] optim,
 			final double prec, final int labelIndex) {
-		// TODO: add analytical solutions for more objectives
 		return new AbstractOptimizable(10000, prec, -9999, 9999) {
 			@Override
 			public double value(final double[] point) {
@@ -221,6 +464,87 @@ public class GBM extends AbstractEnsembleLearner<Sample, Double, Double> {
 		return preds;
 	}
 
+	/**
+	 * The weighted absolute loss along the direction is sum w|o| |(y - p) / o - gamma|, which a weighted median of the
+	 * ratios minimizes. Predictions are assumed to stay within the loss's clipping range.
+	 */
+	static double fitAbsolute(final Object[] expected, final double[] weights, final double[] preds,
+			final double[] optim) {
+		final double[] ratios = new double[preds.length];
+		final double[] ratioWeights = new double[preds.length];
+		int n = 0;
+		for (int i = 0; i < preds.length; ++i) {
+			if (expected[i] != null && optim[i] != 0 && weights[i] > 0) {
+				ratios[n] = (Utils.toDouble(expected[i]) - preds[i]) / optim[i];
+				ratioWeights[n++] = weights[i] * Math.abs(optim[i]);
+			}
+		}
+		if (n == 0) {
+			return 0;
+		}
+		return Math.max(-LINE_SEARCH_BOUND, Math.min(LINE_SEARCH_BOUND, weightedMedian(ratios, ratioWeights, n)));
+	}
+
+	/**
+	 * Selects the smallest of the first n values whose cumulative weight reaches half of the total weight, reordering
+	 * both arrays in place. Takes linear time on average.
+	 *
+	 * @param weights
+	 *            positive weights of the values
+	 */
+	static double weightedMedian(final double[] values, final double[] weights, final int n) {
+		double total = 0;
+		for (int i = 0; i < n; ++i) {
+			total += weights[i];
+		}
+		final double half = total / 2;
+		// the weight of the values known to be smaller than those within [lo, hi]
+		double below = 0;
+		int lo = 0;
+		int hi = n - 1;
+		while (lo < hi) {
+			final double pivot = values[lo + (hi - lo) / 2];
+			// partitions [lo, hi] into values smaller than, equal to and larger than the pivot
+			int lt = lo;
+			int gt = hi;
+			for (int i = lo; i <= gt;) {
+				if (values[i] < pivot) {
+					swap(values, weights, lt++, i++);
+				} else if (values[i] > pivot) {
+					swap(values, weights, i, gt--);
+				} else {
+					++i;
+				}
+			}
+			double less = 0;
+			for (int i = lo; i < lt; ++i) {
+				less += weights[i];
+			}
+			double equal = 0;
+			for (int i = lt; i <= gt; ++i) {
+				equal += weights[i];
+			}
+			if (below + less >= half) {
+				hi = lt - 1;
+			} else if (below + less + equal >= half) {
+				return pivot;
+			} else {
+				below += less + equal;
+				lo = gt + 1;
+			}
+		}
+		return values[lo];
+	}
+
+	private static void swap(final double[] values, final double[] weights, final int i, final int j) {
+		final double value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+		final double weight = weights[i];
+		weights[i] = weights[j];
+		weights[j] = weight;
+	}
+
 	private static double fitSquares(final Object[] expected, final double[] weights, final double[] preds,
 			final double[] optim) {
 		final SimpleRegression reg = new SimpleRegression(false);
@@ -229,4 +553,60 @@ public class GBM extends AbstractEnsembleLearner<Sample, Double, Double> {
 		}
 		return reg.regress()[0];
 	}
+
+	/**
+	 * Scores the validation samples after each iteration. Only the newest tree's contribution is added to the cached
+	 * validation predictions.
+	 */
+	private final class EarlyStopping {
+		private final ISamples<? extends Sample, ? extends Double> valid;
+		private final float[][] features;
+		private final double[] preds;
+		private final Double[] expected;
+		private final double[] weights;
+		private final DifferentiableObjectiveFunction link;
+		private final int patience;
+		private final int labelIndex;
+		double bestScore;
+		int bestSteps;
+
+		EarlyStopping(final ISamples<? extends Sample, ? extends Double> valid, final DoubleModel first,
+				@Nullable final DifferentiableObjectiveFunction link, final int patience, final int labelIndex) {
+			this.valid = valid;
+			features = valid.features();
+			preds = first.predictDouble(valid);
+			expected = expectedLabels(valid, labelIndex);
+			weights = weightSamples(valid, labelIndex);
+			this.link = link;
+			this.patience = patience;
+			this.labelIndex = labelIndex;
+			bestScore = score();
+		}
+
+		/**
+		 * @param steps
+		 *            the number of steps including the given one
+		 * @return whether the score has not improved for the configured number of steps
+		 */
+		boolean add(final TreeModel model, final double gamma, final int steps) {
+			if (steps == 1) {
+				// like BoostingModel, we do not expect any feature filtering
+				Check.isNull(model.constractFeaturesFilter(valid));
+			}
+			for (int i = 0; i < preds.length; ++i) {
+				preds[i] += gamma * model.predict(features[i]);
+			}
+			final double score = score();
+			if (score > bestScore) {
+				bestScore = score;
+				bestSteps = steps;
+			}
+			return steps - bestSteps >= patience;
+		}
+
+		private double score() {
+			return objective.normalize(
+					objective.label(Arrays.cast(link(link, preds)), expected, weights, valid, labelIndex).getMean());
+		}
+	}
 }
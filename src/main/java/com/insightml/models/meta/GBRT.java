@@ -17,12 +17,17 @@ package com.insightml.models.meta;
 
 import java.util.function.Supplier;
 
+import javax.annotation.Nullable;
+
 import com.insightml.evaluation.functions.MSE;
 import com.insightml.evaluation.functions.ObjectiveFunction;
 import com.insightml.math.statistics.StatsBuilder;
+import com.insightml.models.trees.ExactMaeSplitCriterion;
 import com.insightml.models.trees.MseSplitCriterion;
 import com.insightml.models.trees.RegTree;
 import com.insightml.models.trees.RegTree.SimpleStatisticsSupplier;
+import com.insightml.models.trees.SplitCriterionFactory;
+import com.insightml.utils.Arguments;
 import com.insightml.utils.IArguments;
 
 public class GBRT extends GBM {
@@ -32,6 +37,24 @@ public class GBRT extends GBM {
 	public static final String MIN_OBS = "minObs";
 	public static final String NODE_PRED = "nodePred";
 	public static final String PARALLELIZE = "parallelize";
+	public static final String MAX_BINS = "maxBins";
+	public static final String MAX_LEAVES = "maxLeaves";
+	/**
+	 * Second-order boosting, see {@link GBM#NEWTON}. Trees then predict regularized Newton steps in their leaves.
+	 */
+	public static final String LAMBDA = "lambda";
+	/**
+	 * The minimum rows of nodes growing their children as separate tasks, 500 by default.
+	 */
+	public static final String NODE_PARALLEL_ROWS = "nodeParallelRows";
+	/**
+	 * The minimum rows of nodes searching their features in parallel, 20000 by default.
+	 */
+	public static final String FEATURE_PARALLEL_ROWS = "featureParallelRows";
+	/**
+	 * "mse" (default) or "mae" for median regression trees.
+	 */
+	public static final String SPLIT_CRITERION = "splitCriterion";
 
 	public GBRT(final IArguments arguments) {
 		super(arguments, new MSE(), getLearner(arguments, new SimpleStatisticsSupplier(), true), null);
@@ -50,13 +73,15 @@ public class GBRT extends GBM {
 	public GBRT(final IArguments arguments, final int it, final double shrink, final double bag, final int minDepth,
 			final int maxDepth, final int minObs, final boolean parallelize) {
 		super(arguments, it, shrink, bag, new MSE(),
-				getLearner(minDepth, maxDepth, minObs, 1, new SimpleStatisticsSupplier(), parallelize));
+				getLearner(minDepth, maxDepth, minObs, 1, MseSplitCriterion.factory(), new SimpleStatisticsSupplier(),
+						parallelize, null));
 	}
 
 	public GBRT(final IArguments arguments, final int it, final double shrink, final double bag, final int minDepth,
 			final int maxDepth, final int minObs, final int nodePred) {
 		super(arguments, it, shrink, bag, new MSE(),
-				getLearner(minDepth, maxDepth, minObs, nodePred, new SimpleStatisticsSupplier(), true));
+				getLearner(minDepth, maxDepth, minObs, nodePred, MseSplitCriterion.factory(),
+						new SimpleStatisticsSupplier(), true, null));
 	}
 
 	public static RegTree[] getLearner(final IArguments arguments, final Supplier<StatsBuilder<?>> statisticsFactory,
@@ -65,19 +90,60 @@ public class GBRT extends GBM {
 		return getLearner(arguments.toInt(DEPTH, 4),
 				arguments.toInt(DEPTH, 4),
 				arguments.toInt(MIN_OBS, 10),
-				arguments.toInt(NODE_PRED, 1),
+				nodePrediction(arguments),
+				splitCriterion(arguments),
 				statisticsFactory,
-				arguments.bool(PARALLELIZE, parallelize));
+				arguments.bool(PARALLELIZE, parallelize),
+				treeArguments(arguments));
+	}
+
+	/**
+	 * Newton boosting requires Newton steps in the leaves. With gradient-based one-side sampling, means turn into
+	 * weighted means, as the samples' weights then correct for the sampling.
+	 */
+	private static int nodePrediction(final IArguments arguments) {
+		if (arguments.toDouble(GBM.NEWTON, 0.0) > 0) {
+			return 5;
+		}
+		final int nodePred = arguments.toInt(NODE_PRED, 1);
+		return nodePred == 1 && arguments.toDouble(GBM.GOSS, 0.0) > 0 ? 6 : nodePred;
 	}
 
 	private static RegTree[] getLearner(final int minDepth, final int maxDepth, final int minObs, final int nodePred,
-			final Supplier<StatsBuilder<?>> statisticsFactory, final boolean parallelize) {
+			final SplitCriterionFactory splitCriterion, final Supplier<StatsBuilder<?>> statisticsFactory,
+			final boolean parallelize, @Nullable final IArguments treeArguments) {
 		final RegTree[] learner = new RegTree[maxDepth - minDepth + 1];
 		for (int i = 0; i < learner.length; ++i) {
-			learner[i] = new RegTree(i + minDepth, minObs, nodePred, MseSplitCriterion.factory(), statisticsFactory,
-					parallelize, null);
+			learner[i] = new RegTree(i + minDepth, minObs, nodePred, splitCriterion, statisticsFactory, parallelize,
+					treeArguments);
 		}
 		return learner;
 	}
 
+	private static SplitCriterionFactory splitCriterion(final IArguments arguments) {
+		final String criterion = arguments.toString(SPLIT_CRITERION, "mse");
+		switch (criterion) {
+		case "mse":
+			return MseSplitCriterion.factory();
+		case "mae":
+			return ExactMaeSplitCriterion.factory();
+		default:
+			throw new IllegalArgumentException(criterion);
+		}
+	}
+
+	@Nullable
+	private static IArguments treeArguments(final IArguments arguments) {
+		final Arguments treeArguments = new Arguments();
+		for (final String key : new String[] { MAX_BINS, MAX_LEAVES, NODE_PARALLEL_ROWS, FEATURE_PARALLEL_ROWS }) {
+			if (arguments.containsKey(key)) {
+				treeArguments.set(key, arguments.toInt(key));
+			}
+		}
+		if (arguments.containsKey(LAMBDA)) {
+			treeArguments.set(LAMBDA, arguments.toDouble(LAMBDA));
+		}
+		return treeArguments.entrySet().isEmpty() ? null : treeArguments;
+	}
+
 }
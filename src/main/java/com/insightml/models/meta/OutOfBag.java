@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.meta;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.data.samples.decorators.FeaturesDecorator;
+import com.insightml.evaluation.functions.ObjectiveFunction;
+import com.insightml.math.statistics.Stats;
+import com.insightml.models.meta.Bagging.BagResult;
+import com.insightml.models.meta.VoteModel.VoteStrategy;
+import com.insightml.utils.Check;
+
+/**
+ * The out-of-bag predictions of a bagged ensemble: each training sample is only predicted by the bags it was left out
+ * of, so scores on these predictions estimate the ensemble's generalization error without a separate validation
+ * set. Only kept in memory along with the training samples, hence not serialized.
+ */
+public final class OutOfBag<I extends Sample> {
+
+	private final ISamples<I, Double> samples;
+	private final int labelIndex;
+	private final VoteStrategy strategy;
+	private final List<BagResult<I>> bags;
+	private final Double[] predictions;
+	private final int[] covered;
+
+	/**
+	 * @param strategy
+	 *            combines the bags' predictions of each sample, weighted by the bags' weights, just as in
+	 *            {@link VoteModel}
+	 */
+	OutOfBag(final List<BagResult<I>> bags, final ISamples<I, Double> samples, final int labelIndex,
+			final VoteStrategy strategy) {
+		this.samples = samples;
+		this.labelIndex = labelIndex;
+		this.strategy = strategy;
+		this.bags = bags;
+		final Stats[] votes = new Stats[samples.size()];
+		for (final BagResult<I> bag : bags) {
+			add(Check.notNull(bag.outOfBag), bag.outOfBagPredictions, bag.weight, votes);
+		}
+		int n = 0;
+		for (final Stats vote : votes) {
+			n += vote != null ? 1 : 0;
+		}
+		covered = new int[n];
+		for (int i = 0, j = 0; i < votes.length; ++i) {
+			if (votes[i] != null) {
+				covered[j++] = i;
+			}
+		}
+		predictions = resolve(votes);
+	}
+
+	private static void add(final int[] rows, final double[] preds, final double weight, final Stats[] votes) {
+		for (int j = 0; j < rows.length; ++j) {
+			if (votes[rows[j]] == null) {
+				votes[rows[j]] = new Stats();
+			}
+			votes[rows[j]].add(preds[j], weight);
+		}
+	}
+
+	private Double[] resolve(final Stats[] votes) {
+		final Double[] resolved = new Double[covered.length];
+		for (int j = 0; j < covered.length; ++j) {
+			resolved[j] = VoteModel.resolve(votes[covered[j]], strategy);
+		}
+		return resolved;
+	}
+
+	/**
+	 * @return the indexes of the training samples left out by at least one bag, i.e. those having a prediction
+	 */
+	public int[] getCovered() {
+		return covered;
+	}
+
+	/**
+	 * @return the out-of-bag prediction for each of the {@link #getCovered()} samples
+	 */
+	public Double[] getPredictions() {
+		return predictions;
+	}
+
+	/**
+	 * @return the objective's score on the out-of-bag predictions
+	 */
+	public double score(final ObjectiveFunction<? super Double, ? super Double> objective) {
+		return score(objective, predictions);
+	}
+
+	private double score(final ObjectiveFunction<? super Double, ? super Double> objective, final Double[] preds) {
+		final Double[] expected = samples.expected(labelIndex);
+		final double[] weights = samples.weights(labelIndex);
+		final Double[] coveredExpected = new Double[covered.length];
+		final double[] coveredWeights = new double[covered.length];
+		for (int j = 0; j < covered.length; ++j) {
+			coveredExpected[j] = expected[covered[j]];
+			coveredWeights[j] = weights[covered[j]];
+		}
+		return objective.label(preds, coveredExpected, coveredWeights, null, labelIndex).getMean();
+	}
+
+	/**
+	 * Permutes each feature's values across the training samples in turn and predicts the out-of-bag samples again.
+	 *
+	 * @return for each feature, by how much the normalized score drops once its values are permuted
+	 */
+	public Map<String, Double> permutationImportance(final ObjectiveFunction<? super Double, ? super Double> objective,
+			final Random random) {
+		final double baseline = objective.normalize(score(objective));
+		final float[][] original = samples.features();
+		final float[][] features = new float[original.length][];
+		for (int i = 0; i < features.length; ++i) {
+			features[i] = original[i].clone();
+		}
+		final String[] names = samples.featureNames();
+		final ISamples<I, Double> permuted = new FeaturesDecorator<>(samples, features, names);
+		final Map<String, Double> importance = new LinkedHashMap<>();
+		for (int f = 0; f < names.length; ++f) {
+			for (int i = features.length - 1; i > 0; --i) {
+				final int j = random.nextInt(i + 1);
+				final float tmp = features[i][f];
+				features[i][f] = features[j][f];
+				features[j][f] = tmp;
+			}
+			importance.put(names[f], baseline - objective.normalize(score(objective, predict(permuted))));
+			for (int i = 0; i < features.length; ++i) {
+				features[i][f] = original[i][f];
+			}
+		}
+		return importance;
+	}
+
+	private Double[] predict(final ISamples<I, Double> permuted) {
+		final Stats[] votes = new Stats[permuted.size()];
+		for (final BagResult<I> bag : bags) {
+			if (bag.outOfBag.length > 0) {
+				final Double[] preds = bag.model.apply(bag.outOfBag(permuted));
+				final double[] values = new double[preds.length];
+				for (int j = 0; j < preds.length; ++j) {
+					values[j] = preds[j];
+				}
+				add(bag.outOfBag, values, bag.weight, votes);
+			}
+		}
+		return resolve(votes);
+	}
+
+}
@@ -83,6 +83,8 @@ public class RandomForest extends Bagging<Sample> {
 		args.add(GBRT.DEPTH, 4.0, 2, 24);
 		args.add(GBRT.MIN_OBS, 10.0, 5, 20000);
 		args.add(GBRT.NODE_PRED, 1.0, 1, 4);
+		args.add(GBRT.MAX_BINS, 0.0, 0, 255);
+		args.add(GBRT.MAX_LEAVES, 0.0, 0, 100000);
 		return args;
 	}
 
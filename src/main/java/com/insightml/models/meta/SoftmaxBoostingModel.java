@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.meta;
+
+import java.io.Serial;
+import java.util.List;
+import java.util.Map.Entry;
+
+import com.google.common.base.MoreObjects;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.math.types.SumMap;
+import com.insightml.math.types.SumMap.SumMapBuilder;
+import com.insightml.models.AbstractModel;
+import com.insightml.models.trees.FlatTrees;
+import com.insightml.models.trees.TreeModel;
+import com.insightml.models.trees.TreeNode;
+import com.insightml.utils.Check;
+import com.insightml.utils.jobs.ParallelFor;
+
+/**
+ * Predicts the class probabilities of a {@link SoftmaxGBM}: each step holds one tree per class, whose outputs are
+ * summed up into the classes' margins and finally normalized by the softmax function.
+ */
+public final class SoftmaxBoostingModel extends AbstractModel<Sample, double[]> {
+	@Serial
+	private static final long serialVersionUID = 4571290375914870125L;
+
+	private double[] first;
+	private List<TreeModel[]> steps;
+	private double shrinkage;
+	private transient volatile FlatTrees[] flat;
+
+	SoftmaxBoostingModel() {
+	}
+
+	SoftmaxBoostingModel(final double[] first, final List<TreeModel[]> steps, final double shrinkage,
+			final String[] features) {
+		super(features);
+		this.first = first;
+		this.steps = steps;
+		this.shrinkage = shrinkage;
+	}
+
+	@Override
+	public double[][] apply(final ISamples<? extends Sample, ?> instances) {
+		final float[][] features = instances.features();
+		if (!steps.isEmpty()) {
+			// like BoostingModel, we do not expect any feature filtering
+			Check.isNull(steps.get(0)[0].constractFeaturesFilter(instances));
+		}
+		final double[][] preds = new double[instances.size()][];
+		ParallelFor.run(i -> {
+			preds[i] = predict(features[i]);
+			return 1;
+		}, 0, preds.length, 10_000);
+		return preds;
+	}
+
+	/**
+	 * @return the probability of each class, traversing all classes' trees in a single pass
+	 */
+	public double[] predict(final float[] features) {
+		final FlatTrees[] classes = flatTrees();
+		final double[] margins = new double[first.length];
+		for (int k = 0; k < margins.length; ++k) {
+			margins[k] = classes[k].predict(features, first[k]);
+		}
+		softmax(margins, margins);
+		return margins;
+	}
+
+	/**
+	 * @return each class' trees compiled into flat arrays
+	 */
+	private FlatTrees[] flatTrees() {
+		if (flat == null) {
+			final FlatTrees[] classes = new FlatTrees[first.length];
+			for (int k = 0; k < classes.length; ++k) {
+				final TreeNode[] roots = new TreeNode[steps.size()];
+				final double[] weights = new double[roots.length];
+				for (int s = 0; s < roots.length; ++s) {
+					roots[s] = steps.get(s)[k].getRoot();
+					weights[s] = shrinkage;
+				}
+				// trees grown by RegTree only contain supported splits
+				classes[k] = Check.notNull(FlatTrees.compile(roots, weights));
+			}
+			flat = classes;
+		}
+		return flat;
+	}
+
+	/**
+	 * Writes the softmax of the given margins into {@code probabilities}, which may be the margins themselves.
+	 */
+	static void softmax(final double[] margins, final double[] probabilities) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (final double margin : margins) {
+			max = Math.max(max, margin);
+		}
+		double sum = 0;
+		for (int k = 0; k < margins.length; ++k) {
+			probabilities[k] = Math.exp(margins[k] - max);
+			sum += probabilities[k];
+		}
+		for (int k = 0; k < probabilities.length; ++k) {
+			probabilities[k] /= sum;
+		}
+	}
+
+	public int numClasses() {
+		return first.length;
+	}
+
+	/**
+	 * @return the trees fitted in each boosting iteration, one per class
+	 */
+	public List<TreeModel[]> getSteps() {
+		return steps;
+	}
+
+	@Override
+	public SumMap<String> featureImportance() {
+		final SumMapBuilder<String> builder = SumMap.builder(false);
+		for (final TreeModel[] step : steps) {
+			for (final TreeModel tree : step) {
+				for (final Entry<String, Double> imp : tree.featureImportance()) {
+					builder.increment(imp.getKey(), imp.getValue());
+				}
+			}
+		}
+		return builder.build(0);
+	}
+
+	@Override
+	public String getName() {
+		return MoreObjects.toStringHelper(this).add("classes", first.length).add("steps", steps.size()).toString();
+	}
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.meta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jakarta.annotation.Nonnull;
+
+import com.insightml.data.FeaturesConfig;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.data.samples.decorators.LabelDecorator;
+import com.insightml.models.LearnerArguments;
+import com.insightml.models.LearnerInput;
+import com.insightml.models.trees.RegTree;
+import com.insightml.models.trees.RegTree.SimpleStatisticsSupplier;
+import com.insightml.models.trees.TreeFit;
+import com.insightml.models.trees.TreeModel;
+import com.insightml.utils.Arguments;
+import com.insightml.utils.Arrays;
+import com.insightml.utils.Check;
+import com.insightml.utils.IArguments;
+import com.insightml.utils.Utils;
+
+/**
+ * Gradient boosting for multi-class problems, with label index k indicating whether a sample belongs to class k.
+ * Each iteration fits one tree per class to the Newton steps of the softmax log loss, as in {@link GBM#NEWTON}. All
+ * of an iteration's trees share the samples along with their ordered indexes, the bag and the features mask.
+ */
+public final class SoftmaxGBM extends AbstractEnsembleLearner<Sample, Double, double[]> {
+	private static final long serialVersionUID = -2915377428806461046L;
+
+	private final RegTree[] learners;
+
+	/**
+	 * @param arguments
+	 *            the boosting arguments along with those of {@link GBRT} for the trees
+	 */
+	public SoftmaxGBM(final IArguments arguments) {
+		super(arguments);
+		learners = GBRT.getLearner(Arguments.copy(arguments).set(GBM.NEWTON, 1, true), new SimpleStatisticsSupplier(),
+				true);
+	}
+
+	@Override
+	public LearnerArguments arguments() {
+		final LearnerArguments args = new LearnerArguments();
+		args.add("it", 400.0, 20, 20000);
+		args.add("shrink", 0.01, 0.0001, 0.2);
+		args.add("bag", 0.5, 0.05, 0.9);
+		args.add("fbag", 1.0, 0.05, 1.0);
+		return args;
+	}
+
+	@Override
+	public SoftmaxBoostingModel run(final LearnerInput<? extends Sample, ? extends Double> input) {
+		return run(input.getTrain(), input.valid, input.config, input.labelIndex);
+	}
+
+	/**
+	 * @param labelIndex
+	 *            ignored, as all label indexes are the classes
+	 */
+	@Override
+	@Nonnull
+	public SoftmaxBoostingModel run(final ISamples<? extends Sample, ? extends Double> samples,
+			final ISamples<? extends Sample, ? extends Double> valid, final FeaturesConfig<? extends Sample, ?> config,
+			final int labelIndex) {
+		// safe, as the classes' trees are only fitted to the samples with their labels replaced
+		@SuppressWarnings("unchecked")
+		final ISamples<Sample, Double> instances = (ISamples<Sample, Double>) samples;
+		final int classes = Check.num(instances.numLabels(), 2, 10000);
+		final int size = instances.size();
+		final double[][] labels = new double[classes][size];
+		for (int k = 0; k < classes; ++k) {
+			final Double[] expected = instances.expected(k);
+			for (int i = 0; i < size; ++i) {
+				labels[k][i] = Utils.toDouble(expected[i]);
+			}
+		}
+		final double[] weights = instances.weights(0);
+		final double[] first = priors(labels, weights);
+
+		final double[][] margins = new double[size][];
+		for (int i = 0; i < size; ++i) {
+			margins[i] = first.clone();
+		}
+		final double[][] probabilities = new double[size][classes];
+		final double[] steps = new double[size];
+		final double[] hessians = new double[size];
+		final double[] optim = new double[size];
+		final float[][] features = instances.features();
+		final Random random = Utils.random();
+		final int iterations = (int) argument("it");
+		// Friedman's (K - 1) / K scaling of the diagonal Newton steps
+		final double shrinkage = argument("shrink") * (classes - 1) / classes;
+		final List<TreeModel[]> models = new ArrayList<>(iterations);
+		for (int it = 0; it < iterations; ++it) {
+			for (int i = 0; i < size; ++i) {
+				SoftmaxBoostingModel.softmax(margins[i], probabilities[i]);
+			}
+			final double[] bag = bagWeights(instances, argument("bag"), random, 0);
+			final boolean[] featuresMask = GBM.featuresMask(instances.featureNames(), argument("fbag"),
+					getOriginalArguments(), random);
+			final RegTree learner = learners[it % learners.length];
+			final TreeModel[] trees = new TreeModel[classes];
+			for (int k = 0; k < classes; ++k) {
+				for (int i = 0; i < size; ++i) {
+					final double p = probabilities[i][k];
+					hessians[i] = p * (1 - p);
+					steps[i] = hessians[i] > 0 ? (labels[k][i] - p) / hessians[i] : 0;
+				}
+				final double[] treeWeights = new double[size];
+				for (int i = 0; i < size; ++i) {
+					treeWeights[i] = bag[i] * hessians[i];
+				}
+				final TreeFit fit = learner.fit(new LabelDecorator<>(instances, Arrays.cast(steps), treeWeights, k),
+						featuresMask, k);
+				GBM.treeOutputs(fit, features, optim);
+				for (int i = 0; i < size; ++i) {
+					margins[i][k] += shrinkage * optim[i];
+				}
+				trees[k] = fit.getModel();
+			}
+			models.add(trees);
+			if ((it + 1) % 50 == 0) {
+				logger.info("[" + (it + 1) + "] " + logLoss(margins, labels, weights, new double[classes]));
+			}
+		}
+		return new SoftmaxBoostingModel(first, models, shrinkage, instances.featureNames());
+	}
+
+	/**
+	 * @return the margins of the weighted class frequencies
+	 */
+	private static double[] priors(final double[][] labels, final double[] weights) {
+		final double[] priors = new double[labels.length];
+		for (int k = 0; k < priors.length; ++k) {
+			double sum = 0;
+			for (int i = 0; i < weights.length; ++i) {
+				sum += weights[i] * labels[k][i];
+			}
+			priors[k] = Math.log(Math.max(sum, 1e-8));
+		}
+		return priors;
+	}
+
+	/**
+	 * @param probabilities
+	 *            a buffer for one sample's probabilities
+	 */
+	private static double logLoss(final double[][] margins, final double[][] labels, final double[] weights,
+			final double[] probabilities) {
+		double sum = 0;
+		double weightSum = 0;
+		for (int i = 0; i < margins.length; ++i) {
+			SoftmaxBoostingModel.softmax(margins[i], probabilities);
+			for (int k = 0; k < labels.length; ++k) {
+				if (labels[k][i] > 0) {
+					sum -= weights[i] * labels[k][i] * Math.log(Math.max(probabilities[k], 1e-8));
+				}
+			}
+			weightSum += weights[i];
+		}
+		return sum / weightSum;
+	}
+
+	@Override
+	public String getName() {
+		return super.getName() + learners[0].getName();
+	}
+
+}
@@ -47,6 +47,7 @@ import com.insightml.utils.Collections;
 import com.insightml.utils.ui.UiUtils;
 
 import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
 
 public final class VoteModel<I extends Sample> extends AbstractEnsembleModel<I, Double>
 		implements DistributionModel<I> {
@@ -58,14 +59,30 @@ public final class VoteModel<I extends Sample> extends AbstractEnsembleModel<I,
 	}
 
 	private VoteStrategy strategy;
+	private transient OutOfBag<I> outOfBag;
 
 	VoteModel() {
 	}
 
 	public VoteModel(final IModel<I, Double>[] models, final double[] weights, final VoteStrategy strategy,
 			final String[] features) {
+		this(models, weights, strategy, features, null);
+	}
+
+	VoteModel(final IModel<I, Double>[] models, final double[] weights, final VoteStrategy strategy,
+			final String[] features, final OutOfBag<I> outOfBag) {
 		super(models, weights, features);
 		this.strategy = strategy;
+		this.outOfBag = outOfBag;
+	}
+
+	/**
+	 * @return the predictions for the training samples left out by the bags, or null if the model was not trained on
+	 *         bags within this process
+	 */
+	@Nullable
+	public OutOfBag<I> getOutOfBag() {
+		return outOfBag;
 	}
 
 	@Nonnull
@@ -93,7 +110,7 @@ public final class VoteModel<I extends Sample> extends AbstractEnsembleModel<I,
 		return preds;
 	}
 
-	private static double resolve(final Stats stats, final VoteStrategy strategy) {
+	static double resolve(final Stats stats, final VoteStrategy strategy) {
 		switch (strategy) {
 		case AVERAGE:
 			return stats.getMean();
@@ -18,7 +18,7 @@ package com.insightml.models.trees;
 import com.insightml.math.statistics.IStats;
 import com.insightml.utils.types.AbstractClass;
 
-abstract class AbstractSplit extends AbstractClass implements ISplit {
+public abstract class AbstractSplit extends AbstractClass implements ISplit {
 
 	private static final long serialVersionUID = -6931400300729153655L;
 
@@ -77,4 +77,21 @@ abstract class AbstractSplit extends AbstractClass implements ISplit {
 		return statsNaN;
 	}
 
+	/**
+	 * @return the child for the given value of the split feature
+	 */
+	abstract int selectChild(float value);
+
+	public TreeNode selectChild(final float[] features, final TreeNode[] children) {
+		final int child = selectChild(features);
+		return child < children.length ? children[child] : null;
+	}
+
+	/**
+	 * @return the condition for rows to go to the given child, without the feature name
+	 */
+	public abstract String presentChild(int child);
+
+	public abstract String getRulePresentation();
+
 }
@@ -18,27 +18,26 @@ package com.insightml.models.trees;
 import org.apache.commons.math3.stat.descriptive.rank.Median;
 import org.apache.commons.math3.stat.ranking.NaNStrategy;
 
-import com.insightml.math.Vectors;
 import com.insightml.math.statistics.StatsBuilder;
 
 public class ApproximateMaeSplitCriterion implements SplitCriterion {
 	private static final Median medianCalculator = new Median().withNaNStrategy(NaNStrategy.FAILED);
 
 	private final SplitFinderContext context;
-	private final boolean[] subset;
+	private final NodeRows rows;
 	private final int samples;
 	private final MseSplitCriterion mseSplitCriterion;
 
-	public ApproximateMaeSplitCriterion(final SplitFinderContext context, final boolean[] subset,
+	public ApproximateMaeSplitCriterion(final SplitFinderContext context, final NodeRows rows,
 			final MseSplitCriterion mseSplitCriterion) {
 		this.context = context;
-		this.subset = subset;
-		samples = Vectors.sum(subset);
+		this.rows = rows;
+		samples = rows.size();
 		this.mseSplitCriterion = mseSplitCriterion;
 	}
 
-	public static ApproximateMaeSplitCriterion create(final SplitFinderContext context, final boolean[] subset) {
-		return new ApproximateMaeSplitCriterion(context, subset, MseSplitCriterion.create(context, subset));
+	public static ApproximateMaeSplitCriterion create(final SplitFinderContext context, final NodeRows rows) {
+		return new ApproximateMaeSplitCriterion(context, rows, MseSplitCriterion.create(context, rows));
 	}
 
 	@Override
@@ -54,20 +53,16 @@ public class ApproximateMaeSplitCriterion implements SplitCriterion {
 
 	@Override
 	public double score(final int feature, final int lastIndexLeft, final double bestImprovement) {
-		final int[] ordered = context.orderedInstances[feature];
-
-		final int bla = ordered.length;
+		final int[] ordered = rows.ordered(feature);
+		final int begin = rows.begin();
+		final int end = rows.end();
 
 		final double[] values = new double[samples];
 		int insIdx = 0;
 		int splitIndex = -1;
 
-		for (int i = 0; i < bla; ++i) {
+		for (int i = begin; i < end; ++i) {
 			final int idx = ordered[i];
-			if (!subset[idx]) {
-				continue;
-			}
-
 			values[insIdx] = context.expected[idx];
 
 			if (i == lastIndexLeft) {
@@ -81,12 +76,8 @@ public class ApproximateMaeSplitCriterion implements SplitCriterion {
 		final double medianRight = medianCalculator.evaluate(values, splitIndex + 1, samples - splitIndex - 1);
 
 		double error = 0;
-		for (int i = 0; i < bla; ++i) {
+		for (int i = begin; i < end; ++i) {
 			final int idx = ordered[i];
-			if (!subset[idx]) {
-				continue;
-			}
-
 			if (i <= lastIndexLeft) {
 				error += Math.abs(medianLeft - context.expected[idx]) * context.weights[idx];
 			} else {
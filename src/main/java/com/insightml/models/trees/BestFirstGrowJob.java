@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import com.insightml.utils.Check;
+
+/**
+ * Grows a tree leaf-wise: the leaf whose best split improves the most is always split next, until the tree has
+ * {@code maxLeaves} leaves or no leaf can be split any further. Depth and minimum observations are still limited by the
+ * given root job.
+ */
+final class BestFirstGrowJob extends RecursiveAction {
+	private static final long serialVersionUID = -2416398571452412376L;
+
+	private final GrowJob root;
+	private final int maxLeaves;
+	private final boolean parallelize;
+
+	BestFirstGrowJob(final GrowJob root, final int maxLeaves, final boolean parallelize) {
+		this.root = root;
+		this.maxLeaves = Check.num(maxLeaves, 1, 100000);
+		this.parallelize = parallelize;
+	}
+
+	@Override
+	protected void compute() {
+		final PriorityQueue<Candidate> candidates = new PriorityQueue<>(
+				Comparator.comparingDouble((final Candidate c) -> -c.split.getImprovement())
+						.thenComparingInt(c -> c.order));
+		int order = 0;
+		final AbstractSplit rootSplit = root.findSplit();
+		if (rootSplit != null) {
+			candidates.add(new Candidate(root, rootSplit, order++));
+		} else {
+			root.leaf();
+		}
+		int leaves = 1;
+		while (!candidates.isEmpty() && leaves < maxLeaves) {
+			final Candidate best = candidates.poll();
+			final int newLeaves = best.job.numChildren(best.split) - 1;
+			if (leaves + newLeaves > maxLeaves) {
+				best.job.leaf();
+				continue;
+			}
+			leaves += newLeaves;
+			final List<GrowJob> children = best.job.split(best.split);
+			final AbstractSplit[] splits = findSplits(children);
+			for (int i = 0; i < splits.length; ++i) {
+				if (splits[i] != null) {
+					candidates.add(new Candidate(children.get(i), splits[i], order++));
+				} else {
+					children.get(i).leaf();
+				}
+			}
+		}
+		for (final Candidate candidate : candidates) {
+			candidate.job.leaf();
+		}
+	}
+
+	private AbstractSplit[] findSplits(final List<GrowJob> jobs) {
+		final AbstractSplit[] splits = new AbstractSplit[jobs.size()];
+		if (parallelize && splits.length > 1) {
+			final List<ForkJoinTask<AbstractSplit>> tasks = new ArrayList<>(splits.length);
+			for (final GrowJob job : jobs) {
+				tasks.add(ForkJoinTask.adapt(job::findSplit));
+			}
+			invokeAll(tasks);
+			for (int i = 0; i < splits.length; ++i) {
+				splits[i] = tasks.get(i).join();
+			}
+		} else {
+			for (int i = 0; i < splits.length; ++i) {
+				splits[i] = jobs.get(i).findSplit();
+			}
+		}
+		return splits;
+	}
+
+	private record Candidate(GrowJob job, AbstractSplit split, int order) {
+	}
+
+}
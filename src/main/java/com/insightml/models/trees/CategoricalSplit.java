@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
+import com.insightml.math.statistics.IStats;
+import com.insightml.utils.ui.UiUtils;
+
+/**
+ * Splits a categorical feature by set membership: rows whose category is in the set go to the left child, all other
+ * categories, including ones not seen during training, go to the right child. Missing values go to a third child if
+ * the split has one, or to the left child otherwise.
+ */
+public final class CategoricalSplit extends AbstractSplit {
+	private static final long serialVersionUID = 5236027461939146395L;
+
+	private long[] left;
+	private String fname;
+	private boolean missingChild;
+
+	CategoricalSplit() {
+	}
+
+	CategoricalSplit(final long[] left, final IStats statsL, final IStats statsR, final IStats statsNaN,
+			final double improvement, final boolean missingChild, final int feature, final String[] featureNames) {
+		super(statsL, statsR, statsNaN, improvement, -1, feature);
+		this.left = left;
+		fname = featureNames[feature];
+		this.missingChild = missingChild;
+	}
+
+	@Override
+	public String getFeatureName() {
+		return fname;
+	}
+
+	/**
+	 * @return the categories going to the left child
+	 */
+	public int[] getCategories() {
+		return BitSet.valueOf(left).stream().toArray();
+	}
+
+	/**
+	 * @return the categories going to the left child as a bit set
+	 */
+	long[] left() {
+		return left;
+	}
+
+	boolean hasMissingChild() {
+		return missingChild;
+	}
+
+	@Override
+	public int selectChild(final float[] features) {
+		return selectChild(features[feature]);
+	}
+
+	@Override
+	int selectChild(final float value) {
+		if (value == ThresholdSplitFinder.VALUE_MISSING) {
+			return missingChild ? 2 : 0;
+		}
+		final int category = (int) value;
+		if (category != value || category < 0 || category >> 6 >= left.length) {
+			return 1;
+		}
+		return (left[category >> 6] & 1L << category) == 0 ? 1 : 0;
+	}
+
+	@Override
+	public String explain(final float[] features) {
+		return fname + " (" + UiUtils.format(features[feature]) + ")" + presentChild(selectChild(features));
+	}
+
+	@Override
+	public String presentChild(final int child) {
+		if (child == 1) {
+			return " not in " + Arrays.toString(getCategories());
+		} else if (child == 2) {
+			return " missing";
+		}
+		return " in " + Arrays.toString(getCategories());
+	}
+
+	@Override
+	public String getRulePresentation() {
+		return presentChild(0);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(feature, Arrays.hashCode(left));
+	}
+
+	@Override
+	public String toString() {
+		final double weightSum = getWeightSum();
+		return fname + getRulePresentation() + " (" + UiUtils.format(improve) + "/" + UiUtils.format(weightSum) + '='
+				+ UiUtils.format(improve / weightSum) + ")";
+	}
+}
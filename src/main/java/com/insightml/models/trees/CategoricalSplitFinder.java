@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import com.insightml.math.statistics.StatsBuilder;
+
+/**
+ * Finds the best {@link CategoricalSplit} of a categorical feature. The categories present in the node are ordered by
+ * their mean label, and the best split among the prefixes of this order is the best partition of the categories for
+ * the MSE criterion. The returned splits carry no statistics; {@link #materialize(CategoricalSplit)} creates the
+ * statistics requested by the tree for the chosen split.
+ */
+final class CategoricalSplitFinder implements IntFunction<CategoricalSplit> {
+	private final SplitFinderContext context;
+	private final NodeRows rows;
+	private final int samples;
+	private final MseSplitCriterion splitCriterion;
+	private final int minObs;
+	private final Supplier<StatsBuilder<?>> statisticsFactory;
+
+	CategoricalSplitFinder(final SplitFinderContext context, final NodeRows rows, final int samples,
+			final MseSplitCriterion splitCriterion, final int minObs,
+			final Supplier<StatsBuilder<?>> statisticsFactory) {
+		this.context = context;
+		this.rows = rows;
+		this.samples = samples;
+		this.splitCriterion = splitCriterion;
+		this.minObs = minObs;
+		this.statisticsFactory = statisticsFactory;
+	}
+
+	/**
+	 * Other criteria treat categorical features as numeric ones.
+	 */
+	static boolean supports(final SplitFinderContext context, final SplitCriterion splitCriterion) {
+		return context.categorical != null && splitCriterion instanceof MseSplitCriterion;
+	}
+
+	@Override
+	public CategoricalSplit apply(final int feature) {
+		final int[] nodeRows = rows.rows();
+		final int begin = rows.begin();
+		final int end = rows.end();
+
+		int numCategories = 0;
+		for (int i = begin; i < end; ++i) {
+			final float value = context.value(nodeRows[i], feature);
+			if (value != ThresholdSplitFinder.VALUE_MISSING) {
+				if (value < 0 || value != (int) value) {
+					throw new IllegalArgumentException(
+							"Categorical feature " + context.featureNames[feature] + " has value " + value);
+				}
+				numCategories = Math.max(numCategories, (int) value + 1);
+			}
+		}
+		final double[] labelSums = new double[numCategories];
+		final double[] weightSums = new double[numCategories];
+		final int[] counts = new int[numCategories];
+		double labelSumNaN = 0;
+		double weightSumNaN = 0;
+		int countNaN = 0;
+		for (int i = begin; i < end; ++i) {
+			final int idx = nodeRows[i];
+			final float value = context.value(idx, feature);
+			final double weight = context.weights[idx];
+			if (value == ThresholdSplitFinder.VALUE_MISSING) {
+				labelSumNaN += context.expected[idx] * weight;
+				weightSumNaN += weight;
+				++countNaN;
+			} else {
+				labelSums[(int) value] += context.expected[idx] * weight;
+				weightSums[(int) value] += weight;
+				++counts[(int) value];
+			}
+		}
+
+		// as for thresholds, missing values only get their own child if there are enough, but not too many of them
+		final boolean missingChild = countNaN >= minObs && countNaN <= samples - minObs * 2;
+		double labelSumL = 0;
+		double weightSumL = 0;
+		int countL = 0;
+		if (!missingChild) {
+			labelSumL = labelSumNaN;
+			weightSumL = weightSumNaN;
+			countL = countNaN;
+			labelSumNaN = 0;
+			weightSumNaN = 0;
+		}
+		final int countR = samples - (missingChild ? countNaN : 0);
+
+		final Integer[] order = present(counts);
+		Arrays.sort(order, (a, b) -> {
+			final int comp = Double.compare(labelSums[a] / weightSums[a], labelSums[b] / weightSums[b]);
+			return comp == 0 ? Integer.compare(a, b) : comp;
+		});
+
+		double bestImprovement = context.minImprovement - 0.000000001;
+		int bestLast = -1;
+		for (int i = 0; i < order.length - 1; ++i) {
+			final int category = order[i];
+			labelSumL += labelSums[category];
+			weightSumL += weightSums[category];
+			countL += counts[category];
+			if (countL >= minObs && countR - countL >= minObs) {
+				final double improvement = MseSplitCriterion.improvement(labelSumL, weightSumL, labelSumNaN,
+						weightSumNaN, splitCriterion.labelSum, splitCriterion.weightSum);
+				if (improvement > bestImprovement) {
+					bestImprovement = improvement;
+					bestLast = i;
+				}
+			}
+		}
+		if (bestLast == -1) {
+			return null;
+		}
+		final long[] left = new long[(numCategories + 63) / 64];
+		for (int i = 0; i <= bestLast; ++i) {
+			left[order[i] >> 6] |= 1L << order[i];
+		}
+		return new CategoricalSplit(left, null, null, null, bestImprovement, missingChild, feature,
+				context.featureNames);
+	}
+
+	private static Integer[] present(final int[] counts) {
+		int present = 0;
+		for (final int count : counts) {
+			if (count > 0) {
+				++present;
+			}
+		}
+		final Integer[] categories = new Integer[present];
+		for (int c = 0, i = 0; c < counts.length; ++c) {
+			if (counts[c] > 0) {
+				categories[i++] = c;
+			}
+		}
+		return categories;
+	}
+
+	/**
+	 * @return a copy of the given split whose child statistics are built by the tree's statistics factory
+	 */
+	CategoricalSplit materialize(final CategoricalSplit split) {
+		final StatsBuilder<?>[] stats = new StatsBuilder<?>[3];
+		for (int i = 0; i < stats.length; ++i) {
+			stats[i] = statisticsFactory.get();
+		}
+		final int feature = split.getFeature();
+		final int[] nodeRows = rows.rows();
+		for (int i = rows.begin(); i < rows.end(); ++i) {
+			final int row = nodeRows[i];
+			stats[split.selectChild(context.value(row, feature))].add(context.expected[row], context.weights[row]);
+		}
+		return new CategoricalSplit(split.left(), stats[0].create(), stats[1].create(), stats[2].create(),
+				split.getImprovement(), split.hasMissingChild(), feature, context.featureNames);
+	}
+
+}
@@ -54,7 +54,7 @@ final class ComparisonFinder extends RecursiveTask<ISplit> {
 
 				final int length = context.expected.length;
 				for (int j = 0; j < length; ++j) {
-					if (context.features[j][feature] < context.features[j][i]) {
+					if (context.value(j, feature) < context.value(j, i)) {
 						if (++left >= length - minObs) {
 							continue f;
 						}
@@ -99,6 +99,21 @@ final class ComparisonFinder extends RecursiveTask<ISplit> {
 			return features[feature] >= features[featureB] ? 1 : 0;
 		}
 
+		@Override
+		int selectChild(final float value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String presentChild(final int child) {
+			return (child == 1 ? " >= " : " < ") + featureNameB;
+		}
+
+		@Override
+		public String getRulePresentation() {
+			return presentChild(0);
+		}
+
 		@Override
 		public String explain(final float[] features) {
 			if (selectChild(features) == 1) {
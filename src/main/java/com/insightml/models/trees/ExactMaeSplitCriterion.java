@@ -15,113 +15,207 @@
  */
 package com.insightml.models.trees;
 
-import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.Arrays;
 
-import org.apache.commons.math3.stat.descriptive.rank.Median;
-import org.apache.commons.math3.stat.ranking.NaNStrategy;
+import javax.annotation.Nullable;
 
-import com.insightml.math.Vectors;
 import com.insightml.math.statistics.StatsBuilder;
 
+/**
+ * Scores splits by the reduction of the weighted absolute deviation from each side's median. For every feature, the
+ * errors of all prefixes and suffixes of the node's ordered rows are computed upfront with running medians, so
+ * scanning a feature takes O(n log n) instead of O(n) per candidate threshold.
+ */
 public final class ExactMaeSplitCriterion implements SplitCriterion {
-	private static final Median medianCalculator = new Median().withNaNStrategy(NaNStrategy.FAILED);
-
-	private final int samples;
 	private final double totalError;
 	private final SplitFinderContext context;
-	private final boolean[] subset;
+	private final NodeRows rows;
 
-	private final double[] expectedForFeature;
+	@Nullable
+	private final double[] prefixError;
+	@Nullable
+	private final double[] suffixError;
 
-	private ExactMaeSplitCriterion(final int samples, final double totalError, final SplitFinderContext context,
-			final boolean[] subset, final double[] expectedForFeature) {
-		this.samples = samples;
+	private ExactMaeSplitCriterion(final double totalError, final SplitFinderContext context, final NodeRows rows,
+			@Nullable final double[] prefixError, @Nullable final double[] suffixError) {
 		this.totalError = totalError;
 		this.context = context;
-		this.subset = subset;
-		this.expectedForFeature = expectedForFeature;
+		this.rows = rows;
+		this.prefixError = prefixError;
+		this.suffixError = suffixError;
 	}
 
-	public static ExactMaeSplitCriterion create(final SplitFinderContext context, final boolean[] subset) {
-		// TODO: merge filter step with median calculation, if possible
-		final double median = medianCalculator.evaluate(Vectors.filter(context.expected, subset));
-		int samples = 0;
-		double totalError = 0;
-		for (int i = 0; i < context.weights.length; ++i) {
-			if (subset == null || subset[i]) {
-				++samples;
-				totalError += Math.abs(context.expected[i] - median) * context.weights[i];
-			}
+	public static ExactMaeSplitCriterion create(final SplitFinderContext context, final NodeRows rows) {
+		final int[] nodeRows = rows.rows();
+		final RunningMedian median = new RunningMedian(rows.size());
+		for (int i = rows.begin(); i < rows.end(); ++i) {
+			median.add(context.expected[nodeRows[i]], context.weights[nodeRows[i]]);
 		}
-		return new ExactMaeSplitCriterion(samples, totalError, context, subset, null);
+		return new ExactMaeSplitCriterion(median.absoluteDeviation(), context, rows, null, null);
 	}
 
 	@Override
 	public SplitCriterion forFeature(final int feature) {
-		final int[] ordered = context.orderedInstances[feature];
-
-		final int bla = ordered.length;
-
-		final double[] values = new double[samples];
-		for (int i = 0, insIdx = 0; i < bla; ++i) {
-			final int idx = ordered[i];
-			if (!subset[idx]) {
-				continue;
-			}
-
-			values[insIdx] = context.expected[idx];
-			++insIdx;
+		final int[] ordered = rows.ordered(feature);
+		final int begin = rows.begin();
+		final int samples = rows.size();
+
+		final double[] prefix = new double[samples];
+		final RunningMedian left = new RunningMedian(samples);
+		for (int i = 0; i < samples; ++i) {
+			final int idx = ordered[begin + i];
+			left.add(context.expected[idx], context.weights[idx]);
+			prefix[i] = left.absoluteDeviation();
+		}
+		final double[] suffix = new double[samples + 1];
+		final RunningMedian right = new RunningMedian(samples);
+		for (int i = samples - 1; i >= 0; --i) {
+			final int idx = ordered[begin + i];
+			right.add(context.expected[idx], context.weights[idx]);
+			suffix[i] = right.absoluteDeviation();
 		}
-		return new ExactMaeSplitCriterion(samples, totalError, context, subset, values);
+		return new ExactMaeSplitCriterion(totalError, context, rows, prefix, suffix);
 	}
 
 	@Override
 	public double improvement(final @Nullable StatsBuilder<?> sumL, final @Nullable StatsBuilder<?> sumNaN,
 			final int feature, final int lastIndexLeft) {
-		final int[] ordered = context.orderedInstances[feature];
+		final int splitIndex = lastIndexLeft - rows.begin();
+		return totalError - prefixError[splitIndex] - suffixError[splitIndex + 1];
+	}
 
-		final int bla = ordered.length;
+	@Override
+	public double score(final int feature, final int bestLastIndexLeft, final double bestImprovement) {
+		return bestImprovement;
+	}
 
-		int insIdx = 0;
-		int splitIndex = -1;
+	public static ExactMaeSplitCriterionFactory factory() {
+		return new ExactMaeSplitCriterionFactory();
+	}
 
-		for (int i = 0; i < bla; ++i) {
-			final int idx = ordered[i];
-			if (!subset[idx]) {
-				continue;
-			}
+	public static final class ExactMaeSplitCriterionFactory implements SplitCriterionFactory, Serializable {
+		private static final long serialVersionUID = -5036383232770939519L;
 
-			if (i == lastIndexLeft) {
-				splitIndex = insIdx;
-				break;
-			}
-			++insIdx;
+		@Override
+		public SplitCriterion create(final SplitFinderContext context, final NodeRows rows) {
+			return ExactMaeSplitCriterion.create(context, rows);
 		}
+	}
 
-		final double medianLeft = medianCalculator.evaluate(expectedForFeature, 0, splitIndex + 1);
-		final double medianRight = medianCalculator
-				.evaluate(expectedForFeature, splitIndex + 1, samples - splitIndex - 1);
-
-		double error = 0;
-		for (int i = 0; i < bla; ++i) {
-			final int idx = ordered[i];
-			if (!subset[idx]) {
-				continue;
-			}
+	/**
+	 * Median of a growing set of values, kept as a max-heap of the lower and a min-heap of the upper half, together
+	 * with the weighted sums of both halves. For an even number of values, the median is the mean of the two middle
+	 * ones.
+	 */
+	static final class RunningMedian {
+		private final Heap lower;
+		private final Heap upper;
+
+		RunningMedian(final int capacity) {
+			lower = new Heap(capacity / 2 + 1, -1);
+			upper = new Heap(capacity / 2 + 1, 1);
+		}
 
-			if (i <= lastIndexLeft) {
-				error += Math.abs(medianLeft - context.expected[idx]) * context.weights[idx];
+		void add(final double value, final double weight) {
+			if (lower.size == 0 || value <= lower.peek()) {
+				lower.push(value, weight);
 			} else {
-				error += Math.abs(medianRight - context.expected[idx]) * context.weights[idx];
+				upper.push(value, weight);
+			}
+			if (lower.size > upper.size + 1) {
+				lower.moveTop(upper);
+			} else if (upper.size > lower.size) {
+				upper.moveTop(lower);
 			}
 		}
 
-		return totalError - error;
+		double median() {
+			return lower.size > upper.size ? lower.peek() : (lower.peek() + upper.peek()) / 2;
+		}
+
+		/**
+		 * @return the weighted sum of absolute deviations from the median
+		 */
+		double absoluteDeviation() {
+			if (lower.size == 0) {
+				return 0;
+			}
+			final double median = median();
+			return median * lower.weightSum - lower.weightedSum + upper.weightedSum - median * upper.weightSum;
+		}
 	}
 
-	@Override
-	public double score(final int feature, final int bestLastIndexLeft, final double bestImprovement) {
-		return bestImprovement;
+	/**
+	 * Binary heap of weighted values. With a sign of -1, the largest value is on top.
+	 */
+	private static final class Heap {
+		private final double sign;
+		private double[] keys;
+		private double[] weights;
+		int size;
+		double weightSum;
+		double weightedSum;
+
+		Heap(final int capacity, final double sign) {
+			this.sign = sign;
+			keys = new double[capacity];
+			weights = new double[capacity];
+		}
+
+		double peek() {
+			return sign * keys[0];
+		}
+
+		void push(final double value, final double weight) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				weights = Arrays.copyOf(weights, size * 2);
+			}
+			weightSum += weight;
+			weightedSum += value * weight;
+			int i = size++;
+			final double key = sign * value;
+			while (i > 0) {
+				final int parent = (i - 1) >>> 1;
+				if (keys[parent] <= key) {
+					break;
+				}
+				keys[i] = keys[parent];
+				weights[i] = weights[parent];
+				i = parent;
+			}
+			keys[i] = key;
+			weights[i] = weight;
+		}
+
+		void moveTop(final Heap other) {
+			final double value = peek();
+			final double weight = weights[0];
+			weightSum -= weight;
+			weightedSum -= value * weight;
+			final double key = keys[--size];
+			final double lastWeight = weights[size];
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && keys[child + 1] < keys[child]) {
+					++child;
+				}
+				if (key <= keys[child]) {
+					break;
+				}
+				keys[i] = keys[child];
+				weights[i] = weights[child];
+				i = child;
+			}
+			keys[i] = key;
+			weights[i] = lastWeight;
+			other.push(value, weight);
+		}
 	}
 
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import java.util.Arrays;
+
+import com.insightml.utils.Check;
+import com.insightml.utils.jobs.ParallelFor;
+
+/**
+ * Quantized, feature-major copy of a feature matrix. Every feature column is mapped to at most 255 bins of roughly
+ * equal frequency. Bin boundaries only fall between distinct feature values, so each bin corresponds to a contiguous
+ * range in the feature's ordered instances and a split after a bin is equivalent to a split on the bin's largest
+ * value. Missing values always get their own bin (bin 0).
+ */
+public final class FeatureBins {
+	public static final int MAX_BINS = 255;
+
+	final Object source;
+	private final byte[][] bins;
+	private final float[][] thresholds;
+	private final boolean[] hasMissing;
+	private final int[] offsets;
+
+	private FeatureBins(final Object source, final byte[][] bins, final float[][] thresholds,
+			final boolean[] hasMissing) {
+		this.source = source;
+		this.bins = bins;
+		this.thresholds = thresholds;
+		this.hasMissing = hasMissing;
+		offsets = new int[bins.length + 1];
+		for (int f = 0; f < bins.length; ++f) {
+			offsets[f + 1] = offsets[f] + thresholds[f].length;
+		}
+	}
+
+	public static FeatureBins create(final SplitFinderContext context, final int maxBins) {
+		Check.num(maxBins, 2, MAX_BINS);
+		final int[][] orderedInstances = context.orderedInstances;
+		final int numFeatures = orderedInstances.length;
+		final byte[][] bins = new byte[numFeatures][];
+		final float[][] thresholds = new float[numFeatures][];
+		final boolean[] hasMissing = new boolean[numFeatures];
+		ParallelFor.run(f -> {
+			quantize(context, orderedInstances[f], f, maxBins, bins, thresholds, hasMissing);
+			return null;
+		}, 0, numFeatures, 20);
+		return new FeatureBins(context.featureSource(), bins, thresholds, hasMissing);
+	}
+
+	private static void quantize(final SplitFinderContext context, final int[] ordered, final int f, final int maxBins,
+			final byte[][] bins, final float[][] thresholds, final boolean[] hasMissing) {
+		final int n = ordered.length;
+		final byte[] featureBins = new byte[context.expected.length];
+		final float[] upper = new float[maxBins];
+
+		int i = 0;
+		int bin = 0;
+		while (i < n && context.value(ordered[i], f) == ThresholdSplitFinder.VALUE_MISSING) {
+			++i;
+		}
+		if (i > 0) {
+			hasMissing[f] = true;
+			upper[0] = (float) ThresholdSplitFinder.VALUE_MISSING;
+			bin = 1;
+		}
+
+		int distinct = 0;
+		for (int j = i; j < n; ++j) {
+			if (j == i || context.value(ordered[j], f) != context.value(ordered[j - 1], f)) {
+				++distinct;
+			}
+		}
+		final boolean exact = distinct <= maxBins - bin;
+
+		int inBin = 0;
+		for (; i < n; ++i) {
+			final float value = context.value(ordered[i], f);
+			if (inBin > 0 && value != upper[bin]) {
+				final int remainingBins = maxBins - bin - 1;
+				if (exact || remainingBins > 0 && inBin >= Math.ceil((n - i + inBin) / (double) (remainingBins + 1))) {
+					++bin;
+					inBin = 0;
+				}
+			}
+			featureBins[ordered[i]] = (byte) bin;
+			upper[bin] = value;
+			++inBin;
+		}
+
+		final int numBins = n == 0 ? 0 : bin + 1;
+		bins[f] = featureBins;
+		thresholds[f] = Arrays.copyOf(upper, numBins);
+	}
+
+	public int numFeatures() {
+		return bins.length;
+	}
+
+	public int numBins(final int feature) {
+		return thresholds[feature].length;
+	}
+
+	int totalBins() {
+		return offsets[offsets.length - 1];
+	}
+
+	int offset(final int feature) {
+		return offsets[feature];
+	}
+
+	public int bin(final int feature, final int instance) {
+		return bins[feature][instance] & 0xFF;
+	}
+
+	byte[] column(final int feature) {
+		return bins[feature];
+	}
+
+	public boolean hasMissing(final int feature) {
+		return hasMissing[feature];
+	}
+
+	/**
+	 * @return the largest feature value falling into the given bin, i.e. the threshold of a split that sends this bin
+	 *         and all lower ones to the left child
+	 */
+	public double threshold(final int feature, final int bin) {
+		return thresholds[feature][bin];
+	}
+
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Trees compiled into flat primitive arrays for inference without chasing any objects. Nodes are laid out depth-first,
+ * referencing their children by position, and leaf values are pre-multiplied by their tree's weight, so that an
+ * ensemble's prediction is the sum of one value per tree.
+ */
+public final class FlatTrees implements TreeScorer {
+	static final float MISSING = (float) ThresholdSplitFinder.VALUE_MISSING;
+	private static final Logger LOG = LoggerFactory.getLogger(FlatTrees.class);
+	/** whether the module for {@link VectorTrees} has been added */
+	private static final boolean VECTORS = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+	/** the smallest batch worth walking the trees with vectors */
+	private static final int VECTOR_ROWS = 64;
+
+	final int[] roots;
+	/** the split feature, or -1 for leaves */
+	final int[] feature;
+	final float[] threshold;
+	/** the offset of a categorical split's categories in {@link #categoryBits}, or -1 for threshold splits */
+	final int[] categories;
+	final int[] categoryWords;
+	final long[] categoryBits;
+	/** the children's positions, or -1 to predict the node's own value */
+	final int[] left;
+	final int[] right;
+	final int[] missing;
+	final double[] value;
+	private volatile boolean vectorized;
+	private VectorTrees vectors;
+
+	private FlatTrees(final int[] roots, final int nodes, final long[] categoryBits) {
+		this.roots = roots;
+		feature = new int[nodes];
+		threshold = new float[nodes];
+		categories = new int[nodes];
+		categoryWords = new int[nodes];
+		this.categoryBits = categoryBits;
+		left = new int[nodes];
+		right = new int[nodes];
+		missing = new int[nodes];
+		value = new double[nodes];
+	}
+
+	/**
+	 * @param weights
+	 *            the factor for each tree's values
+	 * @return the compiled trees, or null if any of them uses a split other than {@link Split} or
+	 *         {@link CategoricalSplit}
+	 */
+	@Nullable
+	public static FlatTrees compile(final TreeNode[] trees, final double[] weights) {
+		final List<TreeNode> nodes = new ArrayList<>();
+		final Map<TreeNode, Integer> positions = new IdentityHashMap<>();
+		final int[] roots = new int[trees.length];
+		int bits = 0;
+		final Deque<TreeNode> stack = new ArrayDeque<>();
+		for (int t = 0; t < trees.length; ++t) {
+			roots[t] = nodes.size();
+			stack.push(trees[t]);
+			while (!stack.isEmpty()) {
+				final TreeNode node = stack.pop();
+				nodes.add(node);
+				if (node.rule == null) {
+					continue;
+				}
+				if (node.rule instanceof final CategoricalSplit split) {
+					bits += split.left().length;
+				} else if (!(node.rule instanceof Split)) {
+					return null;
+				}
+				for (int c = node.children.length - 1; c >= 0; --c) {
+					if (node.children[c] != null) {
+						stack.push(node.children[c]);
+					}
+				}
+			}
+		}
+		final FlatTrees flat = new FlatTrees(roots, nodes.size(), new long[bits]);
+		bits = 0;
+		for (int t = 0; t < trees.length; ++t) {
+			final int end = t + 1 < roots.length ? roots[t + 1] : nodes.size();
+			// per tree, since the same nodes might be part of several trees
+			positions.clear();
+			for (int n = roots[t]; n < end; ++n) {
+				positions.put(nodes.get(n), n);
+			}
+			for (int n = roots[t]; n < end; ++n) {
+				bits = flat.set(n, nodes.get(n), weights[t], positions, bits);
+			}
+		}
+		return flat;
+	}
+
+	/**
+	 * @return the next free position in {@link #categoryBits}
+	 */
+	private int set(final int n, final TreeNode node, final double weight, final Map<TreeNode, Integer> positions,
+			final int bits) {
+		value[n] = weight * node.mean;
+		categories[n] = -1;
+		if (node.rule == null) {
+			feature[n] = -1;
+			return bits;
+		}
+		final TreeNode[] children = node.children;
+		feature[n] = node.rule.getFeature();
+		left[n] = position(children, 0, positions);
+		right[n] = position(children, 1, positions);
+		if (node.rule instanceof final CategoricalSplit split) {
+			final long[] words = split.left();
+			System.arraycopy(words, 0, categoryBits, bits, words.length);
+			categories[n] = bits;
+			categoryWords[n] = words.length;
+			missing[n] = split.hasMissingChild() ? position(children, 2, positions) : left[n];
+			return bits + words.length;
+		}
+		final Split split = (Split) node.rule;
+		final double thresh = split.getFeatureValueThreshold();
+		// the largest float not above the threshold, so that comparing floats keeps all decisions
+		final float floatThresh = (float) thresh;
+		threshold[n] = floatThresh > thresh ? Math.nextDown(floatThresh) : floatThresh;
+		missing[n] = split.getLastIndexNaN() >= 0 ? position(children, 2, positions) : left[n];
+		return bits;
+	}
+
+	private static int position(final TreeNode[] children, final int child,
+			final Map<TreeNode, Integer> positions) {
+		return child < children.length && children[child] != null ? positions.get(children[child]) : -1;
+	}
+
+	public int numTrees() {
+		return roots.length;
+	}
+
+	/**
+	 * @return a scorer running bytecode generated for these trees, or these trees if no code could be generated
+	 */
+	public TreeScorer generate() {
+		final TreeScorer generated = TreeCodeGenerator.generate(this);
+		return generated == null ? this : generated;
+	}
+
+	@Override
+	public double predict(final float[] features, final double initial) {
+		double sum = initial;
+		for (final int root : roots) {
+			sum += predictTree(root, features);
+		}
+		return sum;
+	}
+
+	double predictTree(final int root, final float[] features) {
+		int node = root;
+		for (;;) {
+			final int f = feature[node];
+			if (f < 0) {
+				return value[node];
+			}
+			final float v = features[f];
+			final int next;
+			if (v == MISSING) {
+				next = missing[node];
+			} else if (categories[node] < 0) {
+				next = v > threshold[node] ? right[node] : left[node];
+			} else {
+				next = inCategories(node, v) ? left[node] : right[node];
+			}
+			if (next < 0) {
+				return value[node];
+			}
+			node = next;
+		}
+	}
+
+	/**
+	 * Walks the trees for several rows at once if the {@code jdk.incubator.vector} module is present.
+	 */
+	@Override
+	public void predict(final float[][] features, final double[] sums, final int from, final int to) {
+		final VectorTrees batch = to - from >= VECTOR_ROWS ? vectorTrees() : null;
+		if (batch != null) {
+			batch.predict(features, sums, from, to);
+		} else {
+			TreeScorer.super.predict(features, sums, from, to);
+		}
+	}
+
+	@Nullable
+	private VectorTrees vectorTrees() {
+		if (!vectorized) {
+			if (VECTORS) {
+				try {
+					vectors = VectorTrees.of(this);
+				} catch (final LinkageError e) {
+					LOG.warn("Falling back to walking trees row by row: {}", e.toString());
+				}
+			}
+			vectorized = true;
+		}
+		return vectors;
+	}
+
+	boolean inCategories(final int node, final float v) {
+		final int category = (int) v;
+		if (category != v || category < 0 || category >> 6 >= categoryWords[node]) {
+			return false;
+		}
+		return (categoryBits[categories[node] + (category >> 6)] & 1L << category) != 0;
+	}
+
+}
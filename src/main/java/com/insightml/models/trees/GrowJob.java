@@ -17,139 +17,339 @@ package com.insightml.models.trees;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 import javax.annotation.Nullable;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
-
 import com.insightml.math.statistics.IStats;
 import com.insightml.math.statistics.StatsBuilder;
-import com.insightml.utils.ResourceCloser;
-import com.insightml.utils.jobs.JobPool;
 
+/**
+ * Grows the subtree below a node. If parallelized, large nodes search their features in parallel, while smaller
+ * ones are searched sequentially and parallelism comes from growing sibling subtrees as separate fork/join tasks.
+ * Run it through {@link com.insightml.utils.jobs.JobPool#invoke(ForkJoinTask)} so that trees grown within other
+ * parallel jobs, e.g. bags or folds, share the same threads.
+ */
 public final class GrowJob extends RecursiveAction {
 	private static final long serialVersionUID = 1788913869138107684L;
 
-	private static final ExecutorService executor;
-
-	static {
-		executor = Executors.newFixedThreadPool(16);
-		ResourceCloser.register(executor::shutdown);
-	}
+	/**
+	 * By default, nodes with at least this many rows search their features in parallel.
+	 */
+	static final int FEATURE_PARALLEL_ROWS = 20000;
+	/**
+	 * By default, nodes with at least this many rows grow their children as separate tasks.
+	 */
+	static final int NODE_PARALLEL_ROWS = 500;
 
 	private final TreeNode parent;
 	final SplitFinderContext context;
-	final boolean[] subset;
+	private final NodeRows rows;
 	private final int depth;
 	private final String nodePrediction;
 	private final SplitCriterionFactory splitCriterionFactory;
 	private final int minObs;
 	private final boolean parallelize;
 	private final Supplier<StatsBuilder<?>> statisticsFactory;
+	// the leaf of each training row, if requested
+	@Nullable
+	private final TreeNode[] leaves;
 
-	public GrowJob(final TreeNode left, final SplitFinderContext context, final boolean[] subset, final int depth,
+	// only used for histogram-based split finding
+	@Nullable
+	private NodeHistogram histogram;
+
+	public GrowJob(final TreeNode left, final SplitFinderContext context, final NodeRows rows, final int depth,
 			final String nodePrediction, final SplitCriterionFactory splitCriterionFactory, final int minObs,
 			final Supplier<? extends StatsBuilder<?>> statisticsFactory, final boolean parallelize) {
+		this(left, context, rows, depth, nodePrediction, splitCriterionFactory, minObs, statisticsFactory,
+				parallelize, null);
+	}
+
+	/**
+	 * @param leaves
+	 *            if not null, receives the leaf of each of the context's rows with a non-zero weight
+	 */
+	GrowJob(final TreeNode left, final SplitFinderContext context, final NodeRows rows, final int depth,
+			final String nodePrediction, final SplitCriterionFactory splitCriterionFactory, final int minObs,
+			final Supplier<? extends StatsBuilder<?>> statisticsFactory, final boolean parallelize,
+			@Nullable final TreeNode[] leaves) {
+		this(left, context, rows, depth, nodePrediction, splitCriterionFactory, minObs, statisticsFactory,
+				parallelize, leaves, null);
+	}
+
+	private GrowJob(final TreeNode left, final SplitFinderContext context, final NodeRows rows, final int depth,
+			final String nodePrediction, final SplitCriterionFactory splitCriterionFactory, final int minObs,
+			final Supplier<? extends StatsBuilder<?>> statisticsFactory, final boolean parallelize,
+			@Nullable final TreeNode[] leaves, @Nullable final NodeHistogram histogram) {
 		parent = left;
 		this.context = context;
-		this.subset = subset;
+		this.rows = rows;
 		this.depth = depth;
 		this.nodePrediction = nodePrediction;
 		this.splitCriterionFactory = splitCriterionFactory;
 		this.minObs = minObs;
 		this.statisticsFactory = (Supplier<StatsBuilder<?>>) statisticsFactory;
 		this.parallelize = parallelize;
+		this.leaves = leaves;
+		this.histogram = histogram;
 	}
 
 	@Override
 	public void compute() {
-		final Split best = findBestSplit();
+		final AbstractSplit best = findSplit();
+		if (best == null) {
+			leaf();
+			return;
+		}
+		final List<GrowJob> jobs = split(best);
+		if (parallelize && jobs.size() > 1 && rows.size() >= context.nodeParallelRows) {
+			invokeAll(jobs);
+		} else {
+			for (final GrowJob job : jobs) {
+				job.compute();
+			}
+		}
+	}
+
+	/**
+	 * @return the best split of this job's node, or null if the node should remain a leaf
+	 */
+	@Nullable
+	AbstractSplit findSplit() {
+		final AbstractSplit best = findBestSplit();
 		// TODO: Do crossval here to reject split, if necessary
 		if (best == null || best.getImprovement() < 0.00000000001) {
-			return;
+			return null;
+		}
+		return best;
+	}
+
+	/**
+	 * Keeps this job's node as a leaf.
+	 */
+	void leaf() {
+		if (leaves != null) {
+			rows.assignLeaf(parent, leaves);
 		}
-		final DescriptiveStatistics[] nodeStats = nodeStats(best);
+	}
+
+	int numChildren(final AbstractSplit split) {
+		return split.getStatsNaN().getN() >= minObs ? 3 : 2;
+	}
+
+	/**
+	 * Applies the split to this job's node.
+	 *
+	 * @return the jobs for growing those children which may be split further
+	 */
+	List<GrowJob> split(final AbstractSplit best) {
 		final IStats statsNaN = best.getStatsNaN();
-		final TreeNode[] children = new TreeNode[statsNaN.getN() >= minObs ? 3 : 2];
-		children[0] = new TreeNode(prediction(nodeStats[0]), best.getStatsL());
-		children[1] = new TreeNode(prediction(nodeStats[1]), best.getStatsR());
+		final TreeNode[] children = new TreeNode[numChildren(best)];
+		final double[] medians = usesMedian(nodePrediction) ? rows.medians(best, context, children.length)
+				: new double[children.length];
+		children[0] = new TreeNode(prediction(best.getStatsL(), medians[0]), best.getStatsL());
+		children[1] = new TreeNode(prediction(best.getStatsR(), medians[1]), best.getStatsR());
 		if (children.length == 3) {
-			children[2] = new TreeNode(prediction(nodeStats[2]), statsNaN);
+			children[2] = new TreeNode(prediction(statsNaN, medians[2]), statsNaN);
 		}
-		final boolean[][] split = parent.split(best, children, context.orderedInstances, subset);
+		parent.split(best, children);
+		final List<GrowJob> jobs = new ArrayList<>(children.length);
 		if (depth < context.maxDepth) {
+			final NodeRows[] childRows = rows.split(best, context, children.length);
+			final NodeHistogram[] childHistograms = histogram == null ? null : childHistograms(childRows);
 			for (int i = 0; i < children.length; ++i) {
-				if (split[i].length >= minObs * 2) {
-					new GrowJob(children[i], context, split[i], depth + 1, nodePrediction, splitCriterionFactory,
-							minObs, statisticsFactory, parallelize).compute();
+				if (childRows[i].size() >= minObs * 2) {
+					jobs.add(new GrowJob(children[i], context, childRows[i], depth + 1, nodePrediction,
+							splitCriterionFactory, minObs, statisticsFactory, parallelize, leaves,
+							childHistograms == null ? null : childHistograms[i]));
+				} else if (leaves != null) {
+					childRows[i].assignLeaf(children[i], leaves);
+				}
+			}
+		} else if (leaves != null) {
+			rows.assignLeaves(best, context, parent, children, leaves);
+		}
+		return jobs;
+	}
+
+	private boolean isFeatureParallel(final NodeRows nodeRows) {
+		return parallelize && nodeRows.size() >= context.featureParallelRows;
+	}
+
+	/**
+	 * Only the smaller children are binned from their rows. The histogram of the largest child is derived by
+	 * subtracting its siblings from this node's histogram, which is no longer needed afterwards.
+	 */
+	private NodeHistogram[] childHistograms(final NodeRows[] childRows) {
+		int largest = 0;
+		for (int c = 1; c < childRows.length; ++c) {
+			if (childRows[c].size() > childRows[largest].size()) {
+				largest = c;
+			}
+		}
+		final boolean growLargest = childRows[largest].size() >= minObs * 2;
+		final NodeHistogram[] histograms = new NodeHistogram[childRows.length];
+		for (int c = 0; c < childRows.length; ++c) {
+			if (c != largest && (growLargest || childRows[c].size() >= minObs * 2)) {
+				histograms[c] = buildHistogram(childRows[c]);
+				if (growLargest) {
+					histogram.subtract(histograms[c]);
 				}
 			}
 		}
+		if (growLargest) {
+			histograms[largest] = histogram;
+		}
+		histogram = null;
+		return histograms;
+	}
+
+	static boolean usesMedian(final String nodePrediction) {
+		return "median".equals(nodePrediction) || "meandian".equals(nodePrediction);
 	}
 
-	private double prediction(final DescriptiveStatistics stats) {
+	/**
+	 * Means are taken from the split's statistics. Medians are selected from the labels of the child's rows. Newton
+	 * steps are regularized weighted means, which for labels -g/h weighted by h are -G/(H + lambda).
+	 */
+	private double prediction(final IStats stats, final double median) {
 		switch (nodePrediction) {
 		case "mean":
-			return stats.getMean();
+			return stats.getSum() / stats.getN();
 		case "median":
-			return stats.getPercentile(50);
+			return median;
 		case "meandian":
-			return (stats.getMean() + stats.getPercentile(50)) / 2;
+			return (stats.getSum() / stats.getN() + median) / 2;
 		case "mean-smoothed":
-			final DescriptiveStatistics statz2 = new DescriptiveStatistics(stats);
-			for (int i = 0; i < 10; ++i) {
-				statz2.addValue(parent.mean);
-			}
-			return statz2.getMean();
+			return (stats.getSum() + 10 * parent.mean) / (stats.getN() + 10);
+		case "weighted-mean":
+			return stats.getWeightedSum() / stats.getSumOfWeights();
+		case "newton":
+			return stats.getWeightedSum() / (stats.getSumOfWeights() + context.lambda);
 		default:
 			throw new IllegalArgumentException(nodePrediction);
 		}
 	}
 
-	private DescriptiveStatistics[] nodeStats(final Split best) {
-		final double[] expected = context.expected;
-		final DescriptiveStatistics[] stats = new DescriptiveStatistics[3];
-		for (int i = 0; i < stats.length; ++i) {
-			stats[i] = new DescriptiveStatistics();
+	@Nullable
+	private AbstractSplit findBestSplit() {
+		if (context.bins != null) {
+			return findBestHistogramSplit();
 		}
-		for (int i = 0; i < expected.length; ++i) {
-			if (!subset[i] || context.weights[i] <= 0) {
-				continue;
+		final int[] nodeRows = rows.rows();
+		int samples = 0;
+		for (int i = rows.begin(); i < rows.end(); ++i) {
+			if (context.weights[nodeRows[i]] > 0) {
+				++samples;
 			}
-			stats[best.selectChild(context.features[i])].addValue(expected[i]);
 		}
-		return stats;
+		if (samples < minObs * 2) {
+			return null;
+		}
+		final SplitCriterion criterion = splitCriterionFactory.create(context, rows);
+		final CategoricalSplitFinder categorical = categoricalSplitFinder(criterion, samples);
+		if (context.sparse != null) {
+			if (!(criterion instanceof MseSplitCriterion)) {
+				throw new IllegalArgumentException("Sparse features require the MSE criterion");
+			}
+			final SparseSplitFinder splitFinder = new SparseSplitFinder(context, rows, samples,
+					(MseSplitCriterion) criterion, minObs, statisticsFactory);
+			return materialize(findBestSplit(splitFinder, categorical), splitFinder::materialize, categorical);
+		}
+		if (MseThresholdSplitFinder.supports(criterion, statisticsFactory)) {
+			final MseThresholdSplitFinder splitFinder = new MseThresholdSplitFinder(context, rows, samples,
+					(MseSplitCriterion) criterion, minObs, statisticsFactory);
+			return materialize(findBestSplit(splitFinder, categorical), splitFinder::materialize, categorical);
+		}
+		return materialize(findBestSplit(
+				new ThresholdSplitFinder(context, rows, samples, criterion, minObs, statisticsFactory), categorical),
+				split -> split, categorical);
 	}
 
 	@Nullable
-	private Split findBestSplit() {
-		int samples = 0;
-		for (int i = 0; i < context.weights.length; ++i) {
-			if (subset[i] && context.weights[i] > 0) {
-				++samples;
-			}
+	private AbstractSplit findBestHistogramSplit() {
+		if (rows.size() < minObs * 2) {
+			return null;
 		}
-		if (samples < minObs * 2) {
+		if (histogram == null) {
+			histogram = buildHistogram(rows);
+		}
+		final SplitCriterion criterion = splitCriterionFactory.create(context, rows);
+		if (criterion instanceof ExactMaeSplitCriterion) {
+			throw new IllegalArgumentException("Histogram split finding does not support the exact MAE criterion");
+		}
+		final HistogramSplitFinder histogramSplitFinder = new HistogramSplitFinder(context, histogram, rows,
+				criterion, minObs, statisticsFactory);
+		final CategoricalSplitFinder categorical = categoricalSplitFinder(criterion, rows.size());
+		return materialize(findBestSplit(histogramSplitFinder, categorical), histogramSplitFinder::materialize,
+				categorical);
+	}
+
+	@Nullable
+	private CategoricalSplitFinder categoricalSplitFinder(final SplitCriterion criterion, final int samples) {
+		if (!CategoricalSplitFinder.supports(context, criterion)) {
 			return null;
 		}
-		final ThresholdSplitFinder thresholdSplitFinder = new ThresholdSplitFinder(context, subset, samples,
-				splitCriterionFactory.create(context, subset), minObs, statisticsFactory);
-		return parallelize ? findBestSplitParallel(thresholdSplitFinder) : findBestSplit(thresholdSplitFinder);
+		return new CategoricalSplitFinder(context, rows, samples, (MseSplitCriterion) criterion, minObs,
+				statisticsFactory);
+	}
+
+	@Nullable
+	private static AbstractSplit materialize(@Nullable final AbstractSplit best,
+			final UnaryOperator<Split> materializeSplit, @Nullable final CategoricalSplitFinder categorical) {
+		if (best instanceof final Split split) {
+			return materializeSplit.apply(split);
+		}
+		return best == null ? null : categorical.materialize((CategoricalSplit) best);
+	}
+
+	private NodeHistogram buildHistogram(final NodeRows nodeRows) {
+		final NodeHistogram nodeHistogram = new NodeHistogram(context.bins);
+		final boolean[] featuresMask = context.featuresMask;
+		final IntFunction<Void> fill = f -> {
+			if (featuresMask == null || featuresMask[f]) {
+				nodeHistogram.fill(f, nodeRows, context.expected, context.weights);
+			}
+			return null;
+		};
+		if (isFeatureParallel(nodeRows)) {
+			final List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+			for (int f = 0; f < context.bins.numFeatures(); ++f) {
+				final int feature = f;
+				tasks.add(ForkJoinTask.adapt(() -> fill.apply(feature)));
+			}
+			invokeAll(tasks);
+		} else {
+			for (int f = 0; f < context.bins.numFeatures(); ++f) {
+				fill.apply(f);
+			}
+		}
+		return nodeHistogram;
+	}
+
+	/**
+	 * Categorical features are split by the given categorical split finder, if any.
+	 */
+	private AbstractSplit findBestSplit(final IntFunction<Split> splitFinder,
+			@Nullable final CategoricalSplitFinder categorical) {
+		final IntFunction<AbstractSplit> finder = categorical == null ? splitFinder::apply
+				: f -> context.isCategorical(f) ? categorical.apply(f) : splitFinder.apply(f);
+		return isFeatureParallel(rows) ? findBestSplitParallel(finder) : findBestSplitSequential(finder);
 	}
 
-	private Split findBestSplit(final ThresholdSplitFinder thresholdSplitFinder) {
-		Split bestSplit = null;
+	private AbstractSplit findBestSplitSequential(final IntFunction<AbstractSplit> splitFinder) {
+		AbstractSplit bestSplit = null;
 		final boolean[] featuresMask = context.featuresMask;
-		for (int i = 0; i < context.orderedInstances.length; ++i) {
+		for (int i = 0; i < context.numFeatures(); ++i) {
 			if (featuresMask != null && !featuresMask[i]) {
 				continue;
 			}
-			final Split split = thresholdSplitFinder.apply(i);
+			final AbstractSplit split = splitFinder.apply(i);
 			if (split == null) {
 				continue;
 			}
@@ -164,17 +364,18 @@ public final class GrowJob extends RecursiveAction {
 		return bestSplit;
 	}
 
-	private Split findBestSplitParallel(final ThresholdSplitFinder thresholdSplitFinder) {
-		Split bestSplit = null;
+	private AbstractSplit findBestSplitParallel(final IntFunction<AbstractSplit> splitFinder) {
+		AbstractSplit bestSplit = null;
 		final boolean[] featuresMask = context.featuresMask;
-		final List<Callable<Split>> tasks = new ArrayList<>();
-		for (int i = 0; i < context.orderedInstances.length; ++i) {
+		final List<ForkJoinTask<AbstractSplit>> tasks = new ArrayList<>();
+		for (int i = 0; i < context.numFeatures(); ++i) {
 			if (featuresMask == null || featuresMask[i]) {
 				final int idx = i;
-				tasks.add(() -> thresholdSplitFinder.apply(idx));
+				tasks.add(ForkJoinTask.adapt(() -> splitFinder.apply(idx)));
 			}
 		}
-		for (final Split split : JobPool.execute(tasks, 1, executor)) {
+		for (final ForkJoinTask<AbstractSplit> task : invokeAll(tasks)) {
+			final AbstractSplit split = task.join();
 			if (split == null) {
 				continue;
 			}
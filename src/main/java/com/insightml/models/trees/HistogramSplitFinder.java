@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import com.insightml.math.statistics.MutableStatsBuilder;
+import com.insightml.math.statistics.SimpleStatistics;
+import com.insightml.math.statistics.StatsBuilder;
+
+/**
+ * Finds the best split of a feature by scanning the bins of a {@link NodeHistogram} instead of the node's ordered
+ * instances. The returned splits only carry {@link SimpleStatistics}; {@link #materialize(Split)} creates the
+ * statistics requested by the tree for the chosen split. Split positions refer to where the node's rows would be if
+ * they were ordered by the feature.
+ */
+public final class HistogramSplitFinder implements IntFunction<Split> {
+	private final SplitFinderContext context;
+	private final FeatureBins bins;
+	private final NodeHistogram histogram;
+	private final NodeRows rows;
+	private final SplitCriterion splitCriterion;
+	private final int minObs;
+	private final Supplier<StatsBuilder<?>> statisticsFactory;
+
+	HistogramSplitFinder(final SplitFinderContext context, final NodeHistogram histogram, final NodeRows rows,
+			final SplitCriterion splitCriterion, final int minObs,
+			final Supplier<StatsBuilder<?>> statisticsFactory) {
+		this.context = context;
+		bins = context.bins;
+		this.histogram = histogram;
+		this.rows = rows;
+		this.splitCriterion = splitCriterion;
+		this.minObs = minObs;
+		this.statisticsFactory = statisticsFactory;
+
+		if (rows.size() < minObs * 2) {
+			throw new IllegalArgumentException(
+					"Requires at least " + minObs * 2 + " samples to find a split, but only got " + rows.size());
+		}
+	}
+
+	@Override
+	public Split apply(final int feature) {
+		final int numBins = bins.numBins(feature);
+		final SplitCriterion localCriterion = splitCriterion.forFeature(feature);
+		final int samples = rows.size();
+
+		final SimpleStatistics statsNaN = new SimpleStatistics();
+		int countNaN = 0;
+		int lastIndexNaN = -1;
+		int firstBin = 0;
+		if (bins.hasMissing(feature)) {
+			final int count = histogram.count(feature, 0);
+			if (count >= minObs && count <= samples - minObs * 2) {
+				histogram.addTo(statsNaN, feature, 0);
+				countNaN = count;
+				lastIndexNaN = rows.begin() + count - 1;
+				firstBin = 1;
+			}
+		}
+
+		final SimpleStatistics statsL = new SimpleStatistics();
+		final StatsBuilder<?> currentSplitL = new MutableStatsBuilder<>(statsL);
+		final StatsBuilder<?> currentNaN = new MutableStatsBuilder<>(statsNaN);
+
+		SimpleStatistics bestSplitL = null;
+		int bestBin = -1;
+		int bestLastIndexLeft = -1;
+		double bestImprovement = context.minImprovement - 0.000000001;
+
+		int left = 0;
+		for (int bin = firstBin; bin < numBins; ++bin) {
+			final int count = histogram.count(feature, bin);
+			if (count == 0) {
+				continue;
+			}
+			histogram.addTo(statsL, feature, bin);
+			left += count;
+			if (samples - countNaN - left < minObs) {
+				break;
+			}
+			if (left >= minObs) {
+				final int lastIndexLeft = rows.begin() + countNaN + left - 1;
+				final double improvement = localCriterion.improvement(currentSplitL, currentNaN, feature,
+						lastIndexLeft);
+				if (improvement > bestImprovement) {
+					bestSplitL = (SimpleStatistics) statsL.copy();
+					bestBin = bin;
+					bestLastIndexLeft = lastIndexLeft;
+					bestImprovement = improvement;
+				}
+			}
+		}
+		if (bestBin == -1) {
+			return null;
+		}
+		final SimpleStatistics statsR = new SimpleStatistics();
+		for (int bin = bestBin + 1; bin < numBins; ++bin) {
+			histogram.addTo(statsR, feature, bin);
+		}
+		final double score = localCriterion.score(feature, bestLastIndexLeft, bestImprovement);
+		return new Split(bins.threshold(feature, bestBin), bestSplitL, statsR, statsNaN, score, lastIndexNaN,
+				bestLastIndexLeft, feature, context.featureNames);
+	}
+
+	/**
+	 * @return a copy of the given split whose child statistics are built by the tree's statistics factory
+	 */
+	Split materialize(final Split split) {
+		final StatsBuilder<?>[] stats = new StatsBuilder<?>[3];
+		for (int i = 0; i < stats.length; ++i) {
+			stats[i] = statisticsFactory.get();
+		}
+		final int feature = split.getFeature();
+		final int[] nodeRows = rows.rows();
+		for (int i = rows.begin(); i < rows.end(); ++i) {
+			final int row = nodeRows[i];
+			stats[split.selectChild(context.value(row, feature))].add(context.expected[row], context.weights[row]);
+		}
+		return new Split(split.getFeatureValueThreshold(), stats[0].create(), stats[1].create(), stats[2].create(),
+				split.getImprovement(), split.getLastIndexNaN(), split.getLastIndexLeft(), split.getFeature(),
+				context.featureNames);
+	}
+
+}
@@ -20,22 +20,22 @@ import java.io.Serializable;
 import com.insightml.math.statistics.StatsBuilder;
 
 public final class MseSplitCriterion implements SplitCriterion {
-	private final double weightSum;
-	private final double labelSum;
+	final double weightSum;
+	final double labelSum;
 
 	MseSplitCriterion(final double weightSum, final double labelSum) {
 		this.weightSum = weightSum;
 		this.labelSum = labelSum;
 	}
 
-	public static MseSplitCriterion create(final SplitFinderContext context, final boolean[] subset) {
+	public static MseSplitCriterion create(final SplitFinderContext context, final NodeRows rows) {
+		final int[] nodeRows = rows.rows();
 		double weightSum = 0;
 		double labelSum = 0;
-		for (int i = 0; i < context.weights.length; ++i) {
-			if (subset == null || subset[i]) {
-				weightSum += context.weights[i];
-				labelSum += context.expected[i] * context.weights[i];
-			}
+		for (int i = rows.begin(); i < rows.end(); ++i) {
+			final int idx = nodeRows[i];
+			weightSum += context.weights[idx];
+			labelSum += context.expected[idx] * context.weights[idx];
 		}
 		return new MseSplitCriterion(weightSum, labelSum);
 	}
@@ -53,12 +53,12 @@ public final class MseSplitCriterion implements SplitCriterion {
 
 	static double improvement(final StatsBuilder<?> sumL, final StatsBuilder<?> sumNaN, final double labelSum,
 			final double weightSum) {
-		final double labelSumL = sumL.getWeightedSum();
-		final double weightSumL = sumL.getSumOfWeights();
-
-		final double labelSumNaN = sumNaN.getWeightedSum();
-		final double weightSumNaN = sumNaN.getSumOfWeights();
+		return improvement(sumL.getWeightedSum(), sumL.getSumOfWeights(), sumNaN.getWeightedSum(),
+				sumNaN.getSumOfWeights(), labelSum, weightSum);
+	}
 
+	static double improvement(final double labelSumL, final double weightSumL, final double labelSumNaN,
+			final double weightSumNaN, final double labelSum, final double weightSum) {
 		final double weightSumR = weightSum - weightSumL - weightSumNaN;
 		final double labelSumR = labelSum - labelSumL - labelSumNaN;
 
@@ -80,8 +80,8 @@ public final class MseSplitCriterion implements SplitCriterion {
 		private static final long serialVersionUID = 2681661396690754579L;
 
 		@Override
-		public SplitCriterion create(final SplitFinderContext context, final boolean[] subset) {
-			return MseSplitCriterion.create(context, subset);
+		public SplitCriterion create(final SplitFinderContext context, final NodeRows rows) {
+			return MseSplitCriterion.create(context, rows);
 		}
 	}
 }
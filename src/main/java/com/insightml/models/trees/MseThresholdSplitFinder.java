@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import com.insightml.math.statistics.StatsBuilder;
+
+/**
+ * Same search as {@link ThresholdSplitFinder} with a {@link MseSplitCriterion}, but the scan only accumulates plain
+ * label and weight sums. The returned splits carry no statistics; {@link #materialize(Split)} creates the statistics
+ * requested by the tree for the chosen split.
+ */
+final class MseThresholdSplitFinder implements IntFunction<Split> {
+	private final SplitFinderContext context;
+	private final NodeRows rows;
+	private final int samples;
+	private final MseSplitCriterion splitCriterion;
+	private final int minObs;
+	private final Supplier<StatsBuilder<?>> statisticsFactory;
+
+	MseThresholdSplitFinder(final SplitFinderContext context, final NodeRows rows, final int samples,
+			final MseSplitCriterion splitCriterion, final int minObs,
+			final Supplier<StatsBuilder<?>> statisticsFactory) {
+		this.context = context;
+		this.rows = rows;
+		this.samples = samples;
+		this.splitCriterion = splitCriterion;
+		this.minObs = minObs;
+		this.statisticsFactory = statisticsFactory;
+
+		if (samples < minObs * 2) {
+			throw new IllegalArgumentException(
+					"Requires at least " + minObs * 2 + " samples to find a split, but only got " + samples);
+		}
+	}
+
+	/**
+	 * Full statistics keep using {@link ThresholdSplitFinder}, as their weighted sums ignore the weights.
+	 */
+	static boolean supports(final SplitCriterion splitCriterion, final Supplier<?> statisticsFactory) {
+		return splitCriterion instanceof MseSplitCriterion
+				&& !(statisticsFactory instanceof RegTree.FullStatisticsSupplier);
+	}
+
+	@Override
+	public Split apply(final int feature) {
+		final int[] ordered = rows.ordered(feature);
+		final float[] column = context.columns == null ? null : context.columns[feature];
+		final double[] expected = context.expected;
+		final double[] weights = context.weights;
+		final int begin = rows.begin();
+		final int end = rows.end();
+
+		double labelSumNaN = 0;
+		double weightSumNaN = 0;
+		int lastIndexNaN = -1;
+		for (int i = begin; i < end; ++i) {
+			final int idx = ordered[i];
+			final double value = column == null ? context.features[idx][feature] : column[idx];
+			if (value != ThresholdSplitFinder.VALUE_MISSING) {
+				break;
+			}
+			labelSumNaN += expected[idx] * weights[idx];
+			weightSumNaN += weights[idx];
+			lastIndexNaN = i;
+		}
+		if (lastIndexNaN + 1 - begin < minObs || lastIndexNaN + 1 - begin > samples - minObs * 2) {
+			labelSumNaN = 0;
+			weightSumNaN = 0;
+			lastIndexNaN = -1;
+		}
+
+		final double labelSum = splitCriterion.labelSum;
+		final double weightSum = splitCriterion.weightSum;
+		double bestThreshold = 0;
+		double bestImprovement = context.minImprovement - 0.000000001;
+		int bestLastIndexLeft = -1;
+
+		double labelSumL = 0;
+		double weightSumL = 0;
+		double curThr = -9999999;
+		final int max = samples - minObs;
+		final int firstIndex = lastIndexNaN == -1 ? begin : lastIndexNaN + 1;
+		int left = 0;
+		int seen = firstIndex - begin;
+		for (int i = firstIndex; i < end; ++i) {
+			final int idx = ordered[i];
+			final double value = column == null ? context.features[idx][feature] : column[idx];
+			if (left >= minObs && value != curThr) {
+				final double improvement = MseSplitCriterion.improvement(labelSumL, weightSumL, labelSumNaN,
+						weightSumNaN, labelSum, weightSum);
+				if (improvement > bestImprovement) {
+					bestThreshold = curThr;
+					bestImprovement = improvement;
+					bestLastIndexLeft = i - 1;
+				}
+			}
+			labelSumL += expected[idx] * weights[idx];
+			weightSumL += weights[idx];
+			curThr = value;
+			++left;
+			if (seen++ == max) {
+				break;
+			}
+		}
+		if (bestLastIndexLeft == -1) {
+			return null;
+		}
+		return new Split(bestThreshold, null, null, null, bestImprovement, lastIndexNaN, bestLastIndexLeft, feature,
+				context.featureNames);
+	}
+
+	/**
+	 * @return a copy of the given split whose child statistics are built by the tree's statistics factory
+	 */
+	Split materialize(final Split split) {
+		final StatsBuilder<?> statsL = statisticsFactory.get();
+		final StatsBuilder<?> statsR = statisticsFactory.get();
+		final StatsBuilder<?> statsNaN = statisticsFactory.get();
+		final int[] ordered = rows.ordered(split.getFeature());
+		final int lastIndexNaN = split.getLastIndexNaN();
+		final int lastIndexLeft = split.getLastIndexLeft();
+		for (int i = rows.begin(); i < rows.end(); ++i) {
+			final int idx = ordered[i];
+			(i <= lastIndexNaN ? statsNaN : i <= lastIndexLeft ? statsL : statsR).add(context.expected[idx],
+					context.weights[idx]);
+		}
+		return new Split(split.getFeatureValueThreshold(), statsL.create(), statsR.create(), statsNaN.create(),
+				split.getImprovement(), lastIndexNaN, lastIndexLeft, split.getFeature(), context.featureNames);
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import com.insightml.math.statistics.SimpleStatistics;
+
+/**
+ * Label and weight sums per feature bin of a single tree node. All features share flat arrays, addressed through
+ * {@link FeatureBins#offset(int)}.
+ */
+final class NodeHistogram {
+	private final FeatureBins bins;
+
+	final int[] count;
+	final double[] sum;
+	final double[] weightedSum;
+	final double[] sumOfWeights;
+
+	NodeHistogram(final FeatureBins bins) {
+		this.bins = bins;
+		final int totalBins = bins.totalBins();
+		count = new int[totalBins];
+		sum = new double[totalBins];
+		weightedSum = new double[totalBins];
+		sumOfWeights = new double[totalBins];
+	}
+
+	void fill(final int feature, final NodeRows rows, final double[] expected, final double[] weights) {
+		final byte[] column = bins.column(feature);
+		final int offset = bins.offset(feature);
+		final int[] nodeRows = rows.rows();
+		for (int i = rows.begin(); i < rows.end(); ++i) {
+			final int row = nodeRows[i];
+			final int bin = offset + (column[row] & 0xFF);
+			final double label = expected[row];
+			final double weight = weights[row];
+			++count[bin];
+			sum[bin] += label;
+			weightedSum[bin] += label * weight;
+			sumOfWeights[bin] += weight;
+		}
+	}
+
+	/**
+	 * Removes the rows of a child node from this histogram, turning it into the histogram of the child's siblings.
+	 */
+	void subtract(final NodeHistogram child) {
+		for (int i = 0; i < count.length; ++i) {
+			count[i] -= child.count[i];
+			sum[i] -= child.sum[i];
+			weightedSum[i] -= child.weightedSum[i];
+			sumOfWeights[i] -= child.sumOfWeights[i];
+		}
+	}
+
+	void addTo(final SimpleStatistics stats, final int feature, final int bin) {
+		final int idx = bins.offset(feature) + bin;
+		stats.add(count[idx], sum[idx], weightedSum[idx], sumOfWeights[idx]);
+	}
+
+	int count(final int feature, final int bin) {
+		return count[bins.offset(feature) + bin];
+	}
+
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import javax.annotation.Nullable;
+
+/**
+ * The training rows of a single tree node. All nodes of a tree share one row buffer per feature, in which the rows of
+ * a node occupy the positions [begin, end) ordered by the feature's value. Splitting a node partitions these ranges
+ * in place, so a tree allocates its buffers only once and every node only touches its own rows.
+ * <p>
+ * For histogram-based split finding, no ordered buffers are kept and the rows of a node are not in any particular
+ * order.
+ * <p>
+ * For sparse features, each feature's buffer only holds the rows with a non-default value, ordered by value. The
+ * range of these rows differs per feature, so splitting a node only touches its non-default entries.
+ */
+public final class NodeRows {
+	@Nullable
+	private final int[][] ordered;
+	private final int[] rows;
+	private final byte[] childOf;
+	private final int[] buffer;
+	@Nullable
+	private final double[] values;
+	private final int begin;
+	private final int end;
+	@Nullable
+	private final int[][] sparse;
+	@Nullable
+	private final int[] sparseBegin;
+	@Nullable
+	private final int[] sparseEnd;
+
+	private NodeRows(@Nullable final int[][] ordered, final int[] rows, final byte[] childOf, final int[] buffer,
+			@Nullable final double[] values, final int begin, final int end) {
+		this(ordered, rows, childOf, buffer, values, begin, end, null, null, null);
+	}
+
+	private NodeRows(@Nullable final int[][] ordered, final int[] rows, final byte[] childOf, final int[] buffer,
+			@Nullable final double[] values, final int begin, final int end, @Nullable final int[][] sparse,
+			@Nullable final int[] sparseBegin, @Nullable final int[] sparseEnd) {
+		this.sparse = sparse;
+		this.sparseBegin = sparseBegin;
+		this.sparseEnd = sparseEnd;
+		this.ordered = ordered;
+		this.rows = rows;
+		this.childOf = childOf;
+		this.buffer = buffer;
+		this.values = values;
+		this.begin = begin;
+		this.end = end;
+	}
+
+	/**
+	 * @param ordered
+	 *            whether to keep the rows of every feature not excluded by the context's features mask in order.
+	 *            Sparse features always keep their non-default rows in order instead.
+	 * @return all rows with a non-zero weight
+	 */
+	public static NodeRows root(final SplitFinderContext context, final boolean ordered) {
+		return root(context, ordered, false);
+	}
+
+	/**
+	 * @param medians
+	 *            whether to allocate the buffer required by {@link #medians(AbstractSplit, SplitFinderContext, int)}
+	 */
+	public static NodeRows root(final SplitFinderContext context, final boolean ordered, final boolean medians) {
+		final double[] weights = context.weights;
+		int size = 0;
+		for (final double weight : weights) {
+			if (weight != 0) {
+				++size;
+			}
+		}
+		final byte[] childOf = new byte[weights.length];
+		final int[] buffer = new int[size];
+		final double[] values = medians ? new double[size] : null;
+		if (!ordered || context.sparse != null) {
+			final int[] rows = new int[size];
+			for (int i = 0, j = 0; i < weights.length; ++i) {
+				if (weights[i] != 0) {
+					rows[j++] = i;
+				}
+			}
+			if (context.sparse != null) {
+				return sparseRoot(context, rows, childOf, buffer, values);
+			}
+			return new NodeRows(null, rows, childOf, buffer, values, 0, size);
+		}
+		final boolean[] featuresMask = context.featuresMask;
+		final int[][] orderedRows = new int[context.orderedInstances.length][];
+		int[] rows = null;
+		for (int f = 0; f < orderedRows.length; ++f) {
+			if (featuresMask != null && !featuresMask[f]) {
+				continue;
+			}
+			orderedRows[f] = new int[size];
+			int j = 0;
+			for (final int idx : context.orderedInstances[f]) {
+				if (weights[idx] != 0) {
+					orderedRows[f][j++] = idx;
+				}
+			}
+			if (rows == null) {
+				rows = orderedRows[f];
+			}
+		}
+		return new NodeRows(orderedRows, rows == null ? new int[0] : rows, childOf, buffer, values, 0,
+				rows == null ? 0 : size);
+	}
+
+	private static NodeRows sparseRoot(final SplitFinderContext context, final int[] rows, final byte[] childOf,
+			final int[] buffer, @Nullable final double[] values) {
+		final double[] weights = context.weights;
+		final boolean[] featuresMask = context.featuresMask;
+		final int[][] orderedRows = context.sparse.orderedRows();
+		final int[][] sparse = new int[orderedRows.length][];
+		final int[] sparseEnd = new int[orderedRows.length];
+		for (int f = 0; f < sparse.length; ++f) {
+			if (featuresMask != null && !featuresMask[f]) {
+				continue;
+			}
+			int size = 0;
+			for (final int idx : orderedRows[f]) {
+				if (weights[idx] != 0) {
+					++size;
+				}
+			}
+			sparse[f] = new int[size];
+			for (final int idx : orderedRows[f]) {
+				if (weights[idx] != 0) {
+					sparse[f][sparseEnd[f]++] = idx;
+				}
+			}
+		}
+		return new NodeRows(null, rows, childOf, buffer, values, 0, rows.length, sparse,
+				new int[orderedRows.length], sparseEnd);
+	}
+
+	public int size() {
+		return end - begin;
+	}
+
+	/**
+	 * @return the first position of this node's rows in {@link #rows()} and {@link #ordered(int)}
+	 */
+	public int begin() {
+		return begin;
+	}
+
+	/**
+	 * @return the position after the last of this node's rows in {@link #rows()} and {@link #ordered(int)}
+	 */
+	public int end() {
+		return end;
+	}
+
+	/**
+	 * @return the shared buffer holding this node's rows at positions [begin, end)
+	 */
+	public int[] rows() {
+		return rows;
+	}
+
+	/**
+	 * @return the shared buffer holding this node's rows at positions [begin, end), ordered by the feature's value
+	 */
+	public int[] ordered(final int feature) {
+		if (ordered == null || ordered[feature] == null) {
+			throw new IllegalStateException("Rows are not ordered by feature " + feature);
+		}
+		return ordered[feature];
+	}
+
+	/**
+	 * @return the shared buffer holding this node's rows with a non-default value of the sparse feature at positions
+	 *         [{@link #sparseBegin(int)}, {@link #sparseEnd(int)}), ordered by value
+	 */
+	public int[] sparse(final int feature) {
+		if (sparse == null || sparse[feature] == null) {
+			throw new IllegalStateException("No sparse rows for feature " + feature);
+		}
+		return sparse[feature];
+	}
+
+	public int sparseBegin(final int feature) {
+		return sparseBegin[feature];
+	}
+
+	public int sparseEnd(final int feature) {
+		return sparseEnd[feature];
+	}
+
+	/**
+	 * Partitions the rows of this node in place. Each child keeps the relative order of its rows.
+	 *
+	 * @return the rows of each child, indexed as in {@link AbstractSplit#selectChild(float[])}
+	 */
+	NodeRows[] split(final AbstractSplit split, final SplitFinderContext context, final int numChildren) {
+		final int[] counts = assignChildren(split, context);
+		if (numChildren < 3 && counts[2] > 0) {
+			throw new IllegalStateException(counts[2] + " rows for missing values child");
+		}
+
+		final int[] offsets = { begin, begin + counts[0], begin + counts[0] + counts[1] };
+		if (ordered == null) {
+			partition(rows, offsets);
+		} else {
+			for (final int[] featureRows : ordered) {
+				if (featureRows != null) {
+					partition(featureRows, offsets);
+				}
+			}
+		}
+		if (sparse != null) {
+			return splitSparse(offsets, counts, numChildren);
+		}
+		final NodeRows[] children = new NodeRows[numChildren];
+		for (int c = 0; c < numChildren; ++c) {
+			children[c] = new NodeRows(ordered, rows, childOf, buffer, values, offsets[c], offsets[c] + counts[c]);
+		}
+		return children;
+	}
+
+	private NodeRows[] splitSparse(final int[] offsets, final int[] counts, final int numChildren) {
+		final int[][] childBegin = new int[numChildren][sparse.length];
+		final int[][] childEnd = new int[numChildren][sparse.length];
+		for (int f = 0; f < sparse.length; ++f) {
+			final int[] featureRows = sparse[f];
+			if (featureRows == null) {
+				continue;
+			}
+			final int from = sparseBegin[f];
+			final int to = sparseEnd[f];
+			final int[] featureCounts = new int[3];
+			for (int i = from; i < to; ++i) {
+				++featureCounts[childOf[featureRows[i]]];
+			}
+			// this node's range of the buffer is at least as large as its number of non-default entries
+			final int[] next = { begin, begin + featureCounts[0], begin + featureCounts[0] + featureCounts[1] };
+			for (int i = from; i < to; ++i) {
+				final int row = featureRows[i];
+				buffer[next[childOf[row]]++] = row;
+			}
+			System.arraycopy(buffer, begin, featureRows, from, to - from);
+			for (int c = 0, childFrom = from; c < numChildren; childFrom += featureCounts[c++]) {
+				childBegin[c][f] = childFrom;
+				childEnd[c][f] = childFrom + featureCounts[c];
+			}
+		}
+		final NodeRows[] children = new NodeRows[numChildren];
+		for (int c = 0; c < numChildren; ++c) {
+			children[c] = new NodeRows(null, rows, childOf, buffer, values, offsets[c], offsets[c] + counts[c],
+					sparse, childBegin[c], childEnd[c]);
+		}
+		return children;
+	}
+
+	/**
+	 * Records the given node as the leaf of all rows of this node.
+	 *
+	 * @param leaves
+	 *            the leaf of each row, indexed like the context's labels
+	 */
+	void assignLeaf(final TreeNode leaf, final TreeNode[] leaves) {
+		for (int i = begin; i < end; ++i) {
+			leaves[rows[i]] = leaf;
+		}
+	}
+
+	/**
+	 * Records the children of the given split as the leaves of this node's rows without partitioning them. Rows
+	 * without a suitable child remain at the parent, just as in {@link TreeModel#predict(float[])}.
+	 */
+	void assignLeaves(final AbstractSplit split, final SplitFinderContext context, final TreeNode parent,
+			final TreeNode[] children, final TreeNode[] leaves) {
+		assignChildren(split, context);
+		for (int i = begin; i < end; ++i) {
+			final int child = childOf[rows[i]];
+			leaves[rows[i]] = child < children.length ? children[child] : parent;
+		}
+	}
+
+	/**
+	 * Selects the median label of each child's rows with a positive weight. The labels are gathered in this node's
+	 * range of a buffer shared by the whole tree, so no sorting or per-node allocation is required.
+	 *
+	 * @return the median of each child, or NaN for children without any such rows
+	 */
+	double[] medians(final AbstractSplit split, final SplitFinderContext context, final int numChildren) {
+		if (values == null) {
+			throw new IllegalStateException("No buffer for medians");
+		}
+		assignChildren(split, context);
+		final double[] weights = context.weights;
+		final int[] counts = new int[3];
+		for (int i = begin; i < end; ++i) {
+			if (weights[rows[i]] > 0) {
+				++counts[childOf[rows[i]]];
+			}
+		}
+		final int[] next = { begin, begin + counts[0], begin + counts[0] + counts[1] };
+		for (int i = begin; i < end; ++i) {
+			final int row = rows[i];
+			if (weights[row] > 0) {
+				values[next[childOf[row]]++] = context.expected[row];
+			}
+		}
+		final double[] medians = new double[numChildren];
+		for (int c = 0, from = begin; c < numChildren; from += counts[c++]) {
+			medians[c] = median(values, from, from + counts[c]);
+		}
+		return medians;
+	}
+
+	private int[] assignChildren(final AbstractSplit split, final SplitFinderContext context) {
+		final int feature = split.getFeature();
+		final int[] counts = new int[3];
+		if (!(split instanceof Split) || ordered == null) {
+			for (int i = begin; i < end; ++i) {
+				final int child = split.selectChild(context.value(rows[i], feature));
+				childOf[rows[i]] = (byte) child;
+				++counts[child];
+			}
+		} else {
+			final int[] splitOrdered = ordered[feature];
+			final int lastIndexNaN = ((Split) split).getLastIndexNaN();
+			final int lastIndexLeft = split.getLastIndexLeft();
+			for (int i = begin; i < end; ++i) {
+				final int child = i <= lastIndexNaN ? 2 : i <= lastIndexLeft ? 0 : 1;
+				childOf[splitOrdered[i]] = (byte) child;
+				++counts[child];
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Quickselect on values[from, to), interpolating between the two middle values for an even number of values.
+	 */
+	static double median(final double[] values, final int from, final int to) {
+		if (from >= to) {
+			return Double.NaN;
+		}
+		final int k = from + (to - from - 1) / 2;
+		int lo = from;
+		int hi = to - 1;
+		while (lo < hi) {
+			final double pivot = values[lo + (hi - lo) / 2];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (values[i] < pivot) {
+					++i;
+				}
+				while (values[j] > pivot) {
+					--j;
+				}
+				if (i <= j) {
+					final double tmp = values[i];
+					values[i++] = values[j];
+					values[j--] = tmp;
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			} else if (k >= i) {
+				lo = i;
+			} else {
+				break;
+			}
+		}
+		final double lower = values[k];
+		if ((to - from) % 2 == 1) {
+			return lower;
+		}
+		double upper = Double.POSITIVE_INFINITY;
+		for (int i = k + 1; i < to; ++i) {
+			upper = Math.min(upper, values[i]);
+		}
+		return lower + 0.5 * (upper - lower);
+	}
+
+	private void partition(final int[] featureRows, final int[] offsets) {
+		final int[] next = offsets.clone();
+		for (int i = begin; i < end; ++i) {
+			final int row = featureRows[i];
+			buffer[next[childOf[row]]++] = row;
+		}
+		System.arraycopy(buffer, begin, featureRows, begin, end - begin);
+	}
+
+}
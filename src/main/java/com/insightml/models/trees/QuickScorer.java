@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * Scores {@link FlatTrees} the QuickScorer way: instead of walking each tree, the threshold splits of all trees are
+ * grouped by feature and sorted by threshold. Each row scans every feature's splits up to the first one it does not
+ * exceed, clearing the leaves left of each exceeded split from its tree's bitmask. The leftmost leaf remaining in a
+ * tree's bitmask is then the one the row ends up in. Categorical splits cannot be sorted and are checked one by one.
+ * Only trees with at most 64 leaves are supported, which covers the shallow trees of gradient boosting.
+ */
+public final class QuickScorer implements TreeScorer {
+	private static final float MISSING = FlatTrees.MISSING;
+
+	private final FlatTrees trees;
+	private final int numTrees;
+	/** the range of each feature's splits in the arrays below */
+	private final int[] featureOffsets;
+	private final float[] thresholds;
+	private final int[] splitTrees;
+	/** the leaves remaining once a row exceeds the threshold */
+	private final long[] masks;
+	private final int[] missingOffsets;
+	private final int[] missingTrees;
+	/** the leaves remaining for missing values, for splits with a missing child of their own */
+	private final long[] missingMasks;
+	/** positions of categorical splits in the flat trees */
+	private final int[] categorical;
+	private final int[] categoricalTrees;
+	private final long[] categoricalMasks;
+	private final long[] categoricalMissingMasks;
+	private final int[] leafOffsets;
+	/** the weighted leaf values of each tree, from left to right */
+	private final double[] leafValues;
+
+	private QuickScorer(final FlatTrees trees, final Builder builder) {
+		this.trees = trees;
+		numTrees = trees.roots.length;
+		leafOffsets = builder.leafOffsets;
+		leafValues = Arrays.copyOf(builder.leafValues, builder.numLeaves);
+
+		final List<Integer> splits = new ArrayList<>();
+		final List<Integer> missingSplits = new ArrayList<>();
+		final List<Integer> categoricalSplits = new ArrayList<>();
+		int numFeatures = 0;
+		for (int n = 0; n < trees.feature.length; ++n) {
+			if (trees.feature[n] < 0) {
+				continue;
+			}
+			numFeatures = Math.max(numFeatures, trees.feature[n] + 1);
+			if (trees.categories[n] >= 0) {
+				categoricalSplits.add(n);
+				continue;
+			}
+			splits.add(n);
+			if (builder.hasMissingChild(n)) {
+				missingSplits.add(n);
+			}
+		}
+		splits.sort(Comparator.comparingInt((final Integer n) -> trees.feature[n])
+				.thenComparingDouble(n -> trees.threshold[n]));
+		missingSplits.sort(Comparator.comparingInt(n -> trees.feature[n]));
+
+		featureOffsets = offsets(splits, numFeatures);
+		thresholds = new float[splits.size()];
+		splitTrees = new int[splits.size()];
+		masks = new long[splits.size()];
+		for (int i = 0; i < thresholds.length; ++i) {
+			final int n = splits.get(i);
+			thresholds[i] = trees.threshold[n];
+			splitTrees[i] = builder.tree[n];
+			masks[i] = ~builder.leftLeaves[n];
+		}
+		missingOffsets = offsets(missingSplits, numFeatures);
+		missingTrees = new int[missingSplits.size()];
+		missingMasks = new long[missingSplits.size()];
+		for (int i = 0; i < missingTrees.length; ++i) {
+			final int n = missingSplits.get(i);
+			missingTrees[i] = builder.tree[n];
+			missingMasks[i] = ~(builder.leftLeaves[n] | builder.rightLeaves[n]);
+		}
+		categorical = new int[categoricalSplits.size()];
+		categoricalTrees = new int[categorical.length];
+		categoricalMasks = new long[categorical.length];
+		categoricalMissingMasks = new long[categorical.length];
+		for (int i = 0; i < categorical.length; ++i) {
+			final int n = categoricalSplits.get(i);
+			categorical[i] = n;
+			categoricalTrees[i] = builder.tree[n];
+			categoricalMasks[i] = ~builder.leftLeaves[n];
+			categoricalMissingMasks[i] = builder.hasMissingChild(n)
+					? ~(builder.leftLeaves[n] | builder.rightLeaves[n])
+					: -1L;
+		}
+	}
+
+	private int[] offsets(final List<Integer> sortedSplits, final int numFeatures) {
+		final int[] offsets = new int[numFeatures + 1];
+		for (final int n : sortedSplits) {
+			++offsets[trees.feature[n] + 1];
+		}
+		for (int f = 0; f < numFeatures; ++f) {
+			offsets[f + 1] += offsets[f];
+		}
+		return offsets;
+	}
+
+	/**
+	 * @return a scorer for the given trees, or null if any of them has more than 64 leaves
+	 */
+	@Nullable
+	public static QuickScorer of(final FlatTrees trees) {
+		final Builder builder = new Builder(trees);
+		return builder.build() ? new QuickScorer(trees, builder) : null;
+	}
+
+	@Override
+	public double predict(final float[] features, final double initial) {
+		final double[] sum = { initial };
+		predict(new float[][] { features }, sum, 0, 1, new long[numTrees]);
+		return sum[0];
+	}
+
+	@Override
+	public void predict(final float[][] features, final double[] sums, final int from, final int to) {
+		predict(features, sums, from, to, new long[numTrees]);
+	}
+
+	private void predict(final float[][] features, final double[] sums, final int from, final int to,
+			final long[] leaves) {
+		for (int i = from; i < to; ++i) {
+			final float[] row = features[i];
+			Arrays.fill(leaves, -1L);
+			for (int f = 0; f < featureOffsets.length - 1; ++f) {
+				final float v = row[f];
+				if (v == MISSING) {
+					for (int s = missingOffsets[f]; s < missingOffsets[f + 1]; ++s) {
+						leaves[missingTrees[s]] &= missingMasks[s];
+					}
+				} else {
+					final int end = featureOffsets[f + 1];
+					for (int s = featureOffsets[f]; s < end && v > thresholds[s]; ++s) {
+						leaves[splitTrees[s]] &= masks[s];
+					}
+				}
+			}
+			for (int c = 0; c < categorical.length; ++c) {
+				final float v = row[trees.feature[categorical[c]]];
+				if (v == MISSING) {
+					leaves[categoricalTrees[c]] &= categoricalMissingMasks[c];
+				} else if (!trees.inCategories(categorical[c], v)) {
+					leaves[categoricalTrees[c]] &= categoricalMasks[c];
+				}
+			}
+			double sum = sums[i];
+			for (int t = 0; t < numTrees; ++t) {
+				sum += leafValues[leafOffsets[t] + Long.numberOfTrailingZeros(leaves[t])];
+			}
+			sums[i] = sum;
+		}
+	}
+
+	/**
+	 * Numbers each tree's leaves from left to right, missing children coming last.
+	 */
+	private static final class Builder {
+		private final FlatTrees trees;
+		final int[] tree;
+		/** the leaves below each split's children */
+		final long[] leftLeaves;
+		final long[] rightLeaves;
+		final int[] leafOffsets;
+		double[] leafValues = new double[64];
+		int numLeaves;
+		private int treeLeaves;
+
+		Builder(final FlatTrees trees) {
+			this.trees = trees;
+			tree = new int[trees.feature.length];
+			leftLeaves = new long[tree.length];
+			rightLeaves = new long[tree.length];
+			leafOffsets = new int[trees.roots.length];
+		}
+
+		/**
+		 * @return false if any tree has too many leaves
+		 */
+		boolean build() {
+			for (int t = 0; t < trees.roots.length; ++t) {
+				final int end = t + 1 < trees.roots.length ? trees.roots[t + 1] : tree.length;
+				Arrays.fill(tree, trees.roots[t], end, t);
+				leafOffsets[t] = numLeaves;
+				treeLeaves = 0;
+				leaves(trees.roots[t], -1);
+				if (treeLeaves > 64) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		boolean hasMissingChild(final int n) {
+			return trees.missing[n] != trees.left[n];
+		}
+
+		/**
+		 * @return the leaves below the given child of the given parent
+		 */
+		private long leaves(final int child, final int parent) {
+			if (child < 0) {
+				return leaf(trees.value[parent]);
+			}
+			if (trees.feature[child] < 0) {
+				return leaf(trees.value[child]);
+			}
+			leftLeaves[child] = leaves(trees.left[child], child);
+			rightLeaves[child] = leaves(trees.right[child], child);
+			final long below = leftLeaves[child] | rightLeaves[child];
+			return hasMissingChild(child) ? below | leaves(trees.missing[child], child) : below;
+		}
+
+		private long leaf(final double value) {
+			if (treeLeaves++ >= 64) {
+				return 0;
+			}
+			if (numLeaves == leafValues.length) {
+				leafValues = Arrays.copyOf(leafValues, numLeaves * 2);
+			}
+			leafValues[numLeaves++] = value;
+			return 1L << treeLeaves - 1;
+		}
+	}
+
+}
@@ -16,6 +16,7 @@
 package com.insightml.models.trees;
 
 import java.io.Serializable;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.Supplier;
 
 import javax.annotation.Nullable;
@@ -34,6 +35,7 @@ import com.insightml.models.LearnerInput;
 import com.insightml.utils.Arguments;
 import com.insightml.utils.Check;
 import com.insightml.utils.IArguments;
+import com.insightml.utils.jobs.JobPool;
 
 public class RegTree extends AbstractDoubleLearner<Double> {
 	private static final long serialVersionUID = 1517682772459402265L;
@@ -41,6 +43,7 @@ public class RegTree extends AbstractDoubleLearner<Double> {
 	private SplitCriterionFactory splitCriterionFactory;
 	private boolean parallelize;
 	private Supplier<? extends StatsBuilder<?>> statisticsFactory;
+	private transient volatile FeatureBins featureBins;
 
 	RegTree() {
 	}
@@ -102,7 +105,12 @@ public class RegTree extends AbstractDoubleLearner<Double> {
 		args.add("depth", 4.0, 1, 24, 1);
 		args.add("minObs", 10.0, 1, 20000, 10);
 		args.add("minImprovement", 0.0, 0, 1000, 0);
-		args.add("nodePred", 1.0, 1, 4, 1);
+		args.add("nodePred", 1.0, 1, 6, 1);
+		args.add("maxBins", 0.0, 0, FeatureBins.MAX_BINS, 1);
+		args.add("maxLeaves", 0.0, 0, 100000, 1);
+		args.add("lambda", 0.0, 0, 1000);
+		args.add("nodeParallelRows", (double) GrowJob.NODE_PARALLEL_ROWS, 1, 100000000, 0);
+		args.add("featureParallelRows", (double) GrowJob.FEATURE_PARALLEL_ROWS, 1, 100000000, 0);
 		return args;
 	}
 
@@ -121,18 +129,60 @@ public class RegTree extends AbstractDoubleLearner<Double> {
 
 	public TreeModel run(final ISamples<Sample, Double> train, @Nullable final boolean[] featuresMask,
 			final int labelIndex) {
+		return grow(train, featuresMask, labelIndex, null);
+	}
+
+	/**
+	 * Like {@link #run(ISamples, boolean[], int)}, but also keeps the leaf of each training row.
+	 */
+	public TreeFit fit(final ISamples<Sample, Double> train, @Nullable final boolean[] featuresMask,
+			final int labelIndex) {
+		final TreeNode[] leaves = new TreeNode[train.size()];
+		return new TreeFit(grow(train, featuresMask, labelIndex, leaves), leaves);
+	}
+
+	private TreeModel grow(final ISamples<Sample, Double> train, @Nullable final boolean[] featuresMask,
+			final int labelIndex, @Nullable final TreeNode[] leaves) {
 		final TreeNode root = createTreeRoot(train, labelIndex);
 		final int minObs = (int) argument("minObs");
-		final SplitFinderContext context = new SplitFinderContext(train, featuresMask,
+		final SplitFinderContext context = withFeatureBins(new SplitFinderContext(train, featuresMask,
 				getOriginalArguments().toString("forceFirstFeature", null), (int) argument("depth"),
-				argument("minImprovement"), labelIndex);
-		final boolean[] subset = makeTrainingSubset(train, labelIndex);
+				argument("minImprovement"), labelIndex)).withLambda(argument("lambda"))
+				.withParallelRows((int) argument("nodeParallelRows"), (int) argument("featureParallelRows"));
 		final String nodePrediction = getNodePredictionMode();
-		new GrowJob(root, context, subset, 1, nodePrediction, splitCriterionFactory, minObs, statisticsFactory,
-				parallelize).compute();
+		final NodeRows rows = NodeRows.root(context, context.bins == null && context.sparse == null,
+				GrowJob.usesMedian(nodePrediction));
+		final GrowJob rootJob = new GrowJob(root, context, rows, 1, nodePrediction, splitCriterionFactory, minObs,
+				statisticsFactory, parallelize, leaves);
+		// with "maxLeaves" set, grow best-first instead of depth-wise
+		final int maxLeaves = (int) argument("maxLeaves");
+		final RecursiveAction job = maxLeaves > 0 ? new BestFirstGrowJob(rootJob, maxLeaves, parallelize) : rootJob;
+		if (parallelize) {
+			JobPool.invoke(job);
+		} else {
+			job.invoke();
+		}
 		return new TreeModel(root, train.featureNames());
 	}
 
+	/**
+	 * Switches the context to histogram-based split finding if "maxBins" is at least 2. The quantized features are kept
+	 * for as long as the same feature matrix is passed to this learner again.
+	 */
+	private SplitFinderContext withFeatureBins(final SplitFinderContext context) {
+		final int maxBins = (int) argument("maxBins");
+		// a single bin could not be split, and sparse features are scanned by their non-default entries instead
+		if (maxBins < 2 || context.sparse != null) {
+			return context;
+		}
+		FeatureBins bins = featureBins;
+		if (bins == null || bins.source != context.featureSource()) {
+			bins = FeatureBins.create(context, maxBins);
+			featureBins = bins;
+		}
+		return context.withFeatureBins(bins);
+	}
+
 	public static TreeNode createTreeRoot(final ISamples<?, Double> train, final int labelIndex) {
 		final Stats sRoot = new Stats();
 		final Double[] labels = train.expected(labelIndex);
@@ -146,15 +196,6 @@ public class RegTree extends AbstractDoubleLearner<Double> {
 		return root;
 	}
 
-	public static boolean[] makeTrainingSubset(final ISamples<Sample, Double> train, final int labelIndex) {
-		final boolean[] subset = new boolean[train.size()];
-		final double[] weights = train.weights(labelIndex);
-		for (int i = 0; i < subset.length; ++i) {
-			subset[i] = weights[i] != 0;
-		}
-		return subset;
-	}
-
 	private String getNodePredictionMode() {
 		final double nodePred = argument("nodePred");
 		if (nodePred == 1) {
@@ -165,10 +206,22 @@ public class RegTree extends AbstractDoubleLearner<Double> {
 			return "meandian";
 		} else if (nodePred == 4) {
 			return "mean-smoothed";
+		} else if (nodePred == 5) {
+			return "newton";
+		} else if (nodePred == 6) {
+			return "weighted-mean";
 		}
 		throw new IllegalArgumentException("Unknown mode: " + nodePred);
 	}
 
+	/**
+	 * @return whether the leaves take the samples' weights into account, as required for up-weighted samples
+	 */
+	public boolean hasWeightedLeaves() {
+		final String nodePrediction = getNodePredictionMode();
+		return "weighted-mean".equals(nodePrediction) || "newton".equals(nodePrediction);
+	}
+
 	public static final class StatsSupplier implements Supplier<StatsBuilder<Stats>>, Serializable {
 		private static final long serialVersionUID = 7222508288626338172L;
 
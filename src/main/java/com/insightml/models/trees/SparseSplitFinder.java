@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import com.insightml.math.statistics.StatsBuilder;
+
+/**
+ * Same search as {@link MseThresholdSplitFinder} for {@link SplitFinderContext#sparse} features. Only the node's rows
+ * with a non-default value are visited. All other rows form one implicit bucket at the default value, whose sums are
+ * the node's sums minus those of the visited rows. Split positions refer to where the rows would be if all of them
+ * were ordered by the feature, but are not used for partitioning.
+ */
+final class SparseSplitFinder implements IntFunction<Split> {
+	private final SplitFinderContext context;
+	private final NodeRows rows;
+	private final int samples;
+	private final MseSplitCriterion splitCriterion;
+	private final int minObs;
+	private final Supplier<StatsBuilder<?>> statisticsFactory;
+
+	SparseSplitFinder(final SplitFinderContext context, final NodeRows rows, final int samples,
+			final MseSplitCriterion splitCriterion, final int minObs,
+			final Supplier<StatsBuilder<?>> statisticsFactory) {
+		this.context = context;
+		this.rows = rows;
+		this.samples = samples;
+		this.splitCriterion = splitCriterion;
+		this.minObs = minObs;
+		this.statisticsFactory = statisticsFactory;
+
+		if (samples < minObs * 2) {
+			throw new IllegalArgumentException(
+					"Requires at least " + minObs * 2 + " samples to find a split, but only got " + samples);
+		}
+	}
+
+	@Override
+	public Split apply(final int feature) {
+		final int[] sparse = rows.sparse(feature);
+		final int from = rows.sparseBegin(feature);
+		final int to = rows.sparseEnd(feature);
+		final double[] expected = context.expected;
+		final double[] weights = context.weights;
+		final float defaultValue = context.sparse.defaultValue(feature);
+
+		// the implicit bucket of rows at the default value
+		double labelSumDefault = splitCriterion.labelSum;
+		double weightSumDefault = splitCriterion.weightSum;
+		for (int i = from; i < to; ++i) {
+			labelSumDefault -= expected[sparse[i]] * weights[sparse[i]];
+			weightSumDefault -= weights[sparse[i]];
+		}
+		final int countDefault = samples - (to - from);
+
+		// missing values come first, either as entries or as the default bucket
+		double labelSumNaN = 0;
+		double weightSumNaN = 0;
+		int countNaN = 0;
+		int firstIndex = from;
+		final boolean defaultMissing = defaultValue == ThresholdSplitFinder.VALUE_MISSING;
+		if (defaultMissing) {
+			labelSumNaN += labelSumDefault;
+			weightSumNaN += weightSumDefault;
+			countNaN += countDefault;
+		}
+		for (; firstIndex < to; ++firstIndex) {
+			final int idx = sparse[firstIndex];
+			if (context.sparse.value(idx, feature) != ThresholdSplitFinder.VALUE_MISSING) {
+				break;
+			}
+			labelSumNaN += expected[idx] * weights[idx];
+			weightSumNaN += weights[idx];
+			++countNaN;
+		}
+		final boolean nanChild = countNaN >= minObs && countNaN <= samples - minObs * 2;
+		if (!nanChild) {
+			labelSumNaN = 0;
+			weightSumNaN = 0;
+		}
+
+		final Scan scan = new Scan(labelSumNaN, weightSumNaN);
+		final int max = samples - minObs;
+		int seen = nanChild ? countNaN : 0;
+		if (!nanChild) {
+			// missing values are scanned like any other value, starting from the first row
+			firstIndex = from;
+		}
+		boolean defaultAdded = defaultMissing && nanChild || countDefault == 0;
+		for (int i = firstIndex; i < to && seen <= max; ++i) {
+			final int idx = sparse[i];
+			final float value = context.sparse.value(idx, feature);
+			if (!defaultAdded && value > defaultValue) {
+				scan.add(defaultValue, labelSumDefault, weightSumDefault, countDefault);
+				seen += countDefault;
+				defaultAdded = true;
+				if (seen > max) {
+					break;
+				}
+			}
+			scan.add(value, expected[idx] * weights[idx], weights[idx], 1);
+			++seen;
+		}
+		if (!defaultAdded && seen <= max) {
+			scan.add(defaultValue, labelSumDefault, weightSumDefault, countDefault);
+		}
+		if (scan.bestLeft == -1) {
+			return null;
+		}
+		final int lastIndexNaN = nanChild ? countNaN - 1 : -1;
+		return new Split(scan.bestThreshold, null, null, null, scan.bestImprovement, lastIndexNaN,
+				lastIndexNaN + scan.bestLeft, feature, context.featureNames);
+	}
+
+	/**
+	 * The sums left of the current position while scanning a single feature.
+	 */
+	private final class Scan {
+		private final double labelSumNaN;
+		private final double weightSumNaN;
+		private double labelSumL;
+		private double weightSumL;
+		private int left;
+		private double curThr = -9999999;
+		private double bestThreshold;
+		private double bestImprovement = context.minImprovement - 0.000000001;
+		private int bestLeft = -1;
+
+		Scan(final double labelSumNaN, final double weightSumNaN) {
+			this.labelSumNaN = labelSumNaN;
+			this.weightSumNaN = weightSumNaN;
+		}
+
+		/**
+		 * Evaluates splitting before the given rows, which all have the same value, and then moves them to the left.
+		 */
+		void add(final double value, final double labelSum, final double weightSum, final int count) {
+			if (left >= minObs && value != curThr) {
+				final double improvement = MseSplitCriterion.improvement(labelSumL, weightSumL, labelSumNaN,
+						weightSumNaN, splitCriterion.labelSum, splitCriterion.weightSum);
+				if (improvement > bestImprovement) {
+					bestThreshold = curThr;
+					bestImprovement = improvement;
+					bestLeft = left;
+				}
+			}
+			labelSumL += labelSum;
+			weightSumL += weightSum;
+			curThr = value;
+			left += count;
+		}
+	}
+
+	/**
+	 * @return a copy of the given split whose child statistics are built by the tree's statistics factory
+	 */
+	Split materialize(final Split split) {
+		final StatsBuilder<?>[] stats = new StatsBuilder<?>[3];
+		for (int i = 0; i < stats.length; ++i) {
+			stats[i] = statisticsFactory.get();
+		}
+		final int feature = split.getFeature();
+		final int[] nodeRows = rows.rows();
+		for (int i = rows.begin(); i < rows.end(); ++i) {
+			final int row = nodeRows[i];
+			stats[split.selectChild(context.value(row, feature))].add(context.expected[row], context.weights[row]);
+		}
+		return new Split(split.getFeatureValueThreshold(), stats[0].create(), stats[1].create(), stats[2].create(),
+				split.getImprovement(), split.getLastIndexNaN(), split.getLastIndexLeft(), split.getFeature(),
+				context.featureNames);
+	}
+
+}
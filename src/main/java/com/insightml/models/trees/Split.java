@@ -56,12 +56,18 @@ public final class Split extends AbstractSplit implements Cloneable {
 
 	@Override
 	public int selectChild(final float[] features) {
-		if (features[feature] > thresh) {
+		return selectChild(features[feature]);
+	}
+
+	@Override
+	int selectChild(final float value) {
+		if (value > thresh) {
 			return 1;
 		}
-		return lastIndexNaN >= 0 && features[feature] == ThresholdSplitFinder.VALUE_MISSING ? 2 : 0;
+		return lastIndexNaN >= 0 && value == ThresholdSplitFinder.VALUE_MISSING ? 2 : 0;
 	}
 
+	@Override
 	public TreeNode selectChild(final float[] features, final TreeNode[] children) {
 		if (features[feature] > thresh) {
 			return children[1];
@@ -103,10 +109,21 @@ public final class Split extends AbstractSplit implements Cloneable {
 		return Objects.hash(feature, thresh);
 	}
 
-	public String getRulePresentation() {
+	@Override
+	public String presentChild(final int child) {
+		if (child == 1) {
+			return " > " + UiUtils.format(thresh);
+		} else if (child == 2) {
+			return " missing";
+		}
 		return " \u2264 " + UiUtils.format(thresh);
 	}
 
+	@Override
+	public String getRulePresentation() {
+		return presentChild(0);
+	}
+
 	@Override
 	public String toString() {
 		final double weightSum = getWeightSum();
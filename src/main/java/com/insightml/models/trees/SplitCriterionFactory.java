@@ -17,5 +17,5 @@ package com.insightml.models.trees;
 
 public interface SplitCriterionFactory {
 
-	SplitCriterion create(final SplitFinderContext context, final boolean[] subset);
+	SplitCriterion create(final SplitFinderContext context, final NodeRows rows);
 }
@@ -18,6 +18,7 @@ package com.insightml.models.trees;
 import javax.annotation.Nullable;
 
 import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.SparseFeatures;
 import com.insightml.utils.Utils;
 
 public final class SplitFinderContext {
@@ -25,31 +26,85 @@ public final class SplitFinderContext {
 	public final double[] expected;
 	public final double[] weights;
 	public final String[] featureNames;
+	/**
+	 * Row-major feature matrix, only set if the samples provide no {@link #columns}.
+	 */
+	@Nullable
 	public final float[][] features;
+	/**
+	 * Feature-major feature matrix, see {@link ISamples#featureColumns()}.
+	 */
+	@Nullable
+	public final float[][] columns;
+	/**
+	 * Sparse feature matrix, see {@link ISamples#sparseFeatures()}. If set, neither {@link #features} nor
+	 * {@link #columns} nor {@link #orderedInstances} are.
+	 */
+	@Nullable
+	public final SparseFeatures sparse;
+	@Nullable
 	public final int[][] orderedInstances;
+	/**
+	 * See {@link ISamples#categoricalFeatures()}.
+	 */
+	@Nullable
+	public final boolean[] categorical;
 	public final int maxDepth;
 	@Nullable
 	public final boolean[] featuresMask;
+	@Nullable
+	public final FeatureBins bins;
 
 	@Nullable
 	final String forceFirstFeature;
 	final double minImprovement;
 	final int labelIndex;
+	/**
+	 * L2 regularization of leaf values predicted by Newton steps, see {@link #withLambda(double)}.
+	 */
+	final double lambda;
+	/**
+	 * Nodes with at least this many rows grow their children as separate tasks, see {@link #withParallelRows}.
+	 */
+	final int nodeParallelRows;
+	/**
+	 * Nodes with at least this many rows search their features in parallel.
+	 */
+	final int featureParallelRows;
 
 	public SplitFinderContext(final double[] expected, final double[] weights, final String[] featureNames,
 			final float[][] features, final int[][] orderedInstances, final int maxDepth,
 			@Nullable final boolean[] featuresMask, @Nullable final String forceFirstFeature,
 			final double minImprovement, final int labelIndex) {
+		this(expected, weights, featureNames, features, null, null, orderedInstances, null, maxDepth, featuresMask,
+				null, forceFirstFeature, minImprovement, labelIndex, 0, GrowJob.NODE_PARALLEL_ROWS,
+				GrowJob.FEATURE_PARALLEL_ROWS);
+	}
+
+	private SplitFinderContext(final double[] expected, final double[] weights, final String[] featureNames,
+			@Nullable final float[][] features, @Nullable final float[][] columns,
+			@Nullable final SparseFeatures sparse, @Nullable final int[][] orderedInstances,
+			@Nullable final boolean[] categorical, final int maxDepth, @Nullable final boolean[] featuresMask,
+			@Nullable final FeatureBins bins,
+			@Nullable final String forceFirstFeature, final double minImprovement, final int labelIndex,
+			final double lambda, final int nodeParallelRows, final int featureParallelRows) {
 		this.expected = expected;
 		this.weights = weights;
 		this.featureNames = featureNames;
 		this.features = features;
+		this.columns = columns;
+		this.sparse = sparse;
 		this.orderedInstances = orderedInstances;
+		this.categorical = categorical;
 		this.maxDepth = maxDepth;
 		this.featuresMask = featuresMask;
+		this.bins = bins;
 		this.forceFirstFeature = forceFirstFeature;
 		this.minImprovement = minImprovement;
 		this.labelIndex = labelIndex;
+		this.lambda = lambda;
+		this.nodeParallelRows = nodeParallelRows;
+		this.featureParallelRows = featureParallelRows;
 	}
 
 	public SplitFinderContext(final ISamples<?, Double> instances, @Nullable final boolean[] featuresMask,
@@ -62,20 +117,81 @@ public final class SplitFinderContext {
 		}
 		weights = instances.weights(labelIndex);
 		featureNames = instances.featureNames();
-		features = instances.features();
-		orderedInstances = instances.orderedIndexes();
+		sparse = instances.sparseFeatures();
+		columns = sparse == null ? instances.featureColumns() : null;
+		features = sparse == null && columns == null ? instances.features() : null;
+		orderedInstances = sparse == null ? instances.orderedIndexes() : null;
+		categorical = instances.categoricalFeatures();
 
 		this.featuresMask = featuresMask;
+		bins = null;
 		this.forceFirstFeature = forceFirstFeature;
 
 		this.maxDepth = maxDepth;
 		this.minImprovement = minImprovement;
 		this.labelIndex = labelIndex;
+		lambda = 0;
+		nodeParallelRows = GrowJob.NODE_PARALLEL_ROWS;
+		featureParallelRows = GrowJob.FEATURE_PARALLEL_ROWS;
+	}
+
+	public float value(final int instance, final int feature) {
+		if (sparse != null) {
+			return sparse.value(instance, feature);
+		}
+		return columns == null ? features[instance][feature] : columns[feature][instance];
+	}
+
+	public int numFeatures() {
+		return featureNames.length;
+	}
+
+	public boolean isCategorical(final int feature) {
+		return categorical != null && categorical[feature];
+	}
+
+	/**
+	 * @return the matrix backing {@link #value(int, int)}, identifying the training features
+	 */
+	Object featureSource() {
+		if (sparse != null) {
+			return sparse;
+		}
+		return columns == null ? features : columns;
 	}
 
 	public SplitFinderContext withFeaturesMask(@Nullable final boolean[] featuresMask) {
-		return new SplitFinderContext(expected, weights, featureNames, features, orderedInstances, maxDepth,
-				featuresMask, forceFirstFeature, minImprovement, labelIndex);
+		return new SplitFinderContext(expected, weights, featureNames, features, columns, sparse, orderedInstances,
+				categorical, maxDepth, featuresMask, bins, forceFirstFeature, minImprovement, labelIndex, lambda,
+				nodeParallelRows, featureParallelRows);
+	}
+
+	public SplitFinderContext withFeatureBins(@Nullable final FeatureBins featureBins) {
+		return new SplitFinderContext(expected, weights, featureNames, features, columns, sparse, orderedInstances,
+				categorical, maxDepth, featuresMask, featureBins, forceFirstFeature, minImprovement, labelIndex,
+				lambda, nodeParallelRows, featureParallelRows);
+	}
+
+	/**
+	 * @param l2
+	 *            added to the sum of weights of every leaf predicted by a Newton step
+	 */
+	public SplitFinderContext withLambda(final double l2) {
+		return new SplitFinderContext(expected, weights, featureNames, features, columns, sparse, orderedInstances,
+				categorical, maxDepth, featuresMask, bins, forceFirstFeature, minImprovement, labelIndex, l2,
+				nodeParallelRows, featureParallelRows);
+	}
+
+	/**
+	 * @param nodeRows
+	 *            the minimum rows of nodes growing their children as separate tasks
+	 * @param featureRows
+	 *            the minimum rows of nodes searching their features in parallel
+	 */
+	public SplitFinderContext withParallelRows(final int nodeRows, final int featureRows) {
+		return new SplitFinderContext(expected, weights, featureNames, features, columns, sparse, orderedInstances,
+				categorical, maxDepth, featuresMask, bins, forceFirstFeature, minImprovement, labelIndex, lambda,
+				nodeRows, featureRows);
 	}
 
 }
@@ -25,16 +25,16 @@ public final class ThresholdSplitFinder implements IntFunction<Split> {
 	public static final double VALUE_MISSING = Double.NEGATIVE_INFINITY;
 
 	private final SplitFinderContext context;
-	private final boolean[] subset;
+	private final NodeRows rows;
 	private final int samples;
 	private final SplitCriterion splitCriterion;
 	private final int minObs;
 	private final Supplier<StatsBuilder<?>> statisticsFactory;
 
-	public ThresholdSplitFinder(final SplitFinderContext context, final boolean[] subset, final int samples,
+	public ThresholdSplitFinder(final SplitFinderContext context, final NodeRows rows, final int samples,
 			final SplitCriterion splitCriterion, final int minObs, final Supplier<StatsBuilder<?>> statisticsFactory) {
 		this.context = context;
-		this.subset = subset;
+		this.rows = rows;
 		this.samples = samples;
 		this.splitCriterion = splitCriterion;
 		this.minObs = minObs;
@@ -49,7 +49,8 @@ public final class ThresholdSplitFinder implements IntFunction<Split> {
 	@Override
 	public Split apply(final int feature) {
 		double curThr = -9999999;
-		final int[] ordered = context.orderedInstances[feature];
+		final int[] ordered = rows.ordered(feature);
+		final float[] column = context.columns == null ? null : context.columns[feature];
 
 		final SplitCriterion localCriterion = splitCriterion.forFeature(feature);
 
@@ -63,14 +64,12 @@ public final class ThresholdSplitFinder implements IntFunction<Split> {
 		int lastIndexNaN = -1;
 
 		final int max = samples - minObs;
-		final int bla = ordered.length;
+		final int begin = rows.begin();
+		final int end = rows.end();
 
-		for (int i = 0; i < bla; ++i) {
+		for (int i = begin; i < end; ++i) {
 			final int idx = ordered[i];
-			if (!subset[idx]) {
-				continue;
-			}
-			final double value = context.features[idx][feature];
+			final double value = column == null ? context.features[idx][feature] : column[idx];
 			if (value == VALUE_MISSING) {
 				statsNaN.add(context.expected[idx], context.weights[idx]);
 				lastIndexNaN = i;
@@ -82,22 +81,20 @@ public final class ThresholdSplitFinder implements IntFunction<Split> {
 		// there are too few observations of missing values, or too many such no
 		// further split can be made
 		// TODO: also allow missing vs non-missing splits
-		if (lastIndexNaN + 1 < minObs || lastIndexNaN + 1 > samples - minObs * 2) {
+		if (lastIndexNaN + 1 - begin < minObs || lastIndexNaN + 1 - begin > samples - minObs * 2) {
 			statsNaN = statisticsFactory.get();
 			lastIndexNaN = -1;
 			// if there are not enough observations of missing values, count
 			// them to the left subtree
 		}
 
+		final int firstIndex = lastIndexNaN == -1 ? begin : lastIndexNaN + 1;
 		int left = 0;
-		int seen = lastIndexNaN + 1;
+		int seen = firstIndex - begin;
 
-		for (int i = lastIndexNaN + 1; i < bla; ++i) {
+		for (int i = firstIndex; i < end; ++i) {
 			final int idx = ordered[i];
-			if (!subset[idx]) {
-				continue;
-			}
-			final double value = context.features[idx][feature];
+			final double value = column == null ? context.features[idx][feature] : column[idx];
 			if (left >= minObs && value != curThr) {
 				final double improvement = localCriterion.improvement(currentSplitL, statsNaN, feature, i - 1);
 				if (improvement > bestImprovement) {
@@ -125,12 +122,9 @@ public final class ThresholdSplitFinder implements IntFunction<Split> {
 
 	private IStats createStatsRight(final int[] ordered, final int bestLastIndexLeft) {
 		final StatsBuilder<?> statsR = statisticsFactory.get();
-		final int bla = ordered.length;
-		for (int i = bestLastIndexLeft + 1; i < bla; ++i) {
+		final int end = rows.end();
+		for (int i = bestLastIndexLeft + 1; i < end; ++i) {
 			final int idx = ordered[i];
-			if (!subset[idx]) {
-				continue;
-			}
 			statsR.add(context.expected[idx], context.weights[idx]);
 		}
 		return statsR.create();
@@ -0,0 +1,521 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.insightml.utils.Check;
+
+/**
+ * Generates hidden classes scoring {@link FlatTrees}: each tree becomes a method of nested branches on constant
+ * thresholds, so that scoring loads nothing but the row's features. Subtrees move into methods of their own before a
+ * method would get too large for the JIT, and trees spread over several classes before a constant pool overflows.
+ * The classes use version 50 class files, which the JVM verifies without stack map frames.
+ */
+final class TreeCodeGenerator {
+	private static final Logger LOG = LoggerFactory.getLogger(TreeCodeGenerator.class);
+
+	/** below the JIT's limit of 8000 bytes for methods it still compiles */
+	private static final int METHOD_LIMIT = 7000;
+	private static final int POOL_LIMIT = 60000;
+	private static final int TREES_PER_CLASS = 1000;
+
+	private static final String CLASS_NAME = TreeCodeGenerator.class.getPackageName().replace('.', '/')
+			+ "/GeneratedTrees";
+	private static final String TREE_DESCRIPTOR = "([F)D";
+
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_PRIVATE = 0x0002;
+	private static final int ACC_STATIC = 0x0008;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	private static final int ICONST_0 = 0x03;
+	private static final int ICONST_1 = 0x04;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC_W = 0x13;
+	private static final int LDC2_W = 0x14;
+	private static final int FLOAD_1 = 0x23;
+	private static final int ILOAD_2 = 0x1c;
+	private static final int DLOAD_2 = 0x28;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int FALOAD = 0x30;
+	private static final int ISTORE_2 = 0x3d;
+	private static final int FSTORE_1 = 0x44;
+	private static final int DADD = 0x63;
+	private static final int ISHR = 0x7a;
+	private static final int LUSHR = 0x7d;
+	private static final int IAND = 0x7e;
+	private static final int I2F = 0x86;
+	private static final int L2I = 0x88;
+	private static final int F2I = 0x8b;
+	private static final int FCMPL = 0x95;
+	private static final int IFEQ = 0x99;
+	private static final int IFNE = 0x9a;
+	private static final int IFLT = 0x9b;
+	private static final int IFLE = 0x9e;
+	private static final int IF_ICMPNE = 0xa0;
+	private static final int IF_ICMPGE = 0xa2;
+	private static final int GOTO = 0xa7;
+	private static final int DRETURN = 0xaf;
+	private static final int RETURN = 0xb1;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+
+	private final FlatTrees trees;
+	/** an upper bound for the size of each node's code, including its subtree */
+	private final long[] sizes;
+
+	private TreeCodeGenerator(final FlatTrees trees) {
+		this.trees = trees;
+		sizes = new long[trees.value.length];
+		// children are laid out after their parents
+		for (int n = sizes.length - 1; n >= 0; --n) {
+			if (trees.feature[n] < 0) {
+				sizes[n] = 4;
+			} else {
+				sizes[n] = (trees.categories[n] < 0 ? 30 : 50 + 16 * trees.categoryWords[n]) + size(trees.left[n])
+						+ size(trees.right[n]) + (trees.missing[n] == trees.left[n] ? 0 : size(trees.missing[n]));
+			}
+		}
+	}
+
+	private long size(final int child) {
+		return child < 0 ? 4 : sizes[child];
+	}
+
+	/**
+	 * @return a scorer equivalent to the given trees, or null if no code could be generated for them
+	 */
+	@Nullable
+	static TreeScorer generate(final FlatTrees trees) {
+		try {
+			final TreeCodeGenerator generator = new TreeCodeGenerator(trees);
+			final List<TreeScorer> scorers = new ArrayList<>();
+			for (int start = 0; start < trees.roots.length || scorers.isEmpty();) {
+				final GeneratedClass generated = generator.new GeneratedClass();
+				int end = start;
+				while (end < trees.roots.length && end - start < TREES_PER_CLASS
+						&& generated.pool.size() < POOL_LIMIT) {
+					generated.addTree(end++);
+				}
+				scorers.add(define(generated.toBytes()));
+				start = end;
+			}
+			if (scorers.size() == 1) {
+				return scorers.get(0);
+			}
+			final TreeScorer[] chain = scorers.toArray(new TreeScorer[0]);
+			return (features, initial) -> {
+				double sum = initial;
+				for (final TreeScorer scorer : chain) {
+					sum = scorer.predict(features, sum);
+				}
+				return sum;
+			};
+		} catch (final RuntimeException | ReflectiveOperationException | LinkageError e) {
+			LOG.warn("Falling back to flat trees: {}", e.toString());
+			return null;
+		}
+	}
+
+	private static TreeScorer define(final byte[] bytes) throws ReflectiveOperationException {
+		final Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+		try {
+			return (TreeScorer) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+					.invoke();
+		} catch (final ReflectiveOperationException | RuntimeException | Error e) {
+			throw e;
+		} catch (final Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * A class scoring a range of trees, with one static method per tree and its split off subtrees.
+	 */
+	private final class GeneratedClass {
+		final ConstantPool pool = new ConstantPool();
+		private final List<byte[]> methods = new ArrayList<>();
+		private final List<Integer> treeMethods = new ArrayList<>();
+		private final Deque<Integer> subtrees = new ArrayDeque<>();
+		private final Deque<String> subtreeNames = new ArrayDeque<>();
+		private int numSubtrees;
+
+		void addTree(final int tree) {
+			final String name = "t" + tree;
+			treeMethods.add(pool.methodref(CLASS_NAME, name, TREE_DESCRIPTOR));
+			method(name, trees.roots[tree]);
+			while (!subtrees.isEmpty()) {
+				method(subtreeNames.pop(), subtrees.pop());
+			}
+		}
+
+		private void method(final String name, final int root) {
+			final Code code = new Code();
+			node(code, root);
+			methods.add(methodInfo(ACC_PRIVATE | ACC_STATIC, name, TREE_DESCRIPTOR, code, 4, 3));
+		}
+
+		private void node(final Code code, final int n) {
+			if (trees.feature[n] < 0) {
+				ret(code, n);
+				return;
+			}
+			code.u1(ALOAD_0);
+			pushInt(code, trees.feature[n]);
+			code.u1(FALOAD);
+			code.u1(FSTORE_1);
+			final Label left = new Label();
+			final Label right = new Label();
+			final Label missing = trees.missing[n] == trees.left[n] ? left : new Label();
+			if (trees.categories[n] < 0) {
+				// missing values only need a check of their own if they do not go left anyway
+				if (missing != left) {
+					isMissing(code, missing);
+				}
+				code.u1(FLOAD_1);
+				code.u1(LDC_W);
+				code.u2(pool.floatConstant(trees.threshold[n]));
+				code.u1(FCMPL);
+				code.branch(IFLE, left);
+				child(code, trees.right[n], n);
+				code.bind(left);
+				child(code, trees.left[n], n);
+			} else {
+				categories(code, n, missing, right);
+				code.bind(left);
+				child(code, trees.left[n], n);
+				code.bind(right);
+				child(code, trees.right[n], n);
+			}
+			if (missing != left) {
+				code.bind(missing);
+				child(code, trees.missing[n], n);
+			}
+		}
+
+		private void isMissing(final Code code, final Label missing) {
+			code.u1(FLOAD_1);
+			code.u1(LDC_W);
+			code.u2(pool.floatConstant(FlatTrees.MISSING));
+			code.u1(FCMPL);
+			code.branch(IFEQ, missing);
+		}
+
+		/**
+		 * Branches to {@code right} unless the value is one of the categories going left, falls through otherwise.
+		 */
+		private void categories(final Code code, final int n, final Label missing, final Label right) {
+			isMissing(code, missing);
+			code.u1(FLOAD_1);
+			code.u1(F2I);
+			code.u1(ISTORE_2);
+			code.u1(ILOAD_2);
+			code.u1(I2F);
+			code.u1(FLOAD_1);
+			code.u1(FCMPL);
+			code.branch(IFNE, right);
+			code.u1(ILOAD_2);
+			code.branch(IFLT, right);
+			final int words = trees.categoryWords[n];
+			Check.state(words > 0);
+			code.u1(ILOAD_2);
+			pushInt(code, 6);
+			code.u1(ISHR);
+			pushInt(code, words);
+			code.branch(IF_ICMPGE, right);
+			final Label test = new Label();
+			for (int w = 0; w < words; ++w) {
+				final Label next = new Label();
+				if (w < words - 1) {
+					code.u1(ILOAD_2);
+					pushInt(code, 6);
+					code.u1(ISHR);
+					pushInt(code, w);
+					code.branch(IF_ICMPNE, next);
+				}
+				code.u1(LDC2_W);
+				code.u2(pool.longConstant(trees.categoryBits[trees.categories[n] + w]));
+				if (w < words - 1) {
+					code.branch(GOTO, test);
+					code.bind(next);
+				}
+			}
+			code.bind(test);
+			code.u1(ILOAD_2);
+			code.u1(LUSHR);
+			code.u1(L2I);
+			code.u1(ICONST_1);
+			code.u1(IAND);
+			code.branch(IFEQ, right);
+		}
+
+		private void child(final Code code, final int child, final int parent) {
+			if (child < 0) {
+				ret(code, parent);
+			} else if (code.size() + sizes[child] > METHOD_LIMIT) {
+				final String name = "s" + numSubtrees++;
+				code.u1(ALOAD_0);
+				code.u1(INVOKESTATIC);
+				code.u2(pool.methodref(CLASS_NAME, name, TREE_DESCRIPTOR));
+				code.u1(DRETURN);
+				subtrees.push(child);
+				subtreeNames.push(name);
+			} else {
+				node(code, child);
+			}
+		}
+
+		private void ret(final Code code, final int n) {
+			code.u1(LDC2_W);
+			code.u2(pool.doubleConstant(trees.value[n]));
+			code.u1(DRETURN);
+		}
+
+		byte[] toBytes() {
+			final Code init = new Code();
+			init.u1(ALOAD_0);
+			init.u1(INVOKESPECIAL);
+			init.u2(pool.methodref("java/lang/Object", "<init>", "()V"));
+			init.u1(RETURN);
+			methods.add(methodInfo(ACC_PUBLIC, "<init>", "()V", init, 1, 1));
+
+			final Code predict = new Code();
+			predict.u1(DLOAD_2);
+			for (final int tree : treeMethods) {
+				predict.u1(ALOAD_1);
+				predict.u1(INVOKESTATIC);
+				predict.u2(tree);
+				predict.u1(DADD);
+			}
+			predict.u1(DRETURN);
+			methods.add(methodInfo(ACC_PUBLIC, "predict", "([FD)D", predict, 4, 4));
+
+			final int thisClass = pool.classref(CLASS_NAME);
+			final int superClass = pool.classref("java/lang/Object");
+			final int scorer = pool.classref(TreeScorer.class.getName().replace('.', '/'));
+			Check.state(pool.size() < 65535);
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (DataOutputStream out = new DataOutputStream(bytes)) {
+				out.writeInt(0xCAFEBABE);
+				out.writeShort(0);
+				out.writeShort(50);
+				out.writeShort(pool.size());
+				pool.bytes.writeTo(out);
+				out.writeShort(ACC_FINAL | ACC_SUPER);
+				out.writeShort(thisClass);
+				out.writeShort(superClass);
+				out.writeShort(1);
+				out.writeShort(scorer);
+				out.writeShort(0);
+				out.writeShort(methods.size());
+				for (final byte[] method : methods) {
+					out.write(method);
+				}
+				out.writeShort(0);
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return bytes.toByteArray();
+		}
+
+		private byte[] methodInfo(final int access, final String name, final String descriptor, final Code code,
+				final int maxStack, final int maxLocals) {
+			Check.state(code.size() < 65536);
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (DataOutputStream out = new DataOutputStream(bytes)) {
+				out.writeShort(access);
+				out.writeShort(pool.utf8(name));
+				out.writeShort(pool.utf8(descriptor));
+				out.writeShort(1);
+				out.writeShort(pool.utf8("Code"));
+				out.writeInt(12 + code.size());
+				out.writeShort(maxStack);
+				out.writeShort(maxLocals);
+				out.writeInt(code.size());
+				out.write(code.bytes, 0, code.size());
+				out.writeShort(0);
+				out.writeShort(0);
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return bytes.toByteArray();
+		}
+
+		private void pushInt(final Code code, final int value) {
+			if (value >= -1 && value <= 5) {
+				code.u1(ICONST_0 + value);
+			} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				code.u1(BIPUSH);
+				code.u1(value);
+			} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				code.u1(SIPUSH);
+				code.u2(value);
+			} else {
+				code.u1(LDC_W);
+				code.u2(pool.intConstant(value));
+			}
+		}
+	}
+
+	/**
+	 * A method's bytecode, with forward branches patched once their target is bound.
+	 */
+	private static final class Code {
+		byte[] bytes = new byte[256];
+		private int size;
+
+		int size() {
+			return size;
+		}
+
+		void u1(final int value) {
+			if (size == bytes.length) {
+				bytes = Arrays.copyOf(bytes, size * 2);
+			}
+			bytes[size++] = (byte) value;
+		}
+
+		void u2(final int value) {
+			u1(value >> 8);
+			u1(value);
+		}
+
+		void branch(final int opcode, final Label label) {
+			final int instruction = size;
+			u1(opcode);
+			if (label.position >= 0) {
+				u2(label.position - instruction);
+			} else {
+				label.branches.add(instruction);
+				u2(0);
+			}
+		}
+
+		void bind(final Label label) {
+			label.position = size;
+			for (final int instruction : label.branches) {
+				final int offset = size - instruction;
+				Check.state(offset <= Short.MAX_VALUE);
+				bytes[instruction + 1] = (byte) (offset >> 8);
+				bytes[instruction + 2] = (byte) offset;
+			}
+		}
+	}
+
+	private static final class Label {
+		int position = -1;
+		final List<Integer> branches = new ArrayList<>(2);
+	}
+
+	/**
+	 * Deduplicates the constants of a class file.
+	 */
+	private static final class ConstantPool {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final Map<String, Integer> indexes = new HashMap<>();
+		private int size = 1;
+
+		int size() {
+			return size;
+		}
+
+		int utf8(final String value) {
+			return entry("U" + value, 1, 1, () -> out.writeUTF(value));
+		}
+
+		int intConstant(final int value) {
+			return entry("I" + value, 1, 3, () -> out.writeInt(value));
+		}
+
+		int floatConstant(final float value) {
+			return entry("F" + Float.floatToRawIntBits(value), 1, 4,
+					() -> out.writeInt(Float.floatToRawIntBits(value)));
+		}
+
+		int longConstant(final long value) {
+			return entry("J" + value, 2, 5, () -> out.writeLong(value));
+		}
+
+		int doubleConstant(final double value) {
+			return entry("D" + Double.doubleToRawLongBits(value), 2, 6,
+					() -> out.writeLong(Double.doubleToRawLongBits(value)));
+		}
+
+		int classref(final String name) {
+			final int utf8 = utf8(name);
+			return entry("C" + name, 1, 7, () -> out.writeShort(utf8));
+		}
+
+		int methodref(final String owner, final String name, final String descriptor) {
+			final int owning = classref(owner);
+			final int nameIndex = utf8(name);
+			final int descriptorIndex = utf8(descriptor);
+			final int nameAndType = entry("N" + name + descriptor, 1, 12, () -> {
+				out.writeShort(nameIndex);
+				out.writeShort(descriptorIndex);
+			});
+			return entry("M" + owner + '.' + name + descriptor, 1, 10, () -> {
+				out.writeShort(owning);
+				out.writeShort(nameAndType);
+			});
+		}
+
+		private int entry(final String key, final int slots, final int tag, final Writer writer) {
+			final Integer existing = indexes.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			try {
+				out.writeByte(tag);
+				writer.write();
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			final int index = size;
+			indexes.put(key, index);
+			size += slots;
+			return index;
+		}
+
+		private interface Writer {
+			void write() throws IOException;
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A tree together with the leaf each of its training rows ended up in, so that learners refining their predictions
+ * on the training rows, e.g. boosting, do not need to run these rows through the tree again.
+ */
+public final class TreeFit {
+
+	private final TreeModel model;
+	private final int[] leafIndexes;
+	private final double[] leafValues;
+
+	TreeFit(final TreeModel model, final TreeNode[] leaves) {
+		this.model = model;
+		leafIndexes = new int[leaves.length];
+		final Map<TreeNode, Integer> indexes = new IdentityHashMap<>();
+		TreeNode last = null;
+		int lastIndex = -1;
+		for (int i = 0; i < leaves.length; ++i) {
+			final TreeNode leaf = leaves[i];
+			if (leaf != last) {
+				lastIndex = leaf == null ? -1 : indexes.computeIfAbsent(leaf, node -> indexes.size());
+				last = leaf;
+			}
+			leafIndexes[i] = lastIndex;
+		}
+		leafValues = new double[indexes.size()];
+		for (final Map.Entry<TreeNode, Integer> leaf : indexes.entrySet()) {
+			leafValues[leaf.getValue()] = leaf.getKey().mean;
+		}
+	}
+
+	public TreeModel getModel() {
+		return model;
+	}
+
+	/**
+	 * @return for each training row the index of its leaf in {@link #getLeafValues()}, or -1 for rows the tree has
+	 *         not been grown from, i.e. those with a zero weight
+	 */
+	public int[] getLeafIndexes() {
+		return leafIndexes;
+	}
+
+	/**
+	 * @return the prediction of each leaf a training row ended up in
+	 */
+	public double[] getLeafValues() {
+		return leafValues;
+	}
+}
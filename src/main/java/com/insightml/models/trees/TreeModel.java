@@ -55,6 +55,17 @@ public final class TreeModel extends AbstractIndependentFeaturesModel implements
 		}
 	}
 
+	@Override
+	protected void predict(final float[][] features, final double[] predictions) {
+		// Compiled per batch rather than kept: trees of an ensemble are scored through the ensemble's own arrays
+		final FlatTrees trees = FlatTrees.compile(new TreeNode[] { root }, new double[] { 1 });
+		if (trees == null) {
+			super.predict(features, predictions);
+		} else {
+			trees.predict(features, predictions, 0, predictions.length);
+		}
+	}
+
 	@Override
 	public DistributionPrediction[] predictDistribution(final ISamples<? extends Sample, ?> instances,
 			final boolean debug) {
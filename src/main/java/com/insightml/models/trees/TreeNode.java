@@ -40,7 +40,7 @@ import com.insightml.utils.ui.UiUtils;
 public final class TreeNode extends AbstractClass implements Serializable {
 	private static final long serialVersionUID = -4612424838699629485L;
 
-	Split rule;
+	AbstractSplit rule;
 	TreeNode[] children;
 
 	double mean;
@@ -93,7 +93,7 @@ public final class TreeNode extends AbstractClass implements Serializable {
 		return mean;
 	}
 
-	public Split getRule() {
+	public AbstractSplit getRule() {
 		return rule;
 	}
 
@@ -129,7 +129,7 @@ public final class TreeNode extends AbstractClass implements Serializable {
 		final List<TreeDecisionDebug> appliedRules = new ArrayList<>();
 		final Map<String, Double> impactByFeature = new HashMap<>();
 		for (TreeNode node = this;;) {
-			final Split nodeRule = node.rule;
+			final AbstractSplit nodeRule = node.rule;
 			if (nodeRule == null) {
 				return new DistributionPrediction(node.stats, new TreePredictionInfo(appliedRules, impactByFeature));
 			}
@@ -142,53 +142,18 @@ public final class TreeNode extends AbstractClass implements Serializable {
 		}
 	}
 
-	boolean[][] split(final Split split, final TreeNode[] childrenn, final int[][] orderedIndexes,
-			final boolean[] subset) {
+	void split(final AbstractSplit split, final TreeNode[] childrenn) {
 		rule = Preconditions.checkNotNull(split);
 		children = childrenn;
-
-		return calculateSplit(split, orderedIndexes, subset);
-	}
-
-	public static boolean[][] calculateSplit(final Split split, final int[][] orderedIndexes, final boolean[] subset) {
-		final int[] ordered = orderedIndexes[split.getFeature()];
-		final int indexNaN = split.getLastIndexNaN();
-		final int index = split.getLastIndexLeft();
-		return calculateSplit(ordered, subset, indexNaN, index);
-	}
-
-	public static boolean[][] calculateSplit(final int[] ordered, final boolean[] subset, final int indexNaN,
-			final int index) {
-		final boolean[][] splits = new boolean[3][subset.length];
-		for (int i = 0; i < ordered.length; ++i) {
-			final int idx = ordered[i];
-			if (subset[idx]) {
-				if (i <= indexNaN) {
-					splits[2][idx] = true;
-				} else if (i <= index) {
-					splits[0][idx] = true;
-				} else {
-					splits[1][idx] = true;
-				}
-			}
-		}
-		return splits;
 	}
 
 	private void collectSegments(final List<String> parentSegment, final List<Pair<List<String>, IStats>> segments) {
 		if (rule != null) {
 			final String fName = rule.getFeatureName();
-			final String threshold = UiUtils.format(rule.getFeatureValueThreshold());
-			final List<String> segmentLeft = new ArrayList<>(parentSegment);
-			segmentLeft.add(fName + " \u2264 " + threshold);
-			children[0].collectSegments(segmentLeft, segments);
-			final List<String> segmentRight = new ArrayList<>(parentSegment);
-			segmentRight.add(fName + " > " + threshold);
-			children[1].collectSegments(segmentRight, segments);
-			if (children.length > 2) {
-				final List<String> segmentNaN = new ArrayList<>(parentSegment);
-				segmentNaN.add(fName + " missing");
-				children[2].collectSegments(segmentNaN, segments);
+			for (int i = 0; i < children.length; ++i) {
+				final List<String> segment = new ArrayList<>(parentSegment);
+				segment.add(fName + rule.presentChild(i));
+				children[i].collectSegments(segment, segments);
 			}
 		} else {
 			segments.add(new Pair<>(parentSegment, stats));
@@ -225,6 +190,9 @@ public final class TreeNode extends AbstractClass implements Serializable {
 		if (child == 2) {
 			return fName + " missing";
 		}
+		if (rule instanceof CategoricalSplit) {
+			return fName + (child == 0 ? " in " : " not in ") + "X";
+		}
 		final String threshold = "X";
 		return fName + (child == 0 ? " \u2264 " : " > ") + threshold;
 	}
@@ -267,7 +235,7 @@ public final class TreeNode extends AbstractClass implements Serializable {
 	public record TreePredictionInfo(List<TreeDecisionDebug> appliedRules, Map<String, Double> impactByFeature) {
 	}
 
-	public record TreeDecisionDebug(Split nodeRule, TreeNode child, float[] features) {
+	public record TreeDecisionDebug(AbstractSplit nodeRule, TreeNode child, float[] features) {
 
 		@Override
 		public String toString() {
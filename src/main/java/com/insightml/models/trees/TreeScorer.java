@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+/**
+ * Sums up the values of an ensemble of trees for one row.
+ */
+public interface TreeScorer {
+
+	/**
+	 * @param initial
+	 *            the value to add the trees' values to, in the order of the trees
+	 */
+	double predict(float[] features, double initial);
+
+	/**
+	 * Adds the trees' values to the given sums, in the order of the trees.
+	 */
+	default void predict(final float[][] features, final double[] sums, final int from, final int to) {
+		for (int i = from; i < to; ++i) {
+			sums[i] = predict(features[i], sums[i]);
+		}
+	}
+
+}
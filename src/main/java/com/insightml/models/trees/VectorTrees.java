@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.annotation.Nullable;
+
+import com.insightml.utils.Check;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Walks {@link FlatTrees} for as many rows at once as fit into the CPU's vectors, gathering each lane's feature value,
+ * threshold and children. The children of each split are laid out next to each other, so that the child to go to is
+ * found by adding 0 for left, 1 for right or 2 for missing values to the position of the first child. Leaves are their
+ * own first child and never go anywhere else, so that each tree takes a fixed number of steps without any branching
+ * on the rows. Trees with categorical splits are walked one row at a time.
+ * <p>
+ * Requires the incubating {@code jdk.incubator.vector} module, so this class must only be loaded after checking that
+ * the module is present.
+ */
+final class VectorTrees {
+	/** at most 256 bits, as gathering into 512 bit vectors crashed compiled code on Java 17 */
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED.vectorBitSize() > 256
+			? FloatVector.SPECIES_256
+			: FloatVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, FLOATS.vectorShape());
+	/** the offsets of the children, as the bits of floats to select them on comparing floats */
+	private static final float RIGHT = Float.intBitsToFloat(1);
+	private static final float MISSING = Float.intBitsToFloat(2);
+
+	private final FlatTrees trees;
+	/** each tree's root, or -1 for trees walked one row at a time */
+	private final int[] roots;
+	/** the steps needed to reach any of a tree's leaves */
+	private final int[] depths;
+	/** the split feature, its complement for splits with a missing child of their own */
+	private final int[] feature;
+	private final float[] threshold;
+	private final int[] children;
+	private final double[] value;
+	private int numNodes;
+
+	private VectorTrees(final FlatTrees trees) {
+		this.trees = trees;
+		final int nodes = trees.feature.length;
+		roots = new int[trees.roots.length];
+		depths = new int[roots.length];
+		// up to three children per split, including leaves predicting the split's own value for missing children
+		feature = new int[nodes * 3 + roots.length];
+		threshold = new float[feature.length];
+		children = new int[feature.length];
+		value = new double[feature.length];
+		final int[] depth = new int[nodes];
+		final Deque<int[]> queue = new ArrayDeque<>();
+		for (int t = 0; t < roots.length; ++t) {
+			final int start = trees.roots[t];
+			final int end = t + 1 < roots.length ? trees.roots[t + 1] : nodes;
+			boolean categorical = false;
+			// children are laid out after their parents
+			for (int n = end - 1; n >= start; --n) {
+				categorical |= trees.categories[n] >= 0;
+				depth[n] = trees.feature[n] < 0 ? 0
+						: 1 + Math.max(depth(trees.left[n], depth),
+								Math.max(depth(trees.right[n], depth), depth(trees.missing[n], depth)));
+			}
+			if (categorical) {
+				roots[t] = -1;
+				continue;
+			}
+			roots[t] = numNodes++;
+			depths[t] = depth[start];
+			queue.add(new int[] { roots[t], start });
+			while (!queue.isEmpty()) {
+				final int[] next = queue.poll();
+				set(next[0], next[1], queue);
+			}
+		}
+	}
+
+	private static int depth(final int child, final int[] depth) {
+		return child < 0 ? 0 : depth[child];
+	}
+
+	/**
+	 * @param node
+	 *            the node in the flat trees, or the complement of the parent for children that are not there
+	 */
+	private void set(final int position, final int node, final Deque<int[]> queue) {
+		final int n = node < 0 ? ~node : node;
+		value[position] = trees.value[n];
+		if (node < 0 || trees.feature[n] < 0) {
+			threshold[position] = Float.NaN;
+			children[position] = position;
+			return;
+		}
+		final boolean hasMissing = trees.missing[n] != trees.left[n];
+		feature[position] = hasMissing ? ~trees.feature[n] : trees.feature[n];
+		threshold[position] = trees.threshold[n];
+		children[position] = numNodes;
+		queue.add(new int[] { numNodes++, child(trees.left[n], n) });
+		queue.add(new int[] { numNodes++, child(trees.right[n], n) });
+		if (hasMissing) {
+			queue.add(new int[] { numNodes++, child(trees.missing[n], n) });
+		}
+	}
+
+	private static int child(final int child, final int parent) {
+		return child < 0 ? ~parent : child;
+	}
+
+	/**
+	 * @return null if the CPU has no 256 bit vectors, as gathering from smaller ones is not compiled to SIMD
+	 */
+	@Nullable
+	static VectorTrees of(final FlatTrees trees) {
+		return FLOATS.vectorBitSize() < 256 ? null : new VectorTrees(trees);
+	}
+
+	/**
+	 * Adds the trees' values to the given sums, in the order of the trees.
+	 */
+	void predict(final float[][] features, final double[] sums, final int from, final int to) {
+		final int lanes = FLOATS.length();
+		final int numFeatures = features[from].length;
+		// the rows' features side by side, as gathering needs a single array
+		final float[] block = new float[lanes * numFeatures];
+		final int[] offsets = new int[lanes];
+		for (int lane = 0; lane < lanes; ++lane) {
+			offsets[lane] = lane * numFeatures;
+		}
+		final IntVector rowOffsets = IntVector.fromArray(INTS, offsets, 0);
+		final int[] nodes = new int[lanes];
+		final int[] indexes = new int[lanes];
+		for (int start = from; start < to; start += lanes) {
+			final int end = Math.min(start + lanes, to);
+			for (int i = start; i < end; ++i) {
+				Check.state(features[i].length == numFeatures);
+				System.arraycopy(features[i], 0, block, offsets[i - start], numFeatures);
+			}
+			// lanes beyond the last row keep walking the previous rows, their results are not used
+			for (int t = 0; t < roots.length; ++t) {
+				if (roots[t] < 0) {
+					for (int i = start; i < end; ++i) {
+						sums[i] += trees.predictTree(trees.roots[t], features[i]);
+					}
+					continue;
+				}
+				IntVector node = IntVector.broadcast(INTS, roots[t]);
+				for (int d = 0; d < depths[t]; ++d) {
+					node.intoArray(nodes, 0);
+					final IntVector f = IntVector.fromArray(INTS, feature, 0, nodes, 0);
+					// all bits for splits with a missing child of their own, nothing otherwise
+					final IntVector hasMissing = f.lanewise(VectorOperators.ASHR, 31);
+					f.lanewise(VectorOperators.XOR, hasMissing).add(rowOffsets).intoArray(indexes, 0);
+					final FloatVector v = FloatVector.fromArray(FLOATS, block, 0, indexes, 0);
+					final FloatVector thresholds = FloatVector.fromArray(FLOATS, threshold, 0, nodes, 0);
+					final IntVector offset = FloatVector.zero(FLOATS)
+							.blend(RIGHT, v.compare(VectorOperators.GT, thresholds))
+							.blend(MISSING, v.compare(VectorOperators.EQ, FlatTrees.MISSING)).reinterpretAsInts();
+					node = IntVector.fromArray(INTS, children, 0, nodes, 0).add(offset.and(hasMissing.or(1)));
+				}
+				node.intoArray(nodes, 0);
+				for (int i = start; i < end; ++i) {
+					sums[i] += value[nodes[i - start]];
+				}
+			}
+		}
+	}
+
+}
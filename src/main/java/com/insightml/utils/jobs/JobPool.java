@@ -44,6 +44,18 @@ public final class JobPool {
 		return pool;
 	}
 
+	/**
+	 * Runs the task within the pool of the calling thread if it already is a fork/join worker, e.g. when called from a
+	 * job started through this class, and in the shared pool otherwise. Nested parallel jobs thereby share one set of
+	 * threads instead of each adding their own.
+	 */
+	public static <T> T invoke(final ForkJoinTask<T> task) {
+		if (ForkJoinTask.inForkJoinPool()) {
+			return task.invoke();
+		}
+		return getPool().invoke(task);
+	}
+
 	public static ForkJoinTask<?> submit(final Runnable runnable) {
 		return getPool().submit(runnable);
 	}
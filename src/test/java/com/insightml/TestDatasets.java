@@ -18,13 +18,18 @@ package com.insightml;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 
 import com.insightml.data.IDataset;
 import com.insightml.data.SimpleDataset;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.data.samples.Samples;
 import com.insightml.data.samples.SimpleSample;
+import com.insightml.data.samples.decorators.FeaturesDecorator;
 import com.insightml.data.utils.AnonymousSamplesReader;
 import com.insightml.evaluation.functions.ObjectiveFunction;
 import com.insightml.evaluation.functions.ObjectiveFunctions;
@@ -109,6 +114,36 @@ public final class TestDatasets {
 		return SimpleDataset.create(list);
 	}
 
+	public static ISamples<Sample, Double> samples(final float[][] features, final double[] labels,
+			final String[] names) {
+		return samples(features, labels, names, null);
+	}
+
+	public static ISamples<Sample, Double> samples(final float[][] features, final double[] labels,
+			final String[] names, final boolean[] categoricalFeatures) {
+		final Double[][] expected = new Double[labels.length][];
+		for (int i = 0; i < labels.length; ++i) {
+			expected[i] = new Double[] { labels[i] };
+		}
+		return samples(features, expected, names, categoricalFeatures);
+	}
+
+	/**
+	 * @param labels
+	 *            each row's labels by label index
+	 * @param categoricalFeatures
+	 *            or null if all features are numeric
+	 * @return the rows as samples with their indexes as ids
+	 */
+	public static ISamples<Sample, Double> samples(final float[][] features, final Double[][] labels,
+			final String[] names, final boolean[] categoricalFeatures) {
+		final List<Sample> samples = new ArrayList<>(features.length);
+		for (int i = 0; i < features.length; ++i) {
+			samples.add(new SimpleSample(i, labels[i], features[i], names));
+		}
+		return new FeaturesDecorator<>(new Samples<>(samples), features, names, categoricalFeatures);
+	}
+
 	private static SimpleSample createInstance(final Object[] label, final float offset, final Random random) {
 		return createInstance(label,
 				offset + 7 + random.nextFloat(),
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.insightml.data.AnonymousFeaturesConfig.SimpleFeatureProvider;
+import com.insightml.data.features.FeaturesConsumer;
+import com.insightml.data.features.SimpleFeaturesProvider;
+import com.insightml.data.features.selection.IgnoreFeatureFilter;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.data.samples.SimpleSample;
+import com.insightml.data.samples.SparseFeatures;
+import com.insightml.data.samples.decorators.ColumnarFeaturesDecorator;
+import com.insightml.models.trees.RegTree;
+import com.insightml.models.trees.TreeModel;
+import com.insightml.utils.Arguments;
+
+public final class PreprocessingPipelineTest {
+
+	private static final int FEATURES = 6000;
+
+	@Test
+	public void testWideSparseFeatures() {
+		final PreprocessingPipeline<SimpleSample> pipeline = pipeline(FEATURES, new Arguments("sparseFeatures", true));
+
+		final Random random = new Random(1);
+		final ISamples<Sample, Double> train = (ISamples) pipeline.run(samples(random, 400), true);
+		final SparseFeatures sparse = train.sparseFeatures();
+		assertNotNull(sparse);
+		for (int i = 0; i < train.size(); ++i) {
+			assertEquals(train.expected(0)[i], sparse.value(i, 1), 0);
+			assertEquals(2, sparse.row(i).length - countDefaults(sparse.row(i)));
+		}
+		final TreeModel model = new RegTree(2, 5, false).run(train, 0);
+
+		final List<SimpleSample> test = samples(random, 100);
+		final ISamples<Sample, Double> scored = (ISamples) pipeline.run(test, false);
+		assertEquals(FEATURES, scored.numFeatures());
+		final Double[] preds = model.apply(scored);
+		for (int i = 0; i < preds.length; ++i) {
+			assertEquals(test.get(i).getExpected(0), preds[i]);
+		}
+	}
+
+	@Test
+	public void testColumnarFeatures() {
+		final Random random = new Random(1);
+		final List<SimpleSample> samples = samples(random, 200);
+		final ISamples<SimpleSample, Double> dense = pipeline(50, null).run(samples, true);
+		for (final Arguments arguments : new Arguments[] { new Arguments("columnarFeatures", true),
+				new Arguments("columnarFeatures", true, "bundleFeatures", true) }) {
+			final PreprocessingPipeline<SimpleSample> pipeline = pipeline(50, arguments);
+			final ISamples<SimpleSample, Double> columnar = pipeline.run(samples, true);
+			assertTrue(columnar instanceof ColumnarFeaturesDecorator);
+			final ISamples<SimpleSample, Double> scored = pipeline.run(samples, false);
+			for (int i = 0; i < samples.size(); ++i) {
+				assertArrayEquals(scored.features()[i], columnar.features()[i], 0);
+			}
+		}
+		final ISamples<SimpleSample, Double> columnar = pipeline(50, new Arguments("columnarFeatures", true))
+				.run(samples, true);
+		for (int f = 0; f < 10; ++f) {
+			assertArrayEquals(dense.featureColumn(f), columnar.featureColumns()[f], 0);
+		}
+	}
+
+	/**
+	 * @return a pipeline taking the features "f0", "f1", ... from the samples themselves, 0 for those not provided
+	 */
+	private static PreprocessingPipeline<SimpleSample> pipeline(final int features, final Arguments arguments) {
+		final String[] names = new String[features];
+		for (int f = 0; f < names.length; ++f) {
+			names[f] = "f" + f;
+		}
+		final SimpleFeaturesProvider<SimpleSample> provider = new SimpleFeaturesProvider<>() {
+			@Override
+			public String getName() {
+				return "samples";
+			}
+
+			@Override
+			public void apply(final SimpleSample sample, final FeaturesConsumer consumer) {
+				sample.loadFeatures(consumer);
+			}
+		};
+		return PreprocessingPipeline.create(new SimpleFeatureProvider<>(names, provider, 0), new IgnoreFeatureFilter(),
+				null, arguments);
+	}
+
+	private static int countDefaults(final float[] row) {
+		int defaults = 0;
+		for (final float value : row) {
+			defaults += value == 0 ? 1 : 0;
+		}
+		return defaults;
+	}
+
+	/**
+	 * @return samples providing two of the features each, labeled by whether they provide "f1" rather than "f2"
+	 */
+	private static List<SimpleSample> samples(final Random random, final int size) {
+		final List<SimpleSample> samples = new ArrayList<>();
+		for (int i = 0; i < size; ++i) {
+			final boolean positive = random.nextBoolean();
+			final String[] names = { "f" + (3 + random.nextInt(FEATURES - 3)), positive ? "f1" : "f2" };
+			final float[] values = { 1, 1 };
+			samples.add(new SimpleSample(i, new Double[] { positive ? 1.0 : 0.0 }, values, names));
+		}
+		return samples;
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.data.features;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Samples;
+import com.insightml.data.samples.SimpleSample;
+import com.insightml.data.samples.SparseFeatures;
+import com.insightml.data.samples.decorators.FeaturesDecorator;
+import com.insightml.data.samples.decorators.SparseFeaturesDecorator;
+
+public final class FeatureBundlesTest {
+
+	private static final String[] NAMES = { "a", "b", "dense" };
+
+	@Test
+	public void testBundle() {
+		final float[][] rows = { { 1, 0, 5 }, { 0, 2, 6 }, { 3, 0, 7 }, { 0, 0, 8 }, { 0, 4, 9 }, { 0, 0, 1 } };
+		final List<SimpleSample> list = new ArrayList<>();
+		for (int i = 0; i < rows.length; ++i) {
+			list.add(new SimpleSample(i, new Double[] { (double) i }, rows[i], NAMES));
+		}
+		final Samples<SimpleSample, Double> samples = new Samples<>(list);
+		final ISamples<SimpleSample, Double> dense = new FeaturesDecorator<>(samples, rows, NAMES);
+
+		final FeatureBundles bundles = FeatureBundles.fit(dense, 0, 255);
+		assertArrayEquals(new String[] { "dense", "bundle0[2]" }, bundles.featureNames());
+		assertNull(bundles.bundle(0));
+		assertArrayEquals(new String[] { "a", "b" }, bundles.bundle(1));
+
+		final ISamples<SimpleSample, Double> bundled = bundles.apply(dense);
+		final float[][] expected = { { 5, 1 }, { 6, 3 }, { 7, 2 }, { 8, 0 }, { 9, 4 }, { 1, 0 } };
+		for (int i = 0; i < rows.length; ++i) {
+			assertArrayEquals(expected[i], bundled.features()[i], 0);
+		}
+
+		final SparseFeatures sparse = SparseFeatures.of(rows, new float[3]);
+		final ISamples<SimpleSample, Double> sparseBundled = bundles
+				.apply(new SparseFeaturesDecorator<>(samples, sparse, NAMES, null));
+		assertEquals(10, sparseBundled.sparseFeatures().nonDefaults());
+		for (int i = 0; i < rows.length; ++i) {
+			assertArrayEquals(expected[i], sparseBundled.sparseFeatures().row(i), 0);
+		}
+	}
+
+	@Test
+	public void testConflicts() {
+		final float[][] rows = { { 1, 2 }, { 0, 2 }, { 3, 0 }, { 0, 0 } };
+		final List<SimpleSample> list = new ArrayList<>();
+		for (int i = 0; i < rows.length; ++i) {
+			list.add(new SimpleSample(i, new Double[] { (double) i }, rows[i], new String[] { "a", "b" }));
+		}
+		final ISamples<SimpleSample, Double> dense = new FeaturesDecorator<>(new Samples<>(list), rows,
+				new String[] { "a", "b" });
+		assertEquals(2, FeatureBundles.fit(dense, 0, 255).featureNames().length);
+		final FeatureBundles bundles = FeatureBundles.fit(dense, 0.25, 255);
+		assertEquals(1, bundles.featureNames().length);
+
+		// the conflicting first row keeps the value of "b" in both layouts
+		final ISamples<SimpleSample, Double> sparseBundled = bundles.apply(new SparseFeaturesDecorator<>(
+				new Samples<>(list), SparseFeatures.of(rows, new float[2]), new String[] { "a", "b" }, null));
+		for (int i = 0; i < rows.length; ++i) {
+			assertArrayEquals(bundles.apply(rows[i]), sparseBundled.sparseFeatures().row(i), 0);
+		}
+	}
+}
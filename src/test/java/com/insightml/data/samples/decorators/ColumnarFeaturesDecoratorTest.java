@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.data.samples.decorators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.insightml.data.samples.Samples;
+import com.insightml.data.samples.SimpleSample;
+
+public final class ColumnarFeaturesDecoratorTest {
+
+	@Test
+	public void testColumns() {
+		final SimpleSample s1 = new SimpleSample(1, new Double[]{ 1.0 }, new float[]{ 0.1f, 0.5f },
+				new String[]{ "f1", "f2" });
+		final SimpleSample s2 = new SimpleSample(2, new Double[]{ 2.0 }, new float[]{ 0.3f, 0.4f },
+				new String[]{ "f1", "f2" });
+		final SimpleSample s3 = new SimpleSample(3, new Double[]{ 3.0 }, new float[]{ 0.2f, 0.6f },
+				new String[]{ "f1", "f2" });
+		final Samples<SimpleSample, Double> samples = new Samples<>(Arrays.asList(s1, s2, s3));
+		final FeaturesDecorator<SimpleSample, Double> rows = new FeaturesDecorator<>(samples,
+				new float[][]{ { 0.1f, 0.5f }, { 0.3f, 0.4f }, { 0.2f, 0.6f } },
+				new String[]{ "f1", "f2" });
+
+		final ColumnarFeaturesDecorator<SimpleSample, Double> columnar = ColumnarFeaturesDecorator.of(rows);
+		assertEquals(3, columnar.size());
+		assertArrayEquals(new Double[]{ 1.0, 2.0, 3.0 }, columnar.expected(0));
+		assertArrayEquals(new float[]{ 0.1f, 0.3f, 0.2f }, columnar.featureColumns()[0], 0);
+		assertArrayEquals(new float[]{ 0.5f, 0.4f, 0.6f }, columnar.featureColumn(1), 0);
+
+		final float[][] features = columnar.features();
+		for (int i = 0; i < features.length; ++i) {
+			assertArrayEquals(rows.features()[i], features[i], 0);
+		}
+		assertArrayEquals(rows.orderedIndexes()[0], columnar.orderedIndexes()[0]);
+		assertArrayEquals(rows.orderedIndexes()[1], columnar.orderedIndexes()[1]);
+
+		final SamplesMapping<SimpleSample, Double> mapping = new SamplesMapping<>(columnar, new int[]{ 2, 0 });
+		assertArrayEquals(new float[]{ 0.2f, 0.1f }, mapping.featureColumns()[0], 0);
+		assertArrayEquals(new float[]{ 0.6f, 0.5f }, mapping.featureColumn(1), 0);
+		assertSame(mapping.featureColumns(), mapping.featureColumns());
+	}
+}
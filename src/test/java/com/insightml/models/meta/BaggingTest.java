@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.meta;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.insightml.TestDatasets;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.evaluation.functions.MSE;
+import com.insightml.models.meta.Bagging.BagResult;
+import com.insightml.models.meta.VoteModel.VoteStrategy;
+import com.insightml.utils.Arguments;
+
+public final class BaggingTest {
+
+	@Test
+	public void testConcurrentBags() {
+		final ISamples<Sample, Double> train = samples(new Random(1), 300);
+		final Double[] sequential = new RandomForest(new Arguments("bags", 20, "depth", 5, Bagging.THREADS, 1))
+				.run(train, 0).apply(train);
+		final Double[] concurrent = new RandomForest(new Arguments("bags", 20, "depth", 5, Bagging.THREADS, 4))
+				.run(train, 0).apply(train);
+		assertArrayEquals(sequential, concurrent);
+	}
+
+	@Test
+	public void testOutOfBag() {
+		final Random random = new Random(1);
+		final ISamples<Sample, Double> train = samples(random, 500);
+		final ISamples<Sample, Double> test = samples(random, 2000);
+		final VoteModel<Sample> model = (VoteModel<Sample>) new RandomForest(
+				new Arguments("bags", 50, "isample", 0.6, "depth", 5)).run(train, 0);
+		final OutOfBag<Sample> outOfBag = model.getOutOfBag();
+		assertEquals(train.size(), outOfBag.getCovered().length);
+
+		final MSE mse = new MSE();
+		final double testError = mse.label(model.apply(test), test.expected(0), test.weights(0), null, 0).getMean();
+		final double trainError = mse.label(model.apply(train), train.expected(0), train.weights(0), null, 0)
+				.getMean();
+		final double outOfBagError = outOfBag.score(mse);
+		assertTrue(outOfBagError + " vs. " + trainError, outOfBagError > trainError);
+		assertEquals(testError, outOfBagError, 0.1 * testError);
+
+		final Map<String, Double> importance = outOfBag.permutationImportance(mse, new Random(1));
+		assertTrue(importance + "", importance.get("a") > 10 * Math.abs(importance.get("b")));
+	}
+
+	@Test
+	public void testOutOfBagWithSampledFeatures() {
+		final Random random = new Random(1);
+		final ISamples<Sample, Double> train = samples(random, 500, "a", "b", "c", "d");
+		final Bagging<Sample> bagging = new Bagging<>(new Arguments("bags", 4, "isample", 0.7, Bagging.FSAMPLE, 0.7),
+				new GBRT(new Arguments("it", 20, "shrink", 0.1, "depth", 3)));
+		final VoteModel<Sample> model = (VoteModel<Sample>) bagging.run(train, 0);
+		final OutOfBag<Sample> outOfBag = model.getOutOfBag();
+		assertTrue(outOfBag.getCovered().length > train.size() / 2);
+		// the labels' variance is 2, which the first feature halves
+		final double error = outOfBag.score(new MSE());
+		assertTrue(error + "", error < 1.6);
+
+		final Map<String, Double> importance = outOfBag.permutationImportance(new MSE(), new Random(1));
+		assertTrue(importance + "", importance.get("a") > 10 * Math.abs(importance.get("b")));
+	}
+
+	@Test
+	public void testOutOfBagVotes() {
+		final ISamples<Sample, Double> samples = samples(new Random(1), 3);
+		final List<BagResult<Sample>> bags = List.of(
+				new BagResult<>(0, null, 1, new int[] { 0, 1 }, new double[] { 1, 2 }),
+				new BagResult<>(1, null, 3, new int[] { 1 }, new double[] { 4 }));
+		// the bags' predictions are weighted just as in the vote model
+		final OutOfBag<Sample> outOfBag = new OutOfBag<>(bags, samples, 0, VoteStrategy.AVERAGE);
+		assertArrayEquals(new int[] { 0, 1 }, outOfBag.getCovered());
+		assertArrayEquals(new Double[] { 1.0, 3.5 }, outOfBag.getPredictions());
+	}
+
+	private static ISamples<Sample, Double> samples(final Random random, final int size) {
+		return samples(random, size, "a", "b");
+	}
+
+	/**
+	 * @return samples labeled by their first feature plus noise, with uniform noise for all other features
+	 */
+	private static ISamples<Sample, Double> samples(final Random random, final int size, final String... names) {
+		final float[][] features = new float[size][];
+		final double[] labels = new double[size];
+		for (int i = 0; i < features.length; ++i) {
+			features[i] = new float[names.length];
+			features[i][0] = (float) random.nextGaussian();
+			for (int f = 1; f < names.length; ++f) {
+				features[i][f] = random.nextFloat();
+			}
+			labels[i] = features[i][0] + random.nextGaussian();
+		}
+		return TestDatasets.samples(features, labels, names);
+	}
+}
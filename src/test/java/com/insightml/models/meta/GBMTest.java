@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.meta;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.insightml.TestDatasets;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.data.samples.decorators.LabelDecorator;
+import com.insightml.evaluation.functions.DifferentiableObjectiveFunction;
+import com.insightml.evaluation.functions.LogLoss;
+import com.insightml.evaluation.functions.MeanAbsoluteError;
+import com.insightml.evaluation.functions.ObjectiveFunction;
+import com.insightml.models.trees.RegTree;
+import com.insightml.models.trees.TreeFit;
+import com.insightml.utils.Arguments;
+import com.insightml.utils.Arrays;
+
+public final class GBMTest {
+
+	@Test
+	public void testEarlyStopping() {
+		final Random random = new Random(1);
+		final ISamples<Sample, Double> train = samples(random, 400);
+		final ISamples<Sample, Double> valid = samples(random, 400);
+
+		final BoostingModel full = new GBRT(new Arguments("it", 300, "shrink", 0.2, "depth", 4)).run(train, valid,
+				null, 0);
+		assertEquals(300, full.getSteps().size());
+
+		final BoostingModel stopped = new GBRT(
+				new Arguments("it", 300, "shrink", 0.2, "depth", 4, "earlyStop", 20)).run(train, valid, null, 0);
+		assertTrue(stopped.getSteps().size() < 280);
+		assertTrue(error(stopped, valid) < error(full, valid));
+	}
+
+	@Test
+	public void testEarlyStoppingWithoutSteps() {
+		final Random random = new Random(1);
+		final ISamples<Sample, Double> train = samples(random, 400);
+		final ISamples<Sample, Double> opposite = samples(random, 400);
+		final Double[] labels = opposite.expected(0);
+		for (int i = 0; i < labels.length; ++i) {
+			labels[i] = -labels[i];
+		}
+		// every tree fitted to the training samples moves away from the validation labels
+		final ISamples<Sample, Double> valid = new LabelDecorator<>(opposite, labels, 0);
+
+		final BoostingModel model = new GBRT(new Arguments("it", 50, "shrink", 0.2, "depth", 4, "earlyStop", 5))
+				.run(train, valid, null, 0);
+		assertTrue(model.getSteps().isEmpty());
+		final Double[] preds = model.apply(valid);
+		final double first = model.getFirst().predictDouble(valid)[0];
+		for (final Double pred : preds) {
+			assertEquals(first, pred, 1e-12);
+		}
+		assertEquals(first, model.predictDistribution(valid, false)[0].getPrediction().getMean(), 1e-12);
+	}
+
+	@Test
+	public void testNewton() {
+		final Random random = new Random(1);
+		final ISamples<Sample, Double> train = binarySamples(random, 600);
+		final ISamples<Sample, Double> test = binarySamples(random, 2000);
+		final LogLoss logLoss = new LogLoss(false);
+		final double gradient = logLoss(new GBRT(new Arguments("it", 30, "shrink", 0.2, "bag", 0.9, "depth", 3),
+				logLoss, null).run(train, null, null, 0), test);
+		final BoostingModel model = new GBRT(
+				new Arguments("it", 30, "shrink", 0.2, "bag", 0.9, "depth", 3, GBM.NEWTON, 1, GBRT.LAMBDA, 1.0),
+				logLoss, null).run(train, null, null, 0);
+		for (final Double pred : model.apply(test)) {
+			assertTrue(pred + "", pred > 0 && pred < 1);
+		}
+		final double newton = logLoss(model, test);
+		assertTrue(newton + " vs. " + gradient, newton < gradient);
+
+		final Double[] flat = model.apply(test);
+		assertTrue(model.useQuickScorer());
+		assertArrayEquals(flat, model.apply(test));
+	}
+
+	@Test
+	public void testGossWeights() {
+		final Random random = new Random(1);
+		final ISamples<Sample, Double> samples = samples(random, 2000);
+		final double[] scores = new double[samples.size()];
+		for (int i = 0; i < scores.length; ++i) {
+			scores[i] = random.nextGaussian();
+		}
+		final double[] weights = GBM.gossWeights(samples, scores, 0.2, 0.1, random, 0);
+		final double[] sorted = scores.clone();
+		for (int i = 0; i < sorted.length; ++i) {
+			sorted[i] = Math.abs(sorted[i]);
+		}
+		java.util.Arrays.sort(sorted);
+		final double threshold = sorted[sorted.length - 400];
+		int rest = 0;
+		for (int i = 0; i < weights.length; ++i) {
+			if (Math.abs(scores[i]) >= threshold) {
+				assertEquals(1, weights[i], 0);
+			} else if (weights[i] > 0) {
+				assertEquals(8, weights[i], 1e-12);
+				++rest;
+			}
+		}
+		// about 1600 * 0.1 / 0.8 = 200 of the remaining samples are kept
+		assertTrue(rest + "", rest > 150 && rest < 250);
+	}
+
+	@Test
+	public void testGossWeightedLeaves() {
+		final Random random = new Random(1);
+		final ISamples<Sample, Double> samples = samples(random, 400);
+		final Double[] labels = samples.expected(0);
+		final double[] weights = new double[labels.length];
+		for (int i = 0; i < weights.length; ++i) {
+			weights[i] = random.nextDouble() < 0.5 ? 1 : 8;
+		}
+		final TreeFit fit = new RegTree(2, 10, 6, false).fit(new LabelDecorator<>(samples, labels, weights, 0), null,
+				0);
+		final double[] leafValues = fit.getLeafValues();
+		final double[] sums = new double[leafValues.length];
+		final double[] sumsOfWeights = new double[leafValues.length];
+		for (int i = 0; i < labels.length; ++i) {
+			final int leaf = fit.getLeafIndexes()[i];
+			sums[leaf] += labels[i] * weights[i];
+			sumsOfWeights[leaf] += weights[i];
+		}
+		for (int i = 0; i < leafValues.length; ++i) {
+			assertEquals(sums[i] / sumsOfWeights[i], leafValues[i], 1e-9);
+		}
+		assertTrue(new RegTree(2, 10, 6, false).hasWeightedLeaves());
+		assertFalse(new RegTree(2, 10, 1, false).hasWeightedLeaves());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGossRejectsUnweightedLeaves() {
+		new GBRT(new Arguments("it", 20, GBM.GOSS, 0.2, GBRT.NODE_PRED, 2)).run(samples(new Random(1), 100), null,
+				null, 0);
+	}
+
+	@Test
+	public void testLineSearch() {
+		final Random random = new Random(1);
+		final int n = 200;
+		final Double[] labels = new Double[n];
+		final Double[] targets = new Double[n];
+		final double[] weights = new double[n];
+		final double[] preds = new double[n];
+		final double[] optim = new double[n];
+		for (int i = 0; i < n; ++i) {
+			labels[i] = random.nextDouble() < 0.3 ? 1.0 : 0.0;
+			targets[i] = random.nextGaussian();
+			weights[i] = 0.5 + random.nextDouble();
+			preds[i] = 0.2 + random.nextDouble() * 0.6;
+			optim[i] = random.nextGaussian() * 0.1;
+		}
+		assertMinimum(new LogLoss(false), labels, weights, preds, optim);
+		assertMinimum(new MeanAbsoluteError(), targets, weights, preds, optim);
+
+		final double median = GBM.fitAbsolute(targets, weights, preds, optim);
+		final MeanAbsoluteError mae = new MeanAbsoluteError();
+		final double loss = loss(mae, targets, weights, preds, optim, median);
+		assertTrue(loss <= loss(mae, targets, weights, preds, optim, median - 1e-3));
+		assertTrue(loss <= loss(mae, targets, weights, preds, optim, median + 1e-3));
+		assertEquals(loss, loss(mae, targets, weights, preds, optim,
+				GBM.lineSearch(mae, targets, weights, preds, optim, 1e-9)), 1e-9);
+	}
+
+	@Test
+	public void testWeightedMedian() {
+		assertEquals(2, GBM.weightedMedian(new double[] { 3, 1, 2 }, new double[] { 1, 1, 5 }, 3), 0);
+		assertEquals(3, GBM.weightedMedian(new double[] { 3, 1, 2 }, new double[] { 5, 1, 1 }, 3), 0);
+		assertEquals(1, GBM.weightedMedian(new double[] { 2, 1, 2, 3 }, new double[] { 1, 2, 0.5, 0.5 }, 4), 0);
+		assertEquals(7, GBM.weightedMedian(new double[] { 7, 1 }, new double[] { 1, 1 }, 1), 0);
+	}
+
+	private static void assertMinimum(final ObjectiveFunction<? super Double, ? super Double> objective,
+			final Double[] labels, final double[] weights, final double[] preds, final double[] optim) {
+		final double gamma = GBM.lineSearch((DifferentiableObjectiveFunction) objective, labels, weights, preds, optim,
+				1e-9);
+		final double loss = loss(objective, labels, weights, preds, optim, gamma);
+		assertTrue(loss <= loss(objective, labels, weights, preds, optim, gamma - 1e-3) + 1e-12);
+		assertTrue(loss <= loss(objective, labels, weights, preds, optim, gamma + 1e-3) + 1e-12);
+	}
+
+	private static double loss(final ObjectiveFunction<? super Double, ? super Double> objective,
+			final Double[] labels, final double[] weights, final double[] preds, final double[] optim,
+			final double gamma) {
+		return objective.label(Arrays.cast(GBM.updatePredictions(preds, optim, gamma)), labels, weights, null, 0)
+				.getMean();
+	}
+
+	private static ISamples<Sample, Double> samples(final Random random, final int size) {
+		final float[][] features = new float[size][];
+		final double[] labels = new double[size];
+		for (int i = 0; i < size; ++i) {
+			features[i] = new float[] { (float) random.nextGaussian(), random.nextFloat(), random.nextFloat() };
+			labels[i] = features[i][0] + random.nextGaussian();
+		}
+		return TestDatasets.samples(features, labels, new String[] { "a", "b", "c" });
+	}
+
+	private static ISamples<Sample, Double> binarySamples(final Random random, final int size) {
+		final float[][] features = new float[size][];
+		final double[] labels = new double[size];
+		for (int i = 0; i < size; ++i) {
+			features[i] = new float[] { (float) random.nextGaussian(), random.nextFloat() };
+			final double p = 1 / (1 + Math.exp(-2 * features[i][0]));
+			labels[i] = random.nextDouble() < p ? 1.0 : 0.0;
+		}
+		return TestDatasets.samples(features, labels, new String[] { "a", "b" });
+	}
+
+	private static double logLoss(final BoostingModel model, final ISamples<Sample, Double> samples) {
+		return new LogLoss(false).label(model.apply(samples), samples.expected(0), samples.weights(0), null, 0)
+				.getMean();
+	}
+
+	private static double error(final BoostingModel model, final ISamples<Sample, Double> samples) {
+		final Double[] preds = model.apply(samples);
+		final Double[] expected = samples.expected(0);
+		double error = 0;
+		for (int i = 0; i < preds.length; ++i) {
+			error += (preds[i] - expected[i]) * (preds[i] - expected[i]);
+		}
+		return error;
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.meta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.insightml.TestDatasets;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.utils.Arguments;
+
+public final class SoftmaxGBMTest {
+
+	@Test
+	public void testClasses() {
+		final Random random = new Random(1);
+		final ISamples<Sample, Double> train = samples(random, 600);
+		final ISamples<Sample, Double> test = samples(random, 1000);
+		final SoftmaxBoostingModel model = new SoftmaxGBM(new Arguments("it", 40, "shrink", 0.2, "bag", 0.9, "depth",
+				3)).run(train, null, null, 0);
+		assertEquals(3, model.numClasses());
+		assertEquals(40, model.getSteps().size());
+
+		final double[][] preds = model.apply(test);
+		int correct = 0;
+		for (int i = 0; i < preds.length; ++i) {
+			double sum = 0;
+			int best = 0;
+			for (int k = 0; k < preds[i].length; ++k) {
+				sum += preds[i][k];
+				best = preds[i][k] > preds[i][best] ? k : best;
+			}
+			assertEquals(1, sum, 1e-9);
+			correct += test.expected(best)[i] == 1 ? 1 : 0;
+		}
+		assertTrue(correct + "", correct > 0.8 * preds.length);
+	}
+
+	/**
+	 * The class is the largest of a, b and 0.5, with some noise.
+	 */
+	private static ISamples<Sample, Double> samples(final Random random, final int size) {
+		final float[][] features = new float[size][];
+		final Double[][] labels = new Double[size][];
+		for (int i = 0; i < size; ++i) {
+			features[i] = new float[] { random.nextFloat(), random.nextFloat(), random.nextFloat() };
+			final double a = features[i][0] + random.nextGaussian() * 0.05;
+			final double b = features[i][1] + random.nextGaussian() * 0.05;
+			final int label = a > b && a > 0.5 ? 0 : b > 0.5 ? 1 : 2;
+			labels[i] = new Double[] { 0.0, 0.0, 0.0 };
+			labels[i][label] = 1.0;
+		}
+		return TestDatasets.samples(features, labels, new String[] { "a", "b", "c" }, null);
+	}
+}
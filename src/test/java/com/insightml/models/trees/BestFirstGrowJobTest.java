@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.insightml.TestDatasets;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.models.trees.RegTree.SimpleStatisticsSupplier;
+import com.insightml.utils.Arguments;
+
+public final class BestFirstGrowJobTest {
+
+	@Test
+	public void testBestFirst() {
+		final Random random = new Random(1);
+		final String[] names = { "a", "b", "c" };
+		final float[][] features = new float[1000][];
+		final double[] labels = new double[features.length];
+		for (int i = 0; i < features.length; ++i) {
+			features[i] = new float[] { (float) random.nextGaussian(), random.nextFloat(), random.nextFloat() };
+			labels[i] = features[i][0] * 3 + (features[i][1] > 0.7 ? 2 : 0) + features[i][2] + random.nextGaussian();
+		}
+		final ISamples<Sample, Double> train = TestDatasets.samples(features, labels, names);
+
+		assertNull(grow(train, 1).rule);
+		final TreeNode full = new RegTree(6, 5, false).run(train, 0).getRoot();
+		TreeNode previous = grow(train, 2);
+		for (int maxLeaves = 3; maxLeaves <= 20; ++maxLeaves) {
+			final TreeNode tree = grow(train, maxLeaves);
+			assertEquals(maxLeaves, leaves(tree));
+			// one more leaf splits the best of the previous tree's leaves, where each leaf's best split is the one
+			// found by depth-wise growth
+			final List<Double> added = new ArrayList<>();
+			final List<Double> others = new ArrayList<>();
+			compare(previous, tree, full, added, others);
+			assertEquals(1, added.size());
+			for (final double other : others) {
+				assertTrue(other + " > " + added.get(0), other <= added.get(0));
+			}
+			previous = tree;
+		}
+	}
+
+	private static TreeNode grow(final ISamples<Sample, Double> train, final int maxLeaves) {
+		return new RegTree(6, 5, 1, MseSplitCriterion.factory(), new SimpleStatisticsSupplier(), false,
+				new Arguments("maxLeaves", maxLeaves)).run(train, 0).getRoot();
+	}
+
+	private static int leaves(final TreeNode node) {
+		if (node.rule == null) {
+			return 1;
+		}
+		int leaves = 0;
+		for (final TreeNode child : node.children) {
+			leaves += leaves(child);
+		}
+		return leaves;
+	}
+
+	private static void compare(final TreeNode smaller, final TreeNode larger, final TreeNode full,
+			final List<Double> added, final List<Double> others) {
+		if (smaller.rule == null) {
+			if (larger.rule == null) {
+				others.add(full.rule == null ? Double.NEGATIVE_INFINITY : full.rule.getImprovement());
+			} else {
+				assertEquals(full.rule.getImprovement(), larger.rule.getImprovement(), 0);
+				added.add(larger.rule.getImprovement());
+			}
+			return;
+		}
+		assertNotNull(larger.rule);
+		assertEquals(smaller.rule.getImprovement(), larger.rule.getImprovement(), 0);
+		for (int c = 0; c < smaller.children.length; ++c) {
+			compare(smaller.children[c], larger.children[c], full.children[c], added, others);
+		}
+	}
+}
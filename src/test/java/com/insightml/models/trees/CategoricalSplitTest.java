@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.insightml.TestDatasets;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+
+public final class CategoricalSplitTest {
+
+	@Test
+	public void testCategoryPartition() {
+		final String[] names = { "category" };
+		final float[][] features = new float[40][];
+		final double[] labels = new double[features.length];
+		for (int i = 0; i < features.length; ++i) {
+			final int category = i % 4;
+			features[i] = new float[] { category };
+			labels[i] = (category == 1 || category == 3 ? 10 : 0) + (i < 20 ? 1 : -1);
+		}
+		final ISamples<Sample, Double> train = TestDatasets.samples(features, labels, names, new boolean[] { true });
+
+		final TreeModel model = new RegTree(1, 1, false).run(train, 0);
+		final AbstractSplit rule = model.getRoot().getRule();
+		assertTrue(rule instanceof CategoricalSplit);
+		assertArrayEquals(new int[] { 0, 2 }, ((CategoricalSplit) rule).getCategories());
+		assertEquals(0, model.predict(new float[] { 2 }), 1e-9);
+		assertEquals(10, model.predict(new float[] { 3 }), 1e-9);
+		// unseen categories go right
+		assertEquals(10, model.predict(new float[] { 7 }), 1e-9);
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math3.stat.descriptive.rank.Median;
+import org.junit.Test;
+
+import com.insightml.TestDatasets;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.models.meta.GBRT;
+import com.insightml.utils.Arguments;
+
+public final class ExactMaeSplitCriterionTest {
+
+	@Test
+	public void testImprovement() {
+		final Random random = new Random(1);
+		final int n = 101;
+		final double[] expected = new double[n];
+		final double[] weights = new double[n];
+		final float[][] features = new float[n][1];
+		final Integer[] order = new Integer[n];
+		for (int i = 0; i < n; ++i) {
+			expected[i] = Math.round(random.nextGaussian() * 10) / 2.0;
+			weights[i] = 0.5 + random.nextDouble();
+			features[i][0] = random.nextFloat();
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Float.compare(features[a][0], features[b][0]));
+		final int[] ordered = Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+
+		final SplitFinderContext context = new SplitFinderContext(expected, weights, new String[] { "f" }, features,
+				new int[][] { ordered }, 3, null, null, 0, 0);
+		final SplitCriterion criterion = ExactMaeSplitCriterion.factory()
+				.create(context, NodeRows.root(context, true)).forFeature(0);
+		final double totalError = error(ordered, 0, n, expected, weights);
+		for (int lastIndexLeft = 0; lastIndexLeft < n - 1; ++lastIndexLeft) {
+			final double error = error(ordered, 0, lastIndexLeft + 1, expected, weights)
+					+ error(ordered, lastIndexLeft + 1, n, expected, weights);
+			assertEquals(totalError - error, criterion.improvement(null, null, 0, lastIndexLeft), 1e-9);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsHistograms() {
+		final Random random = new Random(1);
+		final String[] names = { "f" };
+		final float[][] features = new float[100][];
+		final double[] labels = new double[features.length];
+		for (int i = 0; i < features.length; ++i) {
+			features[i] = new float[] { random.nextFloat() };
+			labels[i] = features[i][0] + random.nextGaussian();
+		}
+		final ISamples<Sample, Double> train = TestDatasets.samples(features, labels, names);
+		new GBRT(new Arguments("it", 20, GBRT.SPLIT_CRITERION, "mae", "maxBins", 16)).run(train, null, null, 0);
+	}
+
+	private static double error(final int[] ordered, final int from, final int to, final double[] expected,
+			final double[] weights) {
+		final double[] values = new double[to - from];
+		for (int i = from; i < to; ++i) {
+			values[i - from] = expected[ordered[i]];
+		}
+		final double median = new Median().evaluate(values);
+		double error = 0;
+		for (int i = from; i < to; ++i) {
+			error += Math.abs(expected[ordered[i]] - median) * weights[ordered[i]];
+		}
+		return error;
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.insightml.TestDatasets;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.models.trees.RegTree.SimpleStatisticsSupplier;
+import com.insightml.utils.Arguments;
+
+public final class FeatureBinsTest {
+	private static final float MISSING = (float) ThresholdSplitFinder.VALUE_MISSING;
+
+	@Test
+	public void testQuantization() {
+		final Random random = new Random(1);
+		final float[][] features = new float[1000][];
+		for (int i = 0; i < features.length; ++i) {
+			features[i] = new float[] { random.nextDouble() < 0.1 ? MISSING : random.nextInt(50),
+					random.nextInt(5) };
+		}
+		final FeatureBins bins = FeatureBins.create(context(features), 8);
+
+		assertTrue(bins.hasMissing(0));
+		assertTrue(bins.numBins(0) <= 8);
+		assertEquals(MISSING, bins.threshold(0, 0), 0);
+		for (int i = 0; i < features.length; ++i) {
+			final float value = features[i][0];
+			final int bin = bins.bin(0, i);
+			assertEquals(value == MISSING, bin == 0);
+			if (bin > 0) {
+				// each bin holds exactly the values between the previous bin's threshold and its own
+				assertTrue(value <= bins.threshold(0, bin));
+				assertTrue(bin == 1 || value > bins.threshold(0, bin - 1));
+			}
+		}
+
+		// few distinct values get a bin each
+		assertFalse(bins.hasMissing(1));
+		assertArrayEquals(new double[] { 0, 1, 2, 3, 4 },
+				new double[] { bins.threshold(1, 0), bins.threshold(1, 1), bins.threshold(1, 2),
+						bins.threshold(1, 3), bins.threshold(1, 4) },
+				0);
+		assertEquals(5, bins.numBins(1));
+		for (int i = 0; i < features.length; ++i) {
+			assertEquals((int) features[i][1], bins.bin(1, i));
+		}
+	}
+
+	@Test
+	public void testSameAsExactSplits() {
+		final Random random = new Random(2);
+		final String[] names = { "a", "b", "c" };
+		final float[][] features = new float[1000][];
+		final double[] labels = new double[features.length];
+		for (int i = 0; i < features.length; ++i) {
+			features[i] = new float[] { random.nextInt(10), random.nextDouble() < 0.1 ? MISSING : random.nextInt(16),
+					random.nextInt(3) };
+			labels[i] = features[i][0] + (features[i][1] > 7 ? 2 : 0) + random.nextGaussian();
+		}
+		final ISamples<Sample, Double> train = TestDatasets.samples(features, labels, names);
+
+		final TreeModel exact = new RegTree(5, 5, false).run(train, 0);
+		final TreeModel histogram = new RegTree(5, 5, 1, MseSplitCriterion.factory(), new SimpleStatisticsSupplier(),
+				false, new Arguments("maxBins", 17)).run(train, 0);
+		// a single bin could not split anything, so it means exact split finding
+		final TreeModel single = new RegTree(5, 5, 1, MseSplitCriterion.factory(), new SimpleStatisticsSupplier(),
+				false, new Arguments("maxBins", 1)).run(train, 0);
+		for (final float[] row : features) {
+			assertEquals(exact.predict(row), histogram.predict(row), 1e-9);
+			assertEquals(exact.predict(row), single.predict(row), 0);
+		}
+	}
+
+	private static SplitFinderContext context(final float[][] features) {
+		final int numFeatures = features[0].length;
+		final int[][] ordered = new int[numFeatures][];
+		for (int f = 0; f < numFeatures; ++f) {
+			final int feature = f;
+			ordered[f] = IntStream.range(0, features.length).boxed()
+					.sorted((a, b) -> Float.compare(features[a][feature], features[b][feature]))
+					.mapToInt(Integer::intValue).toArray();
+		}
+		final double[] ones = new double[features.length];
+		Arrays.fill(ones, 1);
+		return new SplitFinderContext(new double[features.length], ones, new String[] { "a", "b" }, features,
+				ordered, 3, null, null, 0, 0);
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.insightml.TestDatasets;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+
+public final class FlatTreesTest {
+
+	@Test
+	public void testSameAsNodes() {
+		final Random random = new Random(1);
+		final float[][] features = new float[500][];
+		final TreeNode[] roots = train(random, features, 5, 6, true);
+		final double[] weights = random.doubles(roots.length).toArray();
+		assertSameAsNodes(FlatTrees.compile(roots, weights), roots, weights, features, random);
+	}
+
+	@Test
+	public void testGeneratedCode() {
+		final Random random = new Random(2);
+		final float[][] features = new float[500][];
+		final TreeNode[] trained = train(random, features, 3, 20, true);
+		// enough trees to spread over several classes, deep enough to split into several methods
+		final TreeNode[] roots = new TreeNode[1500];
+		for (int t = 0; t < roots.length; ++t) {
+			roots[t] = trained[t % trained.length];
+		}
+		final double[] weights = random.doubles(roots.length).toArray();
+		final TreeScorer generated = FlatTrees.compile(roots, weights).generate();
+		assertFalse(generated instanceof FlatTrees);
+		assertSameAsNodes(FlatTrees.compile(roots, weights), roots, weights, features, random);
+		assertSameAsNodes(generated, roots, weights, features, random);
+	}
+
+	@Test
+	public void testQuickScorer() {
+		final Random random = new Random(3);
+		final float[][] features = new float[500][];
+		final TreeNode[] roots = train(random, features, 20, 4, true);
+		final double[] weights = random.doubles(roots.length).toArray();
+		final QuickScorer quick = QuickScorer.of(FlatTrees.compile(roots, weights));
+		assertSameAsNodes(quick, roots, weights, features, random);
+
+		final double[] sums = new double[features.length];
+		Arrays.fill(sums, 0.5);
+		quick.predict(features, sums, 0, sums.length);
+		for (int i = 0; i < sums.length; ++i) {
+			assertEquals(quick.predict(features[i], 0.5), sums[i], 0);
+		}
+	}
+
+	@Test
+	public void testVectors() {
+		assertTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+		final Random random = new Random(4);
+		final float[][] features = new float[500][];
+		final TreeNode[] numeric = train(random, features, 10, 8, false);
+		final TreeNode[] categorical = train(random, features, 2, 8, true);
+		final TreeNode[] roots = new TreeNode[numeric.length + categorical.length];
+		for (int t = 0; t < roots.length; ++t) {
+			roots[t] = t % 6 == 5 ? categorical[t / 6] : numeric[t - t / 6];
+		}
+		final FlatTrees flat = FlatTrees.compile(roots, random.doubles(roots.length).toArray());
+		final float[][] rows = new float[1001][];
+		for (int i = 0; i < rows.length; ++i) {
+			rows[i] = features[random.nextInt(features.length)].clone();
+			if (i % 3 == 1) {
+				rows[i][i % 2] = Float.NaN;
+			} else if (i % 3 == 2) {
+				rows[i][i % 2] = (float) ThresholdSplitFinder.VALUE_MISSING;
+			}
+		}
+		final double[] sums = new double[rows.length];
+		Arrays.fill(sums, 0.5);
+		flat.predict(rows, sums, 1, rows.length);
+		assertEquals(0.5, sums[0], 0);
+		for (int i = 1; i < rows.length; ++i) {
+			assertEquals(flat.predict(rows[i], 0.5), sums[i], 0);
+		}
+	}
+
+	private static TreeNode[] train(final Random random, final float[][] features, final int numTrees,
+			final int depth, final boolean categorical) {
+		final String[] names = { "numeric", "category", "noise" };
+		final TreeNode[] roots = new TreeNode[numTrees];
+		for (int t = 0; t < roots.length; ++t) {
+			final double[] labels = new double[features.length];
+			for (int i = 0; i < features.length; ++i) {
+				final float numeric = random.nextDouble() < 0.1 ? (float) ThresholdSplitFinder.VALUE_MISSING
+						: (float) random.nextGaussian();
+				final int category = random.nextInt(depth > 10 ? 100 : 10);
+				features[i] = new float[] { numeric, category, random.nextFloat() };
+				labels[i] = (numeric == Float.NEGATIVE_INFINITY ? 3 : numeric) + category % 3
+						+ random.nextGaussian() * 0.1;
+			}
+			final ISamples<Sample, Double> train = TestDatasets.samples(features.clone(), labels, names,
+					new boolean[] { false, categorical, false });
+			roots[t] = new RegTree(depth, 2, false).run(train, 0).getRoot();
+		}
+		return roots;
+	}
+
+	private static void assertSameAsNodes(final TreeScorer scorer, final TreeNode[] roots, final double[] weights,
+			final float[][] features, final Random random) {
+		for (int i = 0; i < 2000; ++i) {
+			final float[] row = features[random.nextInt(features.length)].clone();
+			if (i % 4 == 1) {
+				row[0] = Float.NaN;
+			} else if (i % 4 == 2) {
+				// unseen and non-integer categories
+				row[1] = i % 8 == 2 ? 120 : 1.5f;
+			} else if (i % 4 == 3) {
+				row[1] = (float) ThresholdSplitFinder.VALUE_MISSING;
+			}
+			double expected = 0.5;
+			for (int t = 0; t < roots.length; ++t) {
+				expected += weights[t] * predict(roots[t], row);
+			}
+			assertEquals(expected, scorer.predict(row, 0.5), 0);
+		}
+	}
+
+	private static double predict(final TreeNode root, final float[] features) {
+		TreeNode node = root;
+		while (node.rule != null) {
+			final TreeNode child = node.rule.selectChild(features, node.children);
+			if (child == null) {
+				return node.mean;
+			}
+			node = child;
+		}
+		return node.mean;
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math3.stat.descriptive.rank.Median;
+import org.junit.Test;
+
+public final class NodeRowsTest {
+
+	@Test
+	public void testMedian() {
+		final Random random = new Random(1);
+		for (int n = 1; n < 40; ++n) {
+			final double[] values = new double[n + 2];
+			for (int i = 0; i < values.length; ++i) {
+				values[i] = Math.round(random.nextGaussian() * 5) / 2.0;
+			}
+			final double expected = new Median().evaluate(Arrays.copyOfRange(values, 1, n + 1));
+			assertEquals(expected, NodeRows.median(values, 1, n + 1), 0);
+		}
+	}
+}
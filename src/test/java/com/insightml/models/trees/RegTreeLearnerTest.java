@@ -24,6 +24,8 @@ import com.insightml.models.ModelBenchmark;
 import com.insightml.models.meta.RandomForest;
 import com.insightml.models.meta.VoteModel.VoteStrategy;
 import com.insightml.models.regression.OLS;
+import com.insightml.models.trees.RegTree.SimpleStatisticsSupplier;
+import com.insightml.utils.Arguments;
 
 public class RegTreeLearnerTest {
 
@@ -33,6 +35,13 @@ public class RegTreeLearnerTest {
 				new RMSE());
 		benchmark.addLearner(new OLS(), -0.75341);
 		benchmark.addLearner(new RegTree(7, 12, true), -0.73014);
+		// growing every node in parallel must not change the tree
+		benchmark.addLearner(new RegTree(7, 12, 1, MseSplitCriterion.factory(), new SimpleStatisticsSupplier(), true,
+				new Arguments("nodeParallelRows", 1, "featureParallelRows", 1)), -0.73014);
+		benchmark.addLearner(new RegTree(7, 12, 1, MseSplitCriterion.factory(), new SimpleStatisticsSupplier(), true,
+				new Arguments("maxBins", 255)), -0.7306);
+		benchmark.addLearner(new RegTree(12, 12, 1, MseSplitCriterion.factory(), new SimpleStatisticsSupplier(), true,
+				new Arguments("maxLeaves", 40)), -0.73998);
 		benchmark.addLearner(new RandomForest(120, 7, 7, 4, 0.55, 0.9, VoteStrategy.AVERAGE, null), -0.68488);
 		benchmark.run();
 	}
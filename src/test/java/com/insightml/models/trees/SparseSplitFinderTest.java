@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.insightml.TestDatasets;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.data.samples.SparseFeatures;
+import com.insightml.data.samples.decorators.SparseFeaturesDecorator;
+
+public final class SparseSplitFinderTest {
+
+	@Test
+	public void testSameTreeAsDense() {
+		final Random random = new Random(1);
+		final String[] names = { "a", "b", "c", "d" };
+		final float[] defaults = { 0, 0, 1, Float.NEGATIVE_INFINITY };
+		final float[][] features = new float[300][];
+		final double[] labels = new double[features.length];
+		for (int i = 0; i < features.length; ++i) {
+			features[i] = new float[names.length];
+			for (int f = 0; f < names.length; ++f) {
+				final double r = random.nextDouble();
+				features[i][f] = r < 0.7 ? defaults[f]
+						: r < 0.75 ? Float.NEGATIVE_INFINITY : (float) random.nextGaussian();
+			}
+			labels[i] = Math.max(features[i][0], -1) * 2 + (features[i][1] > 0.3 ? 1 : 0)
+					+ (features[i][3] == ThresholdSplitFinder.VALUE_MISSING ? 0.5 : 0) + random.nextGaussian() * 0.1;
+		}
+		final ISamples<Sample, Double> dense = TestDatasets.samples(features, labels, names);
+		final ISamples<Sample, Double> sparse = new SparseFeaturesDecorator<>(dense,
+				SparseFeatures.of(features, defaults), names, null);
+
+		final TreeModel denseModel = new RegTree(4, 5, false).run(dense, 0);
+		final TreeModel sparseModel = new RegTree(4, 5, false).run(sparse, 0);
+		for (final float[] row : features) {
+			assertEquals(denseModel.predict(row), sparseModel.predict(row), 1e-9);
+		}
+		assertEquals(denseModel.getRoot().getRule().getFeature(), sparseModel.getRoot().getRule().getFeature());
+	}
+}
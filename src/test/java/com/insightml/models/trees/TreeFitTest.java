@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 Stefan Henß
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.insightml.models.trees;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.insightml.TestDatasets;
+import com.insightml.data.samples.ISamples;
+import com.insightml.data.samples.Sample;
+import com.insightml.models.trees.RegTree.SimpleStatisticsSupplier;
+import com.insightml.utils.Arguments;
+
+public final class TreeFitTest {
+
+	@Test
+	public void testLeavesMatchPredictions() {
+		final Random random = new Random(1);
+		final float[][] features = new float[500][];
+		final double[] labels = new double[features.length];
+		for (int i = 0; i < features.length; ++i) {
+			features[i] = new float[] { (float) random.nextGaussian(), random.nextInt(5),
+					random.nextDouble() < 0.1 ? Float.NaN : random.nextFloat() };
+			labels[i] = features[i][0] + (features[i][1] > 2 ? 1 : 0) + random.nextGaussian() * 0.3;
+		}
+		final ISamples<Sample, Double> train = TestDatasets.samples(features, labels, new String[] { "a", "b", "c" });
+
+		assertLeaves(new RegTree(4, 5, false), train, features);
+		assertLeaves(new RegTree(4, 5, true), train, features);
+		assertLeaves(new RegTree(3, 5, 1, MseSplitCriterion.factory(), new SimpleStatisticsSupplier(), false,
+				new Arguments("maxBins", 16)), train, features);
+		assertLeaves(new RegTree(8, 5, 1, MseSplitCriterion.factory(), new SimpleStatisticsSupplier(), false,
+				new Arguments("maxLeaves", 10)), train, features);
+	}
+
+	private static void assertLeaves(final RegTree learner, final ISamples<Sample, Double> train,
+			final float[][] features) {
+		final TreeFit fit = learner.fit(train, null, 0);
+		for (int i = 0; i < features.length; ++i) {
+			assertEquals(fit.getModel().predict(features[i]), fit.getLeafValues()[fit.getLeafIndexes()[i]], 0);
+		}
+	}
+}